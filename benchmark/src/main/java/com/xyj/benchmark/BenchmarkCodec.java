@@ -0,0 +1,49 @@
+package com.xyj.benchmark;
+
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import com.xyj.util.JsonUtil;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 把已注册的序列化方式和JsonUtil统一成同一个接口，序列化方式按名称选择，"json"表示JsonUtil
+ * 与编解码器一样直接读写ByteBuf；JsonUtil只有字节数组接口，多一次拷贝
+ */
+abstract class BenchmarkCodec {
+
+    static final String JSON = "json";
+
+    abstract void serialize(Object obj, ByteBuf out);
+
+    abstract Object deserialize(ByteBuf in, Class<?> clazz);
+
+    static BenchmarkCodec of(String name) {
+        if (JSON.equals(name)) {
+            return new BenchmarkCodec() {
+                @Override
+                void serialize(Object obj, ByteBuf out) {
+                    out.writeBytes(JsonUtil.serialize(obj));
+                }
+
+                @Override
+                Object deserialize(ByteBuf in, Class<?> clazz) {
+                    byte[] bytes = new byte[in.readableBytes()];
+                    in.readBytes(bytes);
+                    return JsonUtil.deserialize(bytes, clazz);
+                }
+            };
+        }
+        final Serializer serializer = SerializerRegistry.require(name);
+        return new BenchmarkCodec() {
+            @Override
+            void serialize(Object obj, ByteBuf out) {
+                serializer.serialize(obj, out);
+            }
+
+            @Override
+            Object deserialize(ByteBuf in, Class<?> clazz) {
+                return serializer.deserialize(in, clazz);
+            }
+        };
+    }
+}
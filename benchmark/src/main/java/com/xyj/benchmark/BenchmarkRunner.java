@@ -0,0 +1,52 @@
+package com.xyj.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口：先输出各序列化方式的消息大小，再以GC profiler运行JMH，得到ops/s和每次操作的分配字节数（gc.alloc.rate.norm）
+ * 参数与JMH的命令行参数相同，例如 java -jar benchmark/target/benchmarks.jar SerializerBenchmark -p payload=NESTED
+ */
+public class BenchmarkRunner {
+
+    private static final String[] SERIALIZERS = {"kryo", "protostuff", "hessian", "hessian1", "json"};
+
+    public static void main(String[] args) throws Exception {
+        printSizes();
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * 每种序列化方式、每种消息的字节数
+     */
+    static void printSizes() {
+        System.out.printf("%-12s %-8s %14s %15s%n", "serializer", "payload", "request bytes", "response bytes");
+        for (String name : SERIALIZERS) {
+            BenchmarkCodec codec = BenchmarkCodec.of(name);
+            for (Payloads.Type type : Payloads.Type.values()) {
+                System.out.printf("%-12s %-8s %14d %15d%n", name, type,
+                        size(codec, Payloads.request(type)), size(codec, Payloads.response(type)));
+            }
+        }
+        System.out.println();
+    }
+
+    private static int size(BenchmarkCodec codec, Object message) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            codec.serialize(message, buf);
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+}
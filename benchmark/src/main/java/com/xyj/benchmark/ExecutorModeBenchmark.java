@@ -0,0 +1,86 @@
+package com.xyj.benchmark;
+
+import com.xyj.executor.ExecutorConfig;
+import com.xyj.executor.ServiceExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务方法阻塞不同时间时，共享线程池的各种模式每秒能完成的请求数
+ * 每次操作提交REQUESTS个阻塞blockMillis的任务并等待全部完成，相当于同时到达的一批请求
+ * platform为原来的16/32线程池，virtual为每个请求一个虚拟线程，virtualBounded为最多同时执行256个的虚拟线程
+ * 虚拟线程需要JDK 21，低版本JDK上virtual*退回平台线程池，结果与platform相同
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutorModeBenchmark {
+
+    private static final int REQUESTS = 1000;
+
+    @Param({"platform", "virtual", "virtualBounded"})
+    private String mode;
+
+    @Param({"0", "1", "10"})
+    private int blockMillis;
+
+    private Executor executor;
+
+    @Setup
+    public void setup() {
+        ExecutorConfig config = new ExecutorConfig();
+        config.setCoreSize(16);
+        config.setMaxSize(32);
+        config.setVirtualThreads(!"platform".equals(mode));
+        if ("virtualBounded".equals(mode)) {
+            config.setMaxConcurrency(256);
+        }
+        executor = ServiceExecutors.newExecutor("benchmark-" + mode, config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ServiceExecutors.shutdown(executor);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void blockingRequests() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (blockMillis > 0) {
+                            Thread.sleep(blockMillis);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,132 @@
+package com.xyj.benchmark;
+
+import com.dyuproject.protostuff.LinkedBuffer;
+import com.dyuproject.protostuff.ProtostuffIOUtil;
+import com.dyuproject.protostuff.Schema;
+import com.dyuproject.protostuff.runtime.DefaultIdStrategy;
+import com.dyuproject.protostuff.runtime.RuntimeSchema;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.serializer.kryo.KryoPoolFactory;
+import com.xyj.serializer.protostuff.ProtostuffEngine;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编译期生成的Kryo序列化器/Protostuff Schema（generated）与基于反射的FieldSerializer/RuntimeSchema（reflective）对比
+ * 两者的字节完全相同，只比较编解码本身；reflective使用不注册生成类的Kryo和独立的IdStrategy
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratedSerializerBenchmark {
+
+    @Param({"kryo", "protostuff"})
+    private String serializer;
+
+    @Param({"reflective", "generated"})
+    private String impl;
+
+    @Param({"NESTED", "LARGE"})
+    private Payloads.Type payload;
+
+    private Kryo kryo;
+
+    private Schema<RpcRequest> requestSchema;
+
+    private Schema<RpcResponse> responseSchema;
+
+    private RpcRequest request;
+
+    private Output output;
+
+    private LinkedBuffer buffer;
+
+    private byte[] serializedRequest;
+
+    private byte[] serializedResponse;
+
+    @Setup
+    public void setup() {
+        boolean generated = "generated".equals(impl);
+        kryo = generated ? KryoPoolFactory.newKryo() : reflectiveKryo();
+        if (generated) {
+            requestSchema = ProtostuffEngine.getSchema(RpcRequest.class);
+            responseSchema = ProtostuffEngine.getSchema(RpcResponse.class);
+        } else {
+            DefaultIdStrategy strategy = new DefaultIdStrategy();
+            requestSchema = RuntimeSchema.getSchema(RpcRequest.class, strategy);
+            responseSchema = RuntimeSchema.getSchema(RpcResponse.class, strategy);
+        }
+        request = Payloads.request(payload);
+        output = new Output(256 * 1024);
+        buffer = LinkedBuffer.allocate(4096);
+        serializedRequest = serialize(request, requestSchema);
+        serializedResponse = serialize(Payloads.response(payload), responseSchema);
+    }
+
+    private static Kryo reflectiveKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setReferences(false);
+        kryo.register(RpcRequest.class);
+        kryo.register(RpcResponse.class);
+        ((Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy())
+                .setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
+        return kryo;
+    }
+
+    private <T> byte[] serialize(T obj, Schema<T> schema) {
+        if ("kryo".equals(serializer)) {
+            output.clear();
+            kryo.writeObject(output, obj);
+            return output.toBytes();
+        }
+        try {
+            return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private <T> T deserialize(byte[] data, Schema<T> schema, Class<T> type) {
+        if ("kryo".equals(serializer)) {
+            return kryo.readObject(new Input(data), type);
+        }
+        T message = schema.newMessage();
+        ProtostuffIOUtil.mergeFrom(data, message, schema);
+        return message;
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() {
+        return serialize(request, requestSchema);
+    }
+
+    @Benchmark
+    public Object deserializeRequest() {
+        return deserialize(serializedRequest, requestSchema, RpcRequest.class);
+    }
+
+    @Benchmark
+    public Object deserializeResponse() {
+        return deserialize(serializedResponse, responseSchema, RpcResponse.class);
+    }
+}
@@ -0,0 +1,98 @@
+package com.xyj.benchmark;
+
+import com.xyj.handler.MethodTable;
+import com.xyj.util.ServiceUtil;
+import net.sf.cglib.reflect.FastClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端调用服务方法的开销：JDK反射、每次创建FastClass并查找方法（原来的实现）、预先查找好下标的FastClass、
+ * MethodTable中预先创建的MethodHandle调用器（按id查找，以及按方法签名查找）
+ * hello为基本类型参数（需要拆箱），submit为一个对象参数；cglib在JDK 9以上需要--add-opens
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class InvokerBenchmark {
+
+    @Param({"hello", "submit"})
+    private String method;
+
+    private Object serviceBean;
+
+    private Method reflectMethod;
+
+    private FastClass fastClass;
+
+    private int fastClassIndex;
+
+    private MethodTable methodTable;
+
+    private int methodId;
+
+    private Class<?>[] parameterTypes;
+
+    private Object[] parameters;
+
+    @Setup
+    public void setup() throws Exception {
+        serviceBean = new OrderServiceImpl();
+        if ("hello".equals(method)) {
+            parameterTypes = new Class<?>[]{String.class, int.class, long.class, boolean.class};
+            parameters = new Object[]{"world", 42, 1660000000000L, true};
+        } else {
+            parameterTypes = new Class<?>[]{Payloads.OrderDto.class};
+            parameters = new Object[]{new Payloads.OrderDto()};
+        }
+        reflectMethod = serviceBean.getClass().getMethod(method, parameterTypes);
+        fastClass = FastClass.create(serviceBean.getClass());
+        fastClassIndex = fastClass.getIndex(method, parameterTypes);
+        methodTable = new MethodTable();
+        methodTable.addService(OrderService.class.getName(), "1.0", serviceBean);
+        methodId = methodTable.getMethodIds().get(ServiceUtil.makeMethodKey(
+                ServiceUtil.makeServiceKey(OrderService.class.getName(), "1.0"), method, parameterTypes));
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return reflectMethod.invoke(serviceBean, parameters);
+    }
+
+    @Benchmark
+    public Object fastClassPerCall() throws Exception {
+        FastClass serviceFastClass = FastClass.create(serviceBean.getClass());
+        int index = serviceFastClass.getIndex(method, parameterTypes);
+        return serviceFastClass.invoke(index, serviceBean, parameters);
+    }
+
+    @Benchmark
+    public Object fastClass() throws Exception {
+        return fastClass.invoke(fastClassIndex, serviceBean, parameters);
+    }
+
+    @Benchmark
+    public Object invokerById() throws Throwable {
+        return methodTable.get(methodId).invoke(parameters);
+    }
+
+    @Benchmark
+    public Object invokerBySignature() throws Throwable {
+        return methodTable.get(OrderService.class.getName(), "1.0", method, parameterTypes).invoke(parameters);
+    }
+}
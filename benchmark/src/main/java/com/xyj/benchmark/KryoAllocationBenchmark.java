@@ -0,0 +1,108 @@
+package com.xyj.benchmark;
+
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.serializer.kryo.KryoSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每条消息的分配：对比池化Kryo + 每次新建Output/Input（pooled）与线程独享实例 + 复用缓冲区（threadLocal）
+ * 以GC profiler运行，看gc.alloc.rate.norm；除反序列化出的对象本身外，threadLocal应当不再分配
+ * direct为true时模拟解码器收到的堆外ByteBuf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KryoAllocationBenchmark {
+
+    @Param({"pooled", "threadLocal"})
+    private String impl;
+
+    @Param({"SMALL", "NESTED"})
+    private Payloads.Type payload;
+
+    @Param({"false", "true"})
+    private boolean direct;
+
+    private PooledKryoBaseline pooled;
+
+    private KryoSerializer threadLocal;
+
+    private RpcRequest request;
+
+    private ByteBuf out;
+
+    private ByteBuf serializedRequest;
+
+    private ByteBuf serializedResponse;
+
+    @Setup
+    public void setup() {
+        pooled = new PooledKryoBaseline();
+        threadLocal = new KryoSerializer();
+        request = Payloads.request(payload);
+        out = allocate(64 * 1024);
+        serializedRequest = allocate(4096);
+        threadLocal.serialize(request, serializedRequest);
+        serializedResponse = allocate(4096);
+        threadLocal.serialize(Payloads.response(payload), serializedResponse);
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+        serializedRequest.release();
+        serializedResponse.release();
+    }
+
+    private ByteBuf allocate(int capacity) {
+        return direct ? Unpooled.directBuffer(capacity) : Unpooled.buffer(capacity);
+    }
+
+    @Benchmark
+    public ByteBuf encodeRequest() {
+        out.clear();
+        if ("pooled".equals(impl)) {
+            pooled.serialize(request, out);
+        } else {
+            threadLocal.serialize(request, out);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public Object decodeRequest() {
+        serializedRequest.readerIndex(0);
+        if ("pooled".equals(impl)) {
+            return pooled.deserialize(serializedRequest, RpcRequest.class);
+        }
+        return threadLocal.deserialize(serializedRequest, RpcRequest.class);
+    }
+
+    @Benchmark
+    public Object decodeResponse() {
+        serializedResponse.readerIndex(0);
+        if ("pooled".equals(impl)) {
+            return pooled.deserialize(serializedResponse, RpcResponse.class);
+        }
+        return threadLocal.deserialize(serializedResponse, RpcResponse.class);
+    }
+}
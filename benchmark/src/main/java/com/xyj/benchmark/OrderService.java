@@ -0,0 +1,15 @@
+package com.xyj.benchmark;
+
+import java.util.List;
+
+/**
+ * Payloads中的请求调用的服务
+ */
+public interface OrderService {
+
+    String hello(String name, int count, long time, boolean flag);
+
+    Payloads.OrderDto submit(Payloads.OrderDto order);
+
+    List<Payloads.OrderDto> saveAll(List<Payloads.OrderDto> orders);
+}
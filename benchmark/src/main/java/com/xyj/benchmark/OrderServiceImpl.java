@@ -0,0 +1,27 @@
+package com.xyj.benchmark;
+
+import com.xyj.annotation.RpcService;
+
+import java.util.List;
+
+/**
+ * 原样返回参数；带有@RpcService，编译时会为Payloads中的DTO生成序列化器
+ */
+@RpcService(value = OrderService.class, version = "1.0")
+public class OrderServiceImpl implements OrderService {
+
+    @Override
+    public String hello(String name, int count, long time, boolean flag) {
+        return "Hello " + name;
+    }
+
+    @Override
+    public Payloads.OrderDto submit(Payloads.OrderDto order) {
+        return order;
+    }
+
+    @Override
+    public List<Payloads.OrderDto> saveAll(List<Payloads.OrderDto> orders) {
+        return orders;
+    }
+}
@@ -0,0 +1,145 @@
+package com.xyj.benchmark;
+
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试使用的请求和响应，参数和返回值模拟实际的业务调用
+ * SMALL：基本类型和短字符串；NESTED：一个带嵌套对象和集合的订单；LARGE：200个订单（1000个明细）
+ */
+public class Payloads {
+
+    public enum Type {
+        SMALL, NESTED, LARGE
+    }
+
+    private static final String SERVICE = "com.xyj.benchmark.OrderService";
+
+    public static RpcRequest request(Type type) {
+        RpcRequest request = new RpcRequest();
+        request.setClassName(SERVICE);
+        request.setVersion("1.0");
+        switch (type) {
+            case SMALL:
+                request.setMethodName("hello");
+                request.setParameterTypes(new Class<?>[]{String.class, int.class, long.class, boolean.class});
+                request.setParameters(new Object[]{"world", 42, 1660000000000L, true});
+                break;
+            case NESTED:
+                request.setMethodName("submit");
+                request.setParameterTypes(new Class<?>[]{OrderDto.class});
+                request.setParameters(new Object[]{order(1)});
+                break;
+            default:
+                request.setMethodName("saveAll");
+                request.setParameterTypes(new Class<?>[]{List.class});
+                request.setParameters(new Object[]{orders(200)});
+                break;
+        }
+        return request;
+    }
+
+    public static RpcResponse response(Type type) {
+        RpcResponse response = new RpcResponse();
+        switch (type) {
+            case SMALL:
+                response.setResult("Hello world");
+                break;
+            case NESTED:
+                response.setResult(order(1));
+                break;
+            default:
+                response.setResult(orders(200));
+                break;
+        }
+        return response;
+    }
+
+    private static ArrayList<OrderDto> orders(int count) {
+        ArrayList<OrderDto> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order(i));
+        }
+        return orders;
+    }
+
+    private static OrderDto order(long id) {
+        AddressDto address = new AddressDto();
+        address.setCity("Hangzhou");
+        address.setStreet("No." + id + " Wensan Road");
+        address.setZip("310000");
+
+        CustomerDto customer = new CustomerDto();
+        customer.setId(10000 + id);
+        customer.setName("customer-" + id);
+        customer.setEmail("customer-" + id + "@example.com");
+        customer.setAddress(address);
+
+        ArrayList<ItemDto> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ItemDto item = new ItemDto();
+            item.setSku("SKU-" + id + "-" + i);
+            item.setName("item " + i);
+            item.setQuantity(i + 1);
+            item.setPrice(9.9 * (i + 1));
+            items.add(item);
+        }
+
+        HashMap<String, String> attributes = new HashMap<>();
+        attributes.put("channel", "app");
+        attributes.put("coupon", "NEWUSER");
+
+        OrderDto order = new OrderDto();
+        order.setId(id);
+        order.setOrderNo("ORDER-2022-" + id);
+        order.setAmount(148.5);
+        order.setPaid(id % 2 == 0);
+        order.setCreateTime(1660000000000L + id);
+        order.setCustomer(customer);
+        order.setItems(items);
+        order.setAttributes(attributes);
+        return order;
+    }
+
+    @Data
+    public static class OrderDto implements Serializable {
+        private long id;
+        private String orderNo;
+        private double amount;
+        private boolean paid;
+        private long createTime;
+        private CustomerDto customer;
+        private List<ItemDto> items;
+        private Map<String, String> attributes;
+    }
+
+    @Data
+    public static class CustomerDto implements Serializable {
+        private long id;
+        private String name;
+        private String email;
+        private AddressDto address;
+    }
+
+    @Data
+    public static class AddressDto implements Serializable {
+        private String city;
+        private String street;
+        private String zip;
+    }
+
+    @Data
+    public static class ItemDto implements Serializable {
+        private String sku;
+        private String name;
+        private int quantity;
+        private double price;
+    }
+}
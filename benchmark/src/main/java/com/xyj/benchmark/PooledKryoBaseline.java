@@ -0,0 +1,40 @@
+package com.xyj.benchmark;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import com.xyj.serializer.kryo.KryoPoolFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+/**
+ * 改为线程独享实例之前的KryoSerializer实现：每次调用从KryoPool借出实例，并新建Output/Input和流，作为对照
+ */
+class PooledKryoBaseline {
+    private static final int BUFFER_SIZE = 4096;
+
+    private final KryoPool pool = KryoPoolFactory.getKryoPoolInstance();
+
+    void serialize(Object obj, ByteBuf out) {
+        Kryo kryo = pool.borrow();
+        Output output = new Output(new ByteBufOutputStream(out), BUFFER_SIZE);
+        try {
+            kryo.writeObject(output, obj);
+            output.flush();
+        } finally {
+            pool.release(kryo);
+        }
+    }
+
+    Object deserialize(ByteBuf in, Class<?> clazz) {
+        Kryo kryo = pool.borrow();
+        Input input = new Input(new ByteBufInputStream(in), BUFFER_SIZE);
+        try {
+            return kryo.readObject(input, clazz);
+        } finally {
+            pool.release(kryo);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.xyj.benchmark;
+
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各序列化方式对RpcRequest/RpcResponse的序列化和反序列化吞吐
+ * 与编解码器一样写入和读取ByteBuf，输出缓冲区复用，只统计序列化本身的开销
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"kryo", "protostuff", "hessian", "hessian1", "json"})
+    private String serializer;
+
+    @Param({"SMALL", "NESTED", "LARGE"})
+    private Payloads.Type payload;
+
+    private BenchmarkCodec codec;
+
+    private RpcRequest request;
+
+    private RpcResponse response;
+
+    private ByteBuf out;
+
+    private ByteBuf serializedRequest;
+
+    private ByteBuf serializedResponse;
+
+    @Setup
+    public void setup() {
+        codec = BenchmarkCodec.of(serializer);
+        request = Payloads.request(payload);
+        response = Payloads.response(payload);
+        out = Unpooled.buffer(64 * 1024);
+        serializedRequest = Unpooled.buffer();
+        codec.serialize(request, serializedRequest);
+        serializedResponse = Unpooled.buffer();
+        codec.serialize(response, serializedResponse);
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.release();
+        serializedRequest.release();
+        serializedResponse.release();
+    }
+
+    @Benchmark
+    public ByteBuf serializeRequest() {
+        out.clear();
+        codec.serialize(request, out);
+        return out;
+    }
+
+    @Benchmark
+    public Object deserializeRequest() {
+        serializedRequest.readerIndex(0);
+        return codec.deserialize(serializedRequest, RpcRequest.class);
+    }
+
+    @Benchmark
+    public ByteBuf serializeResponse() {
+        out.clear();
+        codec.serialize(response, out);
+        return out;
+    }
+
+    @Benchmark
+    public Object deserializeResponse() {
+        serializedResponse.readerIndex(0);
+        return codec.deserialize(serializedResponse, RpcResponse.class);
+    }
+}
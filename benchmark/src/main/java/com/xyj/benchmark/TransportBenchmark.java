@@ -0,0 +1,176 @@
+package com.xyj.benchmark;
+
+import com.xyj.transport.TransportConfig;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回环地址上NIO和epoll传输的比较：服务端原样回写收到的字节，不经过RPC编解码
+ * pingPong每次发送一条payload字节的消息并等待回写，得到单连接的往返延迟分布；pipelined一次发送PIPELINE条再等待全部回写，得到吞吐
+ * 这个版本的epoll传输需要sun.misc.Unsafe，JDK 9以上不可用，此时epoll参数在setup时失败，只有nio的结果
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransportBenchmark {
+
+    private static final int PIPELINE = 64;
+
+    @Param({"nio", "epoll"})
+    private String transport;
+
+    @Param({"64", "4096"})
+    private int payload;
+
+    private EventLoopGroup bossGroup;
+
+    private EventLoopGroup workerGroup;
+
+    private EventLoopGroup clientGroup;
+
+    private Channel serverChannel;
+
+    private Channel channel;
+
+    private ByteBuf message;
+
+    private EchoCounter counter;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        TransportConfig config = new TransportConfig();
+        config.setNativeTransport("epoll".equals(transport));
+        if (config.isNativeTransport() && !config.isEpoll()) {
+            throw new IllegalStateException("Epoll transport is unavailable on this platform");
+        }
+        bossGroup = config.eventLoopGroup(1);
+        workerGroup = config.eventLoopGroup(1);
+        clientGroup = config.eventLoopGroup(1);
+        ServerBootstrap serverBootstrap = new ServerBootstrap();
+        serverBootstrap.group(bossGroup, workerGroup).channel(config.serverChannelClass())
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new Echo());
+                    }
+                });
+        for (Map.Entry<ChannelOption<?>, Object> option : config.serverChannelOptions().entrySet()) {
+            serverBootstrap.option((ChannelOption<Object>) option.getKey(), option.getValue());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> option : config.channelOptions().entrySet()) {
+            serverBootstrap.childOption((ChannelOption<Object>) option.getKey(), option.getValue());
+        }
+        serverChannel = serverBootstrap.bind("127.0.0.1", 0).sync().channel();
+
+        counter = new EchoCounter(payload);
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(clientGroup).channel(config.channelClass())
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(counter);
+                    }
+                });
+        for (Map.Entry<ChannelOption<?>, Object> option : config.channelOptions().entrySet()) {
+            bootstrap.option((ChannelOption<Object>) option.getKey(), option.getValue());
+        }
+        channel = bootstrap.connect(serverChannel.localAddress()).sync().channel();
+        message = Unpooled.directBuffer(payload).writeZero(payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.close().awaitUninterruptibly();
+        serverChannel.close().awaitUninterruptibly();
+        clientGroup.shutdownGracefully().awaitUninterruptibly();
+        workerGroup.shutdownGracefully().awaitUninterruptibly();
+        bossGroup.shutdownGracefully().awaitUninterruptibly();
+        message.release();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void pingPong() throws InterruptedException {
+        channel.writeAndFlush(message.duplicate().retain());
+        counter.echoed.acquire();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(PIPELINE)
+    public void pipelined() throws InterruptedException {
+        for (int i = 0; i < PIPELINE - 1; i++) {
+            channel.write(message.duplicate().retain());
+        }
+        channel.writeAndFlush(message.duplicate().retain());
+        counter.echoed.acquire(PIPELINE);
+    }
+
+    /**
+     * 服务端：读到的数据原样写回，一次读完后flush
+     */
+    private static class Echo extends ChannelHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ctx.write(msg);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+    }
+
+    /**
+     * 客户端：每收齐一条消息的字节数释放一个许可，received只在event loop上访问
+     */
+    private static class EchoCounter extends ChannelHandlerAdapter {
+        private final int size;
+        private final Semaphore echoed = new Semaphore(0);
+        private long received;
+
+        EchoCounter(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf buf = (ByteBuf) msg;
+            received += buf.readableBytes();
+            buf.release();
+            int messages = (int) (received / size);
+            if (messages > 0) {
+                received -= (long) messages * size;
+                echoed.release(messages);
+            }
+        }
+    }
+}
@@ -2,7 +2,13 @@ package com.xyj;
 
 import com.xyj.annotation.RpcAutowired;
 import com.xyj.connect.ConnectionManager;
+import com.xyj.connect.RpcClientConfig;
 import com.xyj.discovery.ServiceDiscovery;
+import com.xyj.buffer.BufferConfig;
+import com.xyj.codec.CodecConfig;
+import com.xyj.handler.WriteCoalescingPolicy;
+import com.xyj.transport.TransportConfig;
+import com.xyj.util.ThreadPoolUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +18,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
 import com.xyj.proxy.ObjectProxy;
+import com.xyj.proxy.RpcBatch;
 import com.xyj.proxy.RpcService;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Service;
@@ -37,6 +44,43 @@ public class RpcClient implements ApplicationContextAware, DisposableBean {
         this.serviceDiscovery = new ServiceDiscovery(address);
     }
 
+    public RpcClient(String address, WriteCoalescingPolicy writeCoalescingPolicy) {
+        this(address, writeCoalescingPolicy, new CodecConfig());
+    }
+
+    public RpcClient(String address, WriteCoalescingPolicy writeCoalescingPolicy, CodecConfig codecConfig) {
+        this(address, writeCoalescingPolicy, codecConfig, new BufferConfig());
+    }
+
+    public RpcClient(String address, WriteCoalescingPolicy writeCoalescingPolicy, CodecConfig codecConfig,
+                     BufferConfig bufferConfig) {
+        this(address, writeCoalescingPolicy, codecConfig, bufferConfig, new TransportConfig());
+    }
+
+    public RpcClient(String address, WriteCoalescingPolicy writeCoalescingPolicy, CodecConfig codecConfig,
+                     BufferConfig bufferConfig, TransportConfig transportConfig) {
+        this(newConfig(address, writeCoalescingPolicy, codecConfig, bufferConfig, transportConfig));
+    }
+
+    public RpcClient(RpcClientConfig config) {
+        //服务发现时就会建立连接，因此需要先设置连接参数
+        ConnectionManager.getInstance().configure(config);
+        ThreadPoolUtil.resize(threadPoolExecutor, config.getCallbackThreads(), config.getCallbackThreads());
+        this.serviceDiscovery = new ServiceDiscovery(config.getRegistryAddress());
+    }
+
+    private static RpcClientConfig newConfig(String address, WriteCoalescingPolicy writeCoalescingPolicy,
+                                             CodecConfig codecConfig, BufferConfig bufferConfig,
+                                             TransportConfig transportConfig) {
+        RpcClientConfig config = new RpcClientConfig();
+        config.setRegistryAddress(address);
+        config.setWriteCoalescing(writeCoalescingPolicy);
+        config.setCodec(codecConfig);
+        config.setBuffer(bufferConfig);
+        config.setTransport(transportConfig);
+        return config;
+    }
+
     /**
      * 创造一个代理对象
      * @param interfaceClass
@@ -59,6 +103,17 @@ public class RpcClient implements ApplicationContextAware, DisposableBean {
         return new ObjectProxy<T, P>(interfaceClass, version);
     }
 
+    /**
+     * 创建批量调用，多次调用打包成一个请求发送
+     * @param interfaceClass
+     * @param version
+     * @param <T>
+     * @return
+     */
+    public static <T> RpcBatch<T> createBatch(Class<T> interfaceClass, String version) {
+        return new RpcBatch<>(interfaceClass, version);
+    }
+
     public static void submit(Runnable task) {
         threadPoolExecutor.submit(task);
     }
@@ -1,23 +1,29 @@
 package com.xyj.connect;
 
 
+import com.xyj.buffer.BufferConfig;
+import com.xyj.codec.CodecConfig;
 import com.xyj.handler.RpcClientHandler;
 import com.xyj.handler.RpcClientInitializer;
+import com.xyj.handler.WriteCoalescingPolicy;
+import com.xyj.transport.TransportConfig;
 import com.xyj.vo.RpcConnectionInfo;
 import com.xyj.vo.RpcServiceInfo;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.xyj.route.RpcLoadBalance;
 import com.xyj.route.impl.RpcLoadBalanceRoundRobin;
+import com.xyj.util.ServiceUtil;
+import com.xyj.util.ThreadPoolUtil;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -31,7 +37,12 @@ import java.util.concurrent.locks.ReentrantLock;
 @Slf4j
 public class ConnectionManager {
 
-    private EventLoopGroup eventLoopGroup = new NioEventLoopGroup(4);
+    private volatile TransportConfig transportConfig = new TransportConfig();
+
+    // 客户端的I/O线程数
+    private volatile int ioThreads = 4;
+
+    private volatile EventLoopGroup eventLoopGroup = transportConfig.eventLoopGroup(ioThreads);
 
     private static ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(4, 8,
             600L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1000));
@@ -44,10 +55,19 @@ public class ConnectionManager {
 
     private Condition connected = lock.newCondition();
 
-    private long waitTimeout = 5000;
+    private volatile long waitTimeout = 5000;
 
     private RpcLoadBalance loadBalance = new RpcLoadBalanceRoundRobin();
 
+    private volatile WriteCoalescingPolicy writeCoalescingPolicy = new WriteCoalescingPolicy();
+
+    private volatile CodecConfig codecConfig = new CodecConfig();
+
+    private volatile BufferConfig bufferConfig = new BufferConfig();
+
+    // 调用超时（毫秒），key为"接口名#版本"或"接口名#版本.方法名"，优先于@RpcTimeout
+    private final Map<String, Long> timeouts = new ConcurrentHashMap<>();
+
     private volatile boolean isRunning = true;
 
     private ConnectionManager() {}
@@ -134,11 +154,18 @@ public class ConnectionManager {
         //将连接任务提交给线程池
         threadPoolExecutor.submit(new Runnable() {
             @Override
+            @SuppressWarnings("unchecked")
             public void run() {
                 Bootstrap b = new Bootstrap();
                 b.group(eventLoopGroup)
-                        .channel(NioSocketChannel.class)
-                        .handler(new RpcClientInitializer());
+                        .channel(transportConfig.channelClass())
+                        .handler(new RpcClientInitializer(writeCoalescingPolicy, codecConfig));
+                for (Map.Entry<ChannelOption<?>, Object> option : transportConfig.channelOptions().entrySet()) {
+                    b.option((ChannelOption<Object>) option.getKey(), option.getValue());
+                }
+                for (Map.Entry<ChannelOption<?>, Object> option : bufferConfig.channelOptions().entrySet()) {
+                    b.option((ChannelOption<Object>) option.getKey(), option.getValue());
+                }
 
                 ChannelFuture channelFuture = b.connect(remotePeer);
                 channelFuture.addListener(new ChannelFutureListener() {
@@ -215,6 +242,40 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * 选择另一个提供该服务的节点，用于服务端过载时重试；优先选择可写的连接，没有其他节点时返回null，不等待
+     * @param serviceKey
+     * @param exclude 返回过载的节点
+     * @return RpcClientHandler
+     */
+    public RpcClientHandler chooseOtherHandler(String serviceKey, RpcClientHandler exclude) {
+        List<RpcClientHandler> candidates = new ArrayList<>();
+        for (Map.Entry<RpcConnectionInfo, RpcClientHandler> entry : connectedServerNodes.entrySet()) {
+            if (entry.getValue() == exclude || entry.getKey().getServiceInfoList() == null) {
+                continue;
+            }
+            for (RpcServiceInfo serviceInfo : entry.getKey().getServiceInfoList()) {
+                if (serviceKey.equals(ServiceUtil.makeServiceKey(serviceInfo.getServiceName(), serviceInfo.getVersion()))) {
+                    candidates.add(entry.getValue());
+                    break;
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        List<RpcClientHandler> writable = new ArrayList<>(candidates.size());
+        for (RpcClientHandler candidate : candidates) {
+            if (candidate.isWritable()) {
+                writable.add(candidate);
+            }
+        }
+        if (!writable.isEmpty()) {
+            candidates = writable;
+        }
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
     /**
      * 根据RpcConnectionInfo移除并关闭该节点和对应的RpcClientHandler
      * @param rpcConnectionInfo
@@ -240,6 +301,79 @@ public class ConnectionManager {
         log.info("Remove one connection, host: {}, port: {}", rpcConnectionInfo.getHost(), rpcConnectionInfo.getPort());
     }
 
+    /**
+     * 设置写合并策略，只对之后建立的连接生效
+     * @param writeCoalescingPolicy
+     */
+    public void setWriteCoalescingPolicy(WriteCoalescingPolicy writeCoalescingPolicy) {
+        this.writeCoalescingPolicy = writeCoalescingPolicy;
+    }
+
+    /**
+     * 设置编解码参数（帧长度、压缩），只对之后建立的连接生效
+     * @param codecConfig
+     */
+    public void setCodecConfig(CodecConfig codecConfig) {
+        this.codecConfig = codecConfig;
+    }
+
+    /**
+     * 设置缓冲区参数（分配器、接收缓冲区、写水位），只对之后建立的连接生效
+     * @param bufferConfig
+     */
+    public void setBufferConfig(BufferConfig bufferConfig) {
+        this.bufferConfig = bufferConfig;
+    }
+
+    /**
+     * 设置传输层参数（epoll/NIO、TCP_NODELAY），需要在建立连接之前调用
+     * 传输方式改变时换用新的I/O线程组，原来的线程组关闭
+     * @param transportConfig
+     */
+    public void setTransportConfig(TransportConfig transportConfig) {
+        setTransportConfig(transportConfig, ioThreads);
+    }
+
+    private synchronized void setTransportConfig(TransportConfig transportConfig, int ioThreads) {
+        boolean changed = transportConfig.isEpoll() != this.transportConfig.isEpoll() || ioThreads != this.ioThreads;
+        this.transportConfig = transportConfig;
+        this.ioThreads = ioThreads;
+        if (changed) {
+            EventLoopGroup previous = eventLoopGroup;
+            eventLoopGroup = transportConfig.eventLoopGroup(ioThreads);
+            previous.shutdownGracefully();
+        }
+    }
+
+    /**
+     * 按客户端参数设置I/O线程、连接线程池、等待时间和各连接参数，需要在建立连接之前调用
+     * @param config
+     */
+    public void configure(RpcClientConfig config) {
+        setTransportConfig(config.getTransport(), config.getIoThreads());
+        setWriteCoalescingPolicy(config.getWriteCoalescing());
+        setCodecConfig(config.getCodec());
+        setBufferConfig(config.getBuffer());
+        ThreadPoolUtil.resize(threadPoolExecutor, config.getConnectCoreThreads(), config.getConnectMaxThreads());
+        this.waitTimeout = config.getWaitTimeout();
+    }
+
+    /**
+     * 设置服务或方法的调用超时，需要在第一次调用该方法之前设置
+     * @param target "接口名#版本"或"接口名#版本.方法名"
+     * @param timeoutMillis 为0时不限
+     */
+    public void setTimeout(String target, long timeoutMillis) {
+        timeouts.put(target, timeoutMillis);
+    }
+
+    /**
+     * 返回服务或方法的调用超时，没有配置时返回null
+     */
+    public Long getTimeout(String target) {
+        return timeouts.get(target);
+    }
+
     /**
      * 关闭所有连接
      */
@@ -0,0 +1,58 @@
+package com.xyj.connect;
+
+import com.xyj.buffer.BufferConfig;
+import com.xyj.codec.CodecConfig;
+import com.xyj.config.ConfigBinder;
+import com.xyj.handler.WriteCoalescingPolicy;
+import com.xyj.transport.TransportConfig;
+import lombok.Data;
+
+import java.util.Properties;
+
+/**
+ * 客户端的全部参数，可以在代码中设置，也可以从rpc.properties中以client.为前缀的配置绑定，
+ * 例如 client.ioThreads=8、client.waitTimeout=3000、client.buffer.writeBufferHighWaterMark=32768
+ * Spring中可以直接作为bean配置属性，或通过工厂方法load从properties文件创建
+ */
+@Data
+public class RpcClientConfig {
+
+    // 注册中心（zookeeper）地址，load时默认使用registry.address
+    private String registryAddress;
+
+    // 所有连接共用的I/O线程数
+    private int ioThreads = 4;
+
+    // 建立连接的线程池
+    private int connectCoreThreads = 4;
+
+    private int connectMaxThreads = 8;
+
+    // 没有可用的服务节点时最多等待的毫秒数
+    private long waitTimeout = 5000;
+
+    // 执行异步调用回调的线程数
+    private int callbackThreads = 16;
+
+    private TransportConfig transport = new TransportConfig();
+
+    // 分配器、接收缓冲区以及每个连接的写缓冲区高低水位
+    private BufferConfig buffer = new BufferConfig();
+
+    private CodecConfig codec = new CodecConfig();
+
+    private WriteCoalescingPolicy writeCoalescing = new WriteCoalescingPolicy();
+
+    /**
+     * 从classpath中的properties文件创建
+     */
+    public static RpcClientConfig load(String resource) {
+        return from(ConfigBinder.load(resource));
+    }
+
+    public static RpcClientConfig from(Properties properties) {
+        RpcClientConfig config = new RpcClientConfig();
+        config.setRegistryAddress(properties.getProperty("registry.address"));
+        return ConfigBinder.bind(config, properties, "client.");
+    }
+}
@@ -0,0 +1,42 @@
+package com.xyj.handler;
+
+import com.xyj.codec.CodecConfig;
+import com.xyj.message.Handshake;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+
+/**
+ * 连接建立后向服务端发起握手，协商该连接使用的参数
+ * 在收到服务端回复之前按未协商的默认参数收发（不压缩）
+ */
+@Slf4j
+public class ClientHandshakeHandler extends SimpleChannelInboundHandler<Handshake> {
+
+    private final CodecConfig codecConfig;
+
+    public ClientHandshakeHandler(CodecConfig codecConfig) {
+        this.codecConfig = codecConfig;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        Handshake handshake = new Handshake();
+        handshake.setCompressions(new ArrayList<>(codecConfig.getCompressions()));
+        handshake.setSerializers(new ArrayList<>(codecConfig.getSerializers()));
+        handshake.setKryoRegistration(codecConfig.isKryoRegistration());
+        handshake.setOverloadFrame(true);
+        ctx.writeAndFlush(handshake);
+        super.channelActive(ctx);
+    }
+
+    /**
+     * 协商出的参数已经由解码器在解码握手帧时写入ChannelSession，这里不需要再处理
+     */
+    @Override
+    protected void messageReceived(ChannelHandlerContext ctx, Handshake handshake) throws Exception {
+        log.debug("Handshake completed with {}", ctx.channel().remoteAddress());
+    }
+}
@@ -0,0 +1,68 @@
+package com.xyj.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 合并flush，减少系统调用次数
+ * 业务线程的writeAndFlush最终都在event loop上执行，这里把flush推迟到当前已提交的写任务之后统一执行一次，
+ * 所有状态只在event loop线程上访问，不需要同步
+ */
+public class FlushCoalescingHandler extends ChannelHandlerAdapter {
+
+    private final WriteCoalescingPolicy policy;
+
+    private int pendingMessages;
+
+    private long pendingBytes;
+
+    private boolean flushScheduled;
+
+    public FlushCoalescingHandler(WriteCoalescingPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingMessages++;
+        if (msg instanceof ByteBuf) {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        }
+        ctx.write(msg, promise);
+        if (pendingMessages >= policy.getMaxMessages() || pendingBytes >= policy.getMaxBytes()) {
+            flushNow(ctx);
+        }
+    }
+
+    @Override
+    public void flush(final ChannelHandlerContext ctx) throws Exception {
+        if (!policy.isEnabled()) {
+            flushNow(ctx);
+            return;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushScheduled = false;
+                    flushNow(ctx);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushNow(ctx);
+        ctx.close(promise);
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        pendingMessages = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+}
@@ -3,27 +3,61 @@ package com.xyj.handler;
 import com.xyj.connect.ConnectionManager;
 import com.xyj.vo.RpcConnectionInfo;
 import com.xyj.vo.RpcFuture;
+import com.xyj.vo.RpcStreamListener;
+import com.xyj.codec.ChannelSession;
+import com.xyj.codec.RpcProtocol;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.handler.timeout.IdleStateEvent;
 import com.xyj.message.Beat;
+import com.xyj.message.Overloaded;
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcBatchResponse;
+import com.xyj.message.RpcMessage;
 import com.xyj.message.RpcRequest;
 import com.xyj.message.RpcResponse;
+import com.xyj.message.StreamFrame;
+import com.xyj.metrics.RpcMetrics;
+import com.xyj.serializer.Serializer;
+import com.xyj.util.ServiceUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
  * RPC请求的Handler，一个Channel对应着一个RPCHandler实例，因为该Handler不是Shareable的
  */
 @Slf4j
-public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
+public class RpcClientHandler extends SimpleChannelInboundHandler<RpcMessage> {
 
-    private ConcurrentHashMap<String, RpcFuture> pendingRPC =
+    // 服务端过载时最多换这么多次节点
+    private static final int MAX_OVERLOAD_RETRIES = 2;
+
+    private static final LongAdder OVERLOAD_RETRIED = RpcMetrics.counter("client.overloaded.retried");
+
+    private static final LongAdder OVERLOAD_FAILED = RpcMetrics.counter("client.overloaded.failed");
+
+    // 到截止时间还没有收到响应（包括发送前就已经过了截止时间）的请求数
+    private static final LongAdder DEADLINE_EXCEEDED = RpcMetrics.counter("client.deadline.exceeded");
+
+    private ConcurrentHashMap<Long, RpcFuture> pendingRPC =
             new ConcurrentHashMap<>();//记录所有待处理的rpc请求
 
+    private ConcurrentHashMap<Long, RpcStreamListener> pendingStreams =
+            new ConcurrentHashMap<>();//记录所有进行中的流式调用
+
+    private ConcurrentHashMap<Long, PendingBatch> pendingBatches =
+            new ConcurrentHashMap<>();//记录所有待处理的批量调用
+
     private volatile Channel channel;
 
     private SocketAddress remotePeer;
@@ -41,6 +75,30 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
         this.remotePeer = this.channel.remoteAddress();
     }
 
+    /**
+     * 连接恢复可写时通知进行中的流，等待可写的客户端流继续发送
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            for (RpcStreamListener stream : pendingStreams.values()) {
+                stream.onWritable();
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    /**
+     * 待发送的字节是否低于写缓冲区高水位，负载均衡优先选择可写的连接
+     * @return
+     */
+    public boolean isWritable() {
+        Channel channel = this.channel;
+        return channel != null && channel.isWritable();
+    }
+
     /**
      * 该channel关闭时移除对应的handler
      * @param ctx
@@ -50,6 +108,25 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         super.channelInactive(ctx);
         ConnectionManager.getInstance().removeHandler(rpcConnectionInfo);
+        //连接断开后不会再收到响应，让所有未完成的请求失败
+        for (Long requestId : pendingRPC.keySet()) {
+            RpcFuture rpcFuture = pendingRPC.remove(requestId);
+            if (rpcFuture != null) {
+                rpcFuture.fail(new ClosedChannelException());
+            }
+        }
+        for (Long requestId : pendingBatches.keySet()) {
+            PendingBatch batch = pendingBatches.remove(requestId);
+            if (batch != null) {
+                batch.failAll(new ClosedChannelException());
+            }
+        }
+        for (Long requestId : pendingStreams.keySet()) {
+            RpcStreamListener stream = pendingStreams.remove(requestId);
+            if (stream != null) {
+                stream.onFailure(new ClosedChannelException());
+            }
+        }
     }
 
     /**
@@ -70,19 +147,142 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
      * @throws Exception
      */
     @Override
-    protected void messageReceived(ChannelHandlerContext channelHandlerContext, RpcResponse rpcResponse) throws Exception {
-        String requestId = rpcResponse.getRequestId();
+    protected void messageReceived(ChannelHandlerContext channelHandlerContext, RpcMessage message) throws Exception {
+        if (message instanceof StreamFrame) {
+            handleStreamFrame((StreamFrame) message);
+            return;
+        }
+        if (message instanceof RpcBatchResponse) {
+            handleBatchResponse((RpcBatchResponse) message);
+            return;
+        }
+        if (message instanceof Overloaded) {
+            handleOverloaded((Overloaded) message);
+            return;
+        }
+        RpcResponse rpcResponse = (RpcResponse) message;
+        long requestId = rpcResponse.getRequestId();
         log.debug("Receive response: " + requestId);
         RpcFuture rpcFuture = pendingRPC.get(requestId);
         //该RPC请求结束，从map中移除该连接，并发起该RPCFuture所有回调
         if (rpcFuture != null) {
             pendingRPC.remove(requestId);
             rpcFuture.done(rpcResponse);
+        } else if (rpcResponse.isError() && failPending(requestId, rpcResponse.getError())) {
+            log.debug("Fail pending batch or stream {}: {}", requestId, rpcResponse.getError());
         } else {
             log.warn("Can not get pending response for request id: " + requestId);
         }
     }
 
+    /**
+     * 解码器无法解码批量响应或流的帧时，以带错误的响应代替，这里让对应的批量调用或流失败
+     * @param requestId
+     * @param error
+     * @return 是否有对应的批量调用或流
+     */
+    private boolean failPending(long requestId, String error) {
+        PendingBatch batch = pendingBatches.remove(requestId);
+        if (batch != null) {
+            batch.failAll(new IllegalStateException(error));
+            return true;
+        }
+        RpcStreamListener stream = pendingStreams.remove(requestId);
+        if (stream != null) {
+            stream.onFailure(new IllegalStateException(error));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 服务端过载，请求没有执行：换一个提供该服务的节点重新发送，没有其他节点或重试次数用完时失败；流式调用直接失败
+     * @param overloaded
+     */
+    private void handleOverloaded(Overloaded overloaded) {
+        long requestId = overloaded.getRequestId();
+        RpcFuture rpcFuture = pendingRPC.remove(requestId);
+        if (rpcFuture == null) {
+            //流式调用已经和这个连接绑定，不重试
+            RpcStreamListener stream = pendingStreams.remove(requestId);
+            if (stream != null) {
+                OVERLOAD_FAILED.increment();
+                stream.onFailure(new RejectedExecutionException("Server " + remotePeer + " is overloaded"));
+                return;
+            }
+            log.warn("Can not get pending request for overloaded request id: " + requestId);
+            return;
+        }
+        RpcRequest request = rpcFuture.getRequest();
+        RpcClientHandler next = null;
+        if (rpcFuture.incrementOverloadRetries() <= MAX_OVERLOAD_RETRIES) {
+            next = ConnectionManager.getInstance().chooseOtherHandler(
+                    ServiceUtil.makeServiceKey(request.getClassName(), request.getVersion()), this);
+        }
+        if (next == null) {
+            OVERLOAD_FAILED.increment();
+            rpcFuture.fail(new RejectedExecutionException("Server " + remotePeer + " is overloaded"));
+            return;
+        }
+        log.debug("Server {} is overloaded, retry request {} on another node", remotePeer, requestId);
+        OVERLOAD_RETRIED.increment();
+        next.send(request, rpcFuture);
+    }
+
+    /**
+     * 批量调用的结果可能分多次返回，收齐后移除
+     * @param batchResponse
+     */
+    private void handleBatchResponse(RpcBatchResponse batchResponse) {
+        long requestId = batchResponse.getRequestId();
+        PendingBatch batch = pendingBatches.get(requestId);
+        if (batch == null) {
+            log.warn("Can not get pending batch for request id: " + requestId);
+            return;
+        }
+        int[] indexes = batchResponse.getIndexes();
+        for (int i = 0; i < indexes.length; i++) {
+            RpcResponse response = new RpcResponse();
+            response.setRequestId(requestId);
+            response.setResult(batchResponse.getResults()[i]);
+            response.setError(batchResponse.getErrors()[i]);
+            batch.futures[indexes[i]].done(response);
+        }
+        batch.remaining -= indexes.length;
+        if (batch.remaining <= 0) {
+            pendingBatches.remove(requestId);
+            if (batch.deadlineTask != null) {
+                batch.deadlineTask.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 流式调用的帧交给对应的RpcStreamListener
+     * @param frame
+     */
+    private void handleStreamFrame(StreamFrame frame) {
+        long requestId = frame.getRequestId();
+        if (frame.getType() == RpcProtocol.TYPE_STREAM_DATA) {
+            RpcStreamListener stream = pendingStreams.get(requestId);
+            if (stream != null) {
+                stream.onData(frame.getPayload());
+            }
+        } else if (frame.getType() == RpcProtocol.TYPE_STREAM_END) {
+            RpcStreamListener stream = pendingStreams.remove(requestId);
+            if (stream != null) {
+                stream.onEnd(frame.getError());
+            }
+        } else if (frame.getType() == RpcProtocol.TYPE_STREAM_DEMAND) {
+            RpcStreamListener stream = pendingStreams.get(requestId);
+            if (stream != null) {
+                stream.onDemand(frame.getDemand());
+            }
+        } else {
+            log.warn("Unexpected stream frame type {}, request id: {}", frame.getType(), requestId);
+        }
+    }
+
     /**
      * 异常处理
      * @param ctx
@@ -106,7 +306,7 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (evt instanceof IdleStateEvent) {
-            sendRequest(Beat.BEAT_PING);
+            ctx.writeAndFlush(Beat.BEAT_PING);
             log.debug("Client send beat-ping to " + remotePeer);
         } else {
             super.userEventTriggered(ctx, evt);
@@ -126,29 +326,190 @@ public class RpcClientHandler extends SimpleChannelInboundHandler<RpcResponse> {
     }
 
     /**
-     * 发送request
+     * 异步发送request，不等待写完成，写失败时rpcFuture失败
+     * 请求带有截止时间时把剩余的时间发给服务端，到截止时间还没有响应时rpcFuture失败
+     * flush由FlushCoalescingHandler合并
      * @param request
      * @return
      */
-    public RpcFuture sendRequest(RpcRequest request) {
-        RpcFuture rpcFuture = new RpcFuture(request);
+    public RpcFuture sendRequest(final RpcRequest request) {
+        final RpcFuture rpcFuture = new RpcFuture(request);
+        send(request, rpcFuture);
+        return rpcFuture;
+    }
+
+    private void send(final RpcRequest request, final RpcFuture rpcFuture) {
+        long remaining = request.getDeadline() != 0 ? request.getDeadline() - System.nanoTime() : 0;
+        if (request.getDeadline() != 0 && remaining <= 0) {
+            //已经过了截止时间，不再发送
+            DEADLINE_EXCEEDED.increment();
+            rpcFuture.fail(new TimeoutException("Deadline exceeded before sending request " + request.getRequestId()));
+            return;
+        }
         pendingRPC.put(request.getRequestId(), rpcFuture);
-        try {
-            ChannelFuture channelFuture = channel.writeAndFlush(request).sync();
-            if (!channelFuture.isSuccess()) {
-                log.error("Send request {} error", request.getRequestId());
+        if (remaining > 0) {
+            request.setTimeout(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            rpcFuture.setDeadlineTask(channel.eventLoop().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    //服务端不会执行或响应已过期的请求，这里在截止时间让等待的调用失败
+                    if (pendingRPC.remove(request.getRequestId(), rpcFuture)) {
+                        DEADLINE_EXCEEDED.increment();
+                        rpcFuture.fail(new TimeoutException("Deadline exceeded, request id: " + request.getRequestId()));
+                    }
+                }
+            }, remaining, TimeUnit.NANOSECONDS));
+        }
+        channel.writeAndFlush(intern(request)).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture channelFuture) throws Exception {
+                if (!channelFuture.isSuccess()) {
+                    log.error("Send request {} error", request.getRequestId());
+                    if (pendingRPC.remove(request.getRequestId()) != null) {
+                        rpcFuture.fail(channelFuture.cause());
+                    }
+                }
             }
-        } catch (InterruptedException e) {
-            log.error("Send request exception: " + e.getMessage());
+        });
+    }
+
+
+    /**
+     * 服务端在握手中分配了方法id时，发送只携带id、参数和指定的序列化方式的请求，原请求保留给RpcFuture
+     * 握手完成前或方法没有id时发送原请求
+     * @param request
+     * @return
+     */
+    private RpcRequest intern(RpcRequest request) {
+        ChannelSession session = ChannelSession.get(channel);
+        Map<String, Integer> methodIds = session.getMethodIds();
+        if (methodIds == null || request.getMethodKey() == null) {
+            return request;
         }
+        Integer methodId = methodIds.get(request.getMethodKey());
+        if (methodId == null) {
+            return request;
+        }
+        RpcRequest interned = new RpcRequest();
+        interned.setRequestId(request.getRequestId());
+        interned.setMethodId(methodId);
+        interned.setParameters(request.getParameters());
+        interned.setTimeout(request.getTimeout());
+        //服务指定了序列化方式时使用指定的方式，响应也会使用同一方式
+        Map<String, Serializer> methodSerializers = session.getMethodSerializers();
+        if (methodSerializers != null) {
+            Serializer serializer = methodSerializers.get(request.getMethodKey());
+            if (serializer != null) {
+                interned.setSerializer(serializer.getId());
+            }
+        }
+        return interned;
+    }
 
-        return rpcFuture;
+    /**
+     * 发送批量调用，futures与批量请求中的调用一一对应
+     * @param batch
+     * @param futures
+     */
+    public void sendBatch(final RpcBatchRequest batch, final RpcFuture[] futures) {
+        final PendingBatch pendingBatch = new PendingBatch(futures);
+        long remaining = batch.getDeadline() != 0 ? batch.getDeadline() - System.nanoTime() : 0;
+        if (batch.getDeadline() != 0 && remaining <= 0) {
+            DEADLINE_EXCEEDED.increment();
+            pendingBatch.failAll(new TimeoutException("Deadline exceeded before sending batch " + batch.getRequestId()));
+            return;
+        }
+        pendingBatches.put(batch.getRequestId(), pendingBatch);
+        if (remaining > 0) {
+            batch.setTimeout(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            pendingBatch.deadlineTask = channel.eventLoop().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    //到截止时间还没有返回的调用失败，已经返回的不受影响
+                    if (pendingBatches.remove(batch.getRequestId(), pendingBatch)) {
+                        DEADLINE_EXCEEDED.increment();
+                        pendingBatch.failAll(new TimeoutException("Deadline exceeded, batch id: " + batch.getRequestId()));
+                    }
+                }
+            }, remaining, TimeUnit.NANOSECONDS);
+        }
+        channel.writeAndFlush(batch).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture channelFuture) throws Exception {
+                if (!channelFuture.isSuccess()) {
+                    log.error("Send batch request {} error", batch.getRequestId());
+                    if (pendingBatches.remove(batch.getRequestId()) != null) {
+                        pendingBatch.failAll(channelFuture.cause());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 发起流式调用，服务端发来的帧回调给stream
+     * @param request
+     * @param stream
+     */
+    public void sendStreamRequest(final RpcRequest request, final RpcStreamListener stream) {
+        request.setStream(true);
+        pendingStreams.put(request.getRequestId(), stream);
+        channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture channelFuture) throws Exception {
+                if (!channelFuture.isSuccess()) {
+                    log.error("Send stream request {} error", request.getRequestId());
+                    if (pendingStreams.remove(request.getRequestId()) != null) {
+                        stream.onFailure(channelFuture.cause());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 发送流的控制帧（DEMAND、CANCEL）
+     * @param frame
+     */
+    public void sendStreamFrame(StreamFrame frame) {
+        channel.writeAndFlush(frame);
     }
 
+    /**
+     * 客户端主动取消流
+     * @param requestId
+     * @return 该流是否还在进行中
+     */
+    public boolean removeStream(long requestId) {
+        return pendingStreams.remove(requestId) != null;
+    }
 
     public void setRpcConnectionInfo(RpcConnectionInfo RpcConnectionInfo) {
         this.rpcConnectionInfo = RpcConnectionInfo;
     }
 
+    /**
+     * 一次批量调用中各个调用的future，remaining只在event loop线程上访问
+     */
+    private static class PendingBatch {
+        private final RpcFuture[] futures;
+        private int remaining;
+        // 发送线程设置，响应收齐时取消；没来得及取消时到期也不会再做什么
+        private volatile Future<?> deadlineTask;
+
+        PendingBatch(RpcFuture[] futures) {
+            this.futures = futures;
+            this.remaining = futures.length;
+        }
+
+        void failAll(Throwable cause) {
+            for (RpcFuture future : futures) {
+                if (!future.isDone()) {
+                    future.fail(cause);
+                }
+            }
+        }
+    }
+
 
 }
@@ -0,0 +1,25 @@
+package com.xyj.handler;
+
+import lombok.Data;
+
+/**
+ * 写合并策略
+ * 开启后同一个event loop tick内的多次flush合并为一次，待发送的消息数或字节数达到上限时立即flush
+ */
+@Data
+public class WriteCoalescingPolicy {
+
+    private boolean enabled = true;
+
+    // 累计多少条消息后立即flush
+    private int maxMessages = 64;
+
+    // 累计多少字节后立即flush
+    private int maxBytes = 64 * 1024;
+
+    public static WriteCoalescingPolicy disabled() {
+        WriteCoalescingPolicy policy = new WriteCoalescingPolicy();
+        policy.setEnabled(false);
+        return policy;
+    }
+}
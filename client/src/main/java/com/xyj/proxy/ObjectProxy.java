@@ -1,28 +1,54 @@
 package com.xyj.proxy;
 
+import com.xyj.annotation.RpcTimeout;
 import com.xyj.connect.ConnectionManager;
+import com.xyj.context.RpcContext;
 import com.xyj.handler.RpcClientHandler;
+import com.xyj.handler.StreamObserver;
+import com.xyj.vo.AsyncRPCCallback;
+import com.xyj.vo.ClientCall;
 import com.xyj.vo.RpcFuture;
+import com.xyj.vo.RpcStream;
+import com.xyj.vo.StreamIterator;
 import com.xyj.message.RpcRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.xyj.util.RequestIdGenerator;
+import com.xyj.util.ServiceTypeScanner;
 import com.xyj.util.ServiceUtil;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.UUID;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
 
 @Slf4j
 public class ObjectProxy<T, P> implements InvocationHandler, RpcService<T, P, SerializableFunction<T>> {
 
+    // 返回值为Iterator的流式调用预取的元素个数
+    private static final int STREAM_PREFETCH = 256;
+
     private Class<T> clazz;
 
     private String version;
 
+    // 方法签名，用来查找握手时服务端分配的方法id
+    private final Map<Method, String> methodKeys = new ConcurrentHashMap<>();
+
+    // 方法的调用超时（毫秒），0表示不限；按方法名调用时以方法名为key
+    private final Map<Object, Long> timeouts = new ConcurrentHashMap<>();
+
     public ObjectProxy(Class<T> clazz, String version) {
         this.clazz = clazz;
         this.version = version;
+        // 提前创建参数和返回值类型的Schema，第一次调用时不再创建
+        ServiceTypeScanner.warmUp(Collections.singletonList(clazz));
     }
 
     @Override
@@ -43,7 +69,7 @@ public class ObjectProxy<T, P> implements InvocationHandler, RpcService<T, P, Se
         }
         //组装request
         RpcRequest request = new RpcRequest();
-        request.setRequestId(UUID.randomUUID().toString());
+        request.setRequestId(RequestIdGenerator.nextId());
         request.setClassName(method.getDeclaringClass().getName());
         request.setMethodName(method.getName());
         request.setParameterTypes(method.getParameterTypes());
@@ -65,15 +91,111 @@ public class ObjectProxy<T, P> implements InvocationHandler, RpcService<T, P, Se
         String serviceKey = ServiceUtil.makeServiceKey(method.getDeclaringClass().getName(), version);
         //根据服务名获取handler，并发送请求
         RpcClientHandler handler = ConnectionManager.getInstance().chooseHandler(serviceKey);
+        //流式调用：返回值为Publisher时由调用方订阅，为Iterator时立即订阅并阻塞迭代
+        Class<?> returnType = method.getReturnType();
+        if (returnType == Flow.Publisher.class) {
+            return new RpcStream<>(request, handler);
+        }
+        if (returnType == Iterator.class) {
+            StreamIterator<Object> iterator = new StreamIterator<>(STREAM_PREFETCH);
+            new RpcStream<>(request, handler).subscribe(iterator);
+            return iterator;
+        }
+        //客户端流/双向流：StreamObserver参数接收服务端的响应，返回的StreamObserver用于发送数据
+        if (returnType == StreamObserver.class) {
+            return openCall(request, handler, method, args);
+        }
+        request.setMethodKey(methodKeys.computeIfAbsent(method, m -> ServiceUtil.makeMethodKey(serviceKey,
+                m.getName(), m.getParameterTypes())));
+        request.setDeadline(deadlineOf(method, serviceKey, method.getName()));
         RpcFuture rpcFuture = handler.sendRequest(request);
+        //异步方法：返回的future在响应到达后由回调完成，调用线程不阻塞
+        if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+            return toCompletableFuture(rpcFuture);
+        }
         return rpcFuture.get();
     }
 
+    /**
+     * 调用的截止时间：外部配置的方法超时 > 方法上的@RpcTimeout > 外部配置的服务超时 > 接口上的@RpcTimeout，
+     * 再与当前线程RpcContext中的截止时间（在服务方法中调用时为该请求剩余的时间）取较早的一个
+     * @param key 代理方法或按名称调用时的方法名
+     */
+    private long deadlineOf(Object key, String serviceKey, String methodName) {
+        long timeout = timeouts.computeIfAbsent(key, k -> timeoutOf(serviceKey, methodName,
+                k instanceof Method ? (Method) k : null));
+        return RpcContext.earlier(RpcContext.deadlineAfter(timeout), RpcContext.getDeadline());
+    }
+
+    private long timeoutOf(String serviceKey, String methodName, Method method) {
+        ConnectionManager manager = ConnectionManager.getInstance();
+        Long timeout = manager.getTimeout(serviceKey + "." + methodName);
+        if (timeout != null) {
+            return timeout;
+        }
+        RpcTimeout annotation = method != null ? method.getAnnotation(RpcTimeout.class) : null;
+        if (method == null) {
+            //按名称调用时使用同名方法中第一个有注解的
+            for (Method candidate : clazz.getMethods()) {
+                if (candidate.getName().equals(methodName) && candidate.isAnnotationPresent(RpcTimeout.class)) {
+                    annotation = candidate.getAnnotation(RpcTimeout.class);
+                    break;
+                }
+            }
+        }
+        if (annotation != null) {
+            return annotation.value();
+        }
+        timeout = manager.getTimeout(serviceKey);
+        if (timeout != null) {
+            return timeout;
+        }
+        annotation = clazz.getAnnotation(RpcTimeout.class);
+        return annotation != null ? annotation.value() : 0;
+    }
+
+    private static CompletableFuture<Object> toCompletableFuture(RpcFuture rpcFuture) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        rpcFuture.addCallback(new AsyncRPCCallback() {
+            @Override
+            public void success(Object result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void fail(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClientCall openCall(RpcRequest request, RpcClientHandler handler, Method method, Object[] args) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        StreamObserver<Object> responseObserver = null;
+        Object[] parameters = args.clone();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (parameterTypes[i] == StreamObserver.class) {
+                responseObserver = (StreamObserver<Object>) args[i];
+                parameters[i] = null;//由服务端替换为发送响应的observer
+            }
+        }
+        if (responseObserver == null) {
+            throw new IllegalArgumentException("Stream method requires a StreamObserver parameter: " + method);
+        }
+        request.setParameters(parameters);
+        ClientCall call = new ClientCall(request, handler, responseObserver);
+        call.start();
+        return call;
+    }
+
     @Override
     public RpcFuture call(String funcName, Object... args) throws Exception {
         String serviceKey = ServiceUtil.makeServiceKey(this.clazz.getName(), version);
         RpcClientHandler handler = ConnectionManager.getInstance().chooseHandler(serviceKey);
         RpcRequest request = createRequest(this.clazz.getName(), funcName, args);
+        request.setDeadline(deadlineOf(funcName, serviceKey, funcName));
         RpcFuture rpcFuture = handler.sendRequest(request);
         return rpcFuture;
     }
@@ -82,14 +204,16 @@ public class ObjectProxy<T, P> implements InvocationHandler, RpcService<T, P, Se
     public RpcFuture call(SerializableFunction<T> tSerializableFunction, Object... args) throws Exception {
         String serviceKey = ServiceUtil.makeServiceKey(this.clazz.getName(), version);
         RpcClientHandler handler = ConnectionManager.getInstance().chooseHandler(serviceKey);
-        RpcRequest request = createRequest(this.clazz.getName(), tSerializableFunction.getName(), args);
+        String funcName = tSerializableFunction.getName();
+        RpcRequest request = createRequest(this.clazz.getName(), funcName, args);
+        request.setDeadline(deadlineOf(funcName, serviceKey, funcName));
         RpcFuture rpcFuture = handler.sendRequest(request);
         return rpcFuture;
     }
 
     private RpcRequest createRequest(String className, String methodName, Object[] args) {
         RpcRequest request = new RpcRequest();
-        request.setRequestId(UUID.randomUUID().toString());
+        request.setRequestId(RequestIdGenerator.nextId());
         request.setClassName(className);
         request.setMethodName(methodName);
         request.setParameters(args);
@@ -99,6 +223,8 @@ public class ObjectProxy<T, P> implements InvocationHandler, RpcService<T, P, Se
             parameterTypes[i] = getClassType(args[i]);
         }
         request.setParameterTypes(parameterTypes);
+        request.setMethodKey(ServiceUtil.makeMethodKey(ServiceUtil.makeServiceKey(className, version),
+                methodName, parameterTypes));
         return request;
     }
 
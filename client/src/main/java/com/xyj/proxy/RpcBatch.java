@@ -0,0 +1,224 @@
+package com.xyj.proxy;
+
+import com.xyj.annotation.RpcTimeout;
+import com.xyj.connect.ConnectionManager;
+import com.xyj.context.RpcContext;
+import com.xyj.handler.RpcClientHandler;
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcRequest;
+import com.xyj.util.RequestIdGenerator;
+import com.xyj.util.ServiceUtil;
+import com.xyj.vo.RpcFuture;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量调用，把同一个服务的多次调用打包成一个帧发送，每个调用对应一个 {@link RpcFuture}
+ * 默认服务端并行执行、全部完成后一次性返回；ordered按添加顺序依次执行，progressive每完成一个返回一个
+ * 整个批量调用使用一个超时：timeout设置的值 > 外部配置的服务超时 > 接口上的@RpcTimeout，再与RpcContext中的截止时间取较早的
+ * 只能执行一次，非线程安全
+ */
+public class RpcBatch<T> {
+
+    private final Class<T> clazz;
+
+    private final String version;
+
+    private boolean ordered;
+
+    private boolean progressive;
+
+    // 毫秒，0时使用服务的超时配置
+    private long timeout;
+
+    // 方法表，相同签名的调用共用一项
+    private final List<Method> methods = new ArrayList<>();
+
+    private final Map<Method, Integer> methodIndexes = new HashMap<>();
+
+    private final List<Integer> callMethods = new ArrayList<>();
+
+    private final List<Object[]> callParameters = new ArrayList<>();
+
+    private final List<RpcFuture> futures = new ArrayList<>();
+
+    private boolean executed;
+
+    public RpcBatch(Class<T> clazz, String version) {
+        this.clazz = clazz;
+        this.version = version;
+    }
+
+    /**
+     * 服务端按添加顺序依次执行
+     */
+    public RpcBatch<T> ordered() {
+        this.ordered = true;
+        return this;
+    }
+
+    /**
+     * 服务端并行执行（默认）
+     */
+    public RpcBatch<T> parallel() {
+        this.ordered = false;
+        return this;
+    }
+
+    /**
+     * 每个调用完成后立即返回结果，而不是等全部完成
+     */
+    public RpcBatch<T> progressive() {
+        this.progressive = true;
+        return this;
+    }
+
+    /**
+     * 整个批量调用的超时毫秒数，到时还没有返回的调用以TimeoutException失败
+     */
+    public RpcBatch<T> timeout(long timeoutMillis) {
+        this.timeout = timeoutMillis;
+        return this;
+    }
+
+    public RpcFuture call(String funcName, Object... args) {
+        if (executed) {
+            throw new IllegalStateException("Batch is already executed");
+        }
+        Object[] parameters = args == null ? new Object[0] : args;
+        Method method = findMethod(funcName, parameters);
+        Integer index = methodIndexes.get(method);
+        if (index == null) {
+            index = methods.size();
+            methods.add(method);
+            methodIndexes.put(method, index);
+        }
+        RpcRequest request = new RpcRequest();
+        request.setClassName(clazz.getName());
+        request.setMethodName(method.getName());
+        request.setParameterTypes(method.getParameterTypes());
+        request.setParameters(parameters);
+        request.setVersion(version);
+        RpcFuture future = new RpcFuture(request);
+        callMethods.add(index);
+        callParameters.add(parameters);
+        futures.add(future);
+        return future;
+    }
+
+    public RpcFuture call(SerializableFunction<T> fn, Object... args) throws Exception {
+        return call(fn.getName(), args);
+    }
+
+    public int size() {
+        return futures.size();
+    }
+
+    /**
+     * 发送批量请求，返回的future与call的返回值相同，按添加顺序排列
+     */
+    public List<RpcFuture> execute() throws Exception {
+        if (executed) {
+            throw new IllegalStateException("Batch is already executed");
+        }
+        executed = true;
+        if (futures.isEmpty()) {
+            return futures;
+        }
+        RpcBatchRequest batch = new RpcBatchRequest();
+        batch.setRequestId(RequestIdGenerator.nextId());
+        batch.setClassName(clazz.getName());
+        batch.setVersion(version);
+        batch.setOrdered(ordered);
+        batch.setProgressive(progressive);
+        String[] methodNames = new String[methods.size()];
+        Class<?>[][] parameterTypes = new Class<?>[methods.size()][];
+        for (int i = 0; i < methods.size(); i++) {
+            methodNames[i] = methods.get(i).getName();
+            parameterTypes[i] = methods.get(i).getParameterTypes();
+        }
+        batch.setMethodNames(methodNames);
+        batch.setParameterTypes(parameterTypes);
+        int[] indexes = new int[callMethods.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = callMethods.get(i);
+        }
+        batch.setMethodIndexes(indexes);
+        batch.setParameters(callParameters.toArray(new Object[0][]));
+
+        String serviceKey = ServiceUtil.makeServiceKey(clazz.getName(), version);
+        batch.setDeadline(RpcContext.earlier(RpcContext.deadlineAfter(timeoutOf(serviceKey)), RpcContext.getDeadline()));
+        RpcClientHandler handler = ConnectionManager.getInstance().chooseHandler(serviceKey);
+        handler.sendBatch(batch, futures.toArray(new RpcFuture[0]));
+        return futures;
+    }
+
+    private long timeoutOf(String serviceKey) {
+        if (timeout > 0) {
+            return timeout;
+        }
+        Long configured = ConnectionManager.getInstance().getTimeout(serviceKey);
+        if (configured != null) {
+            return configured;
+        }
+        RpcTimeout annotation = clazz.getAnnotation(RpcTimeout.class);
+        return annotation != null ? annotation.value() : 0;
+    }
+
+    /**
+     * 按方法名和参数找到接口中的方法，基本类型参数可以接收对应的包装类型
+     */
+    private Method findMethod(String funcName, Object[] args) {
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(funcName) && isAssignable(method.getParameterTypes(), args)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("No method " + funcName + " in " + clazz.getName()
+                + " matches " + args.length + " arguments");
+    }
+
+    private static boolean isAssignable(Class<?>[] types, Object[] args) {
+        if (types.length != args.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (args[i] == null) {
+                if (types[i].isPrimitive()) {
+                    return false;
+                }
+            } else if (!wrap(types[i]).isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        } else if (type == char.class) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+}
@@ -15,6 +15,7 @@ public abstract class RpcLoadBalance {
 
     /**
      * 得到serviceKey-List<RpcConnectionInfo>的map
+     * 同一服务既有可写又有不可写（超过写缓冲区高水位）的连接时只保留可写的，都不可写时全部保留
      * @param connectedServerNodes
      * @return
      */
@@ -32,10 +33,31 @@ public abstract class RpcLoadBalance {
                     serviceMap.putIfAbsent(serviceKey, RpcConnectionInfoList);
                 }
             }
+            for (List<RpcConnectionInfo> RpcConnectionInfoList : serviceMap.values()) {
+                preferWritable(RpcConnectionInfoList, connectedServerNodes);
+            }
         }
         return serviceMap;
     }
 
+    private static void preferWritable(List<RpcConnectionInfo> RpcConnectionInfoList,
+                                       Map<RpcConnectionInfo, RpcClientHandler> connectedServerNodes) {
+        boolean anyWritable = false;
+        for (RpcConnectionInfo RpcConnectionInfo : RpcConnectionInfoList) {
+            if (isWritable(connectedServerNodes.get(RpcConnectionInfo))) {
+                anyWritable = true;
+                break;
+            }
+        }
+        if (anyWritable) {
+            RpcConnectionInfoList.removeIf(info -> !isWritable(connectedServerNodes.get(info)));
+        }
+    }
+
+    private static boolean isWritable(RpcClientHandler handler) {
+        return handler != null && handler.isWritable();
+    }
+
     /**
      * 通过负载均衡算法找到此时serviceKey对应的节点
      * @param serviceKey
@@ -0,0 +1,217 @@
+package com.xyj.vo;
+
+import com.xyj.RpcClient;
+import com.xyj.codec.RpcProtocol;
+import com.xyj.handler.RpcClientHandler;
+import com.xyj.handler.StreamObserver;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.StreamFrame;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 客户端的一次客户端流/双向流调用，作为发送数据用的 {@link StreamObserver} 返回给调用方
+ * onNext发送一个STREAM_DATA帧，服务端通过DEMAND帧发放额度，额度用完或连接不可写（超过写缓冲区高水位）时onNext阻塞，
+ * 直到服务端补充额度、连接恢复可写；
+ * onCompleted发送STREAM_END（half-close），之后仍会继续接收服务端的响应；onError取消整个调用
+ * 服务端的响应在RpcClient的线程池中按顺序回调responseObserver
+ */
+@Slf4j
+public class ClientCall implements StreamObserver<Object>, RpcStreamListener {
+
+    private final RpcRequest request;
+
+    private final RpcClientHandler handler;
+
+    private final StreamObserver<Object> responseObserver;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition creditAvailable = lock.newCondition();
+
+    private long credits;//服务端发放的剩余额度，由lock保护
+
+    private volatile boolean halfClosed;
+
+    private volatile boolean cancelled;
+
+    // 服务端已经结束或调用失败
+    private volatile boolean done;
+
+    private volatile Throwable error;
+
+    private final Queue<Object> received = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private boolean terminated;//只在回调线程中访问
+
+    public ClientCall(RpcRequest request, RpcClientHandler handler, StreamObserver<Object> responseObserver) {
+        this.request = request;
+        this.handler = handler;
+        this.responseObserver = responseObserver;
+    }
+
+    /**
+     * 发送打开该流的请求
+     */
+    public void start() {
+        handler.sendStreamRequest(request, this);
+    }
+
+    @Override
+    public void onNext(Object value) {
+        if (halfClosed) {
+            throw new IllegalStateException("Stream is already half-closed");
+        }
+        lock.lock();
+        try {
+            while ((credits == 0 || !handler.isWritable()) && !done && !cancelled) {
+                creditAvailable.await();
+            }
+            if (done || cancelled) {
+                log.debug("Stream {} is finished, drop data", request.getRequestId());
+                return;
+            }
+            credits--;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for stream credit", e);
+        } finally {
+            lock.unlock();
+        }
+        StreamFrame frame = StreamFrame.of(RpcProtocol.TYPE_STREAM_DATA, request.getRequestId());
+        frame.setPayload(value);
+        handler.sendStreamFrame(frame);
+    }
+
+    @Override
+    public void onCompleted() {
+        if (halfClosed || cancelled) {
+            return;
+        }
+        halfClosed = true;
+        if (!done) {
+            handler.sendStreamFrame(StreamFrame.of(RpcProtocol.TYPE_STREAM_END, request.getRequestId()));
+        }
+    }
+
+    /**
+     * 调用方取消该调用
+     */
+    @Override
+    public void onError(Throwable t) {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        signalWaiters();
+        if (handler.removeStream(request.getRequestId())) {
+            handler.sendStreamFrame(StreamFrame.of(RpcProtocol.TYPE_STREAM_CANCEL, request.getRequestId()));
+        }
+        CancellationException cause = new CancellationException("Cancelled by client");
+        cause.initCause(t);
+        terminate(cause);
+    }
+
+    @Override
+    public void onData(Object payload) {
+        if (done) {
+            return;
+        }
+        received.offer(payload);
+        drain();
+    }
+
+    @Override
+    public void onEnd(String error) {
+        terminate(error == null ? null : new RuntimeException("Stream error", new Throwable(error)));
+    }
+
+    @Override
+    public void onFailure(Throwable cause) {
+        terminate(new RuntimeException("Stream failed. Request id: " + request.getRequestId(), cause));
+    }
+
+    @Override
+    public void onDemand(long n) {
+        lock.lock();
+        try {
+            credits = credits + n < 0 ? Long.MAX_VALUE : credits + n;
+            creditAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        signalWaiters();
+    }
+
+    private void terminate(Throwable cause) {
+        if (done) {
+            return;
+        }
+        this.error = cause;
+        this.done = true;
+        signalWaiters();
+        drain();
+    }
+
+    private void signalWaiters() {
+        lock.lock();
+        try {
+            creditAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            RpcClient.submit(this::deliver);
+        }
+    }
+
+    /**
+     * 同一时间只有一个线程回调responseObserver
+     */
+    private void deliver() {
+        int missed = 1;
+        for (; ; ) {
+            if (terminated) {
+                return;
+            }
+            Object item;
+            while (!cancelled && (item = received.poll()) != null) {
+                try {
+                    responseObserver.onNext(item);
+                } catch (Throwable t) {
+                    log.error("Stream response observer error, request id: {}", request.getRequestId(), t);
+                    onError(t);
+                    break;
+                }
+            }
+            if (done && (cancelled || received.isEmpty())) {
+                terminated = true;
+                if (error != null) {
+                    responseObserver.onError(error);
+                } else {
+                    responseObserver.onCompleted();
+                }
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+}
@@ -23,8 +23,17 @@ public class RpcFuture implements Future<Object> {
 
     private RpcResponse response;
 
+    // 请求没有送达server时的异常，比如写失败、连接断开
+    private volatile Throwable cause;
+
     private long startTime;
 
+    // 因服务端过载换节点重试的次数，同一时刻只有一个连接持有该future
+    private volatile int overloadRetries;
+
+    // 请求有截止时间时在截止时间让该future失败的定时任务，完成后取消
+    private volatile Future<?> deadlineTask;
+
     private long responseTimeThreshold = 5000;
 
     private List<AsyncRPCCallback> pendingCallbacks = new ArrayList<>();
@@ -37,6 +46,28 @@ public class RpcFuture implements Future<Object> {
         this.startTime = System.currentTimeMillis();
     }
 
+    public RpcRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * 记录一次过载重试，返回重试后的总次数
+     */
+    public int incrementOverloadRetries() {
+        return ++overloadRetries;
+    }
+
+    public void setDeadlineTask(Future<?> deadlineTask) {
+        this.deadlineTask = deadlineTask;
+    }
+
+    private void cancelDeadlineTask() {
+        Future<?> task = deadlineTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
     @Override
     public boolean isDone() {
         return sync.isDone();
@@ -45,6 +76,9 @@ public class RpcFuture implements Future<Object> {
     @Override
     public Object get() {
         sync.acquire(1);
+        if (this.cause != null) {
+            throw new RuntimeException("Request failed. Request id: " + this.request.getRequestId(), this.cause);
+        }
         if (this.response != null) {
             return this.response.getResult();
         } else {
@@ -56,6 +90,9 @@ public class RpcFuture implements Future<Object> {
     public Object get(long timeout, TimeUnit unit) throws InterruptedException {
         boolean success = sync.tryAcquireNanos(1, unit.toNanos(timeout));
         if (success) {
+            if (this.cause != null) {
+                throw new RuntimeException("Request failed. Request id: " + this.request.getRequestId(), this.cause);
+            }
             if (this.response != null) {
                 return this.response.getResult();
             } else {
@@ -81,6 +118,7 @@ public class RpcFuture implements Future<Object> {
     public void done(RpcResponse reponse) {
         this.response = reponse;
         sync.release(1);
+        cancelDeadlineTask();
         invokeCallbacks();
         // Threshold
         long responseTime = System.currentTimeMillis() - startTime;
@@ -89,6 +127,17 @@ public class RpcFuture implements Future<Object> {
         }
     }
 
+    /**
+     * 请求发送失败，唤醒等待的线程并回调
+     * @param cause
+     */
+    public void fail(Throwable cause) {
+        this.cause = cause;
+        sync.release(1);
+        cancelDeadlineTask();
+        invokeCallbacks();
+    }
+
     private void invokeCallbacks() {
         lock.lock();
         try {
@@ -116,10 +165,13 @@ public class RpcFuture implements Future<Object> {
 
     private void runCallback(final AsyncRPCCallback callback) {
         final RpcResponse res = this.response;
+        final Throwable failure = this.cause;
         RpcClient.submit(new Runnable() {
             @Override
             public void run() {
-                if (!res.isError()) {
+                if (failure != null) {
+                    callback.fail(new RuntimeException("Request failed", failure));
+                } else if (!res.isError()) {
                     callback.success(res.getResult());
                 } else {
                     callback.fail(new RuntimeException("Response error", new Throwable(res.getError())));
@@ -0,0 +1,210 @@
+package com.xyj.vo;
+
+import com.xyj.RpcClient;
+import com.xyj.codec.RpcProtocol;
+import com.xyj.handler.RpcClientHandler;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.StreamFrame;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端的一次流式调用，以 {@link Flow.Publisher} 的形式返回给调用方
+ * 订阅时才发送请求，订阅者的request(n)转换为DEMAND帧发给服务端，cancel转换为CANCEL帧
+ * 收到的元素在RpcClient的线程池中按顺序回调订阅者，不占用event loop线程
+ * 只能被订阅一次
+ */
+@Slf4j
+public class RpcStream<T> implements Flow.Publisher<T>, Flow.Subscription, RpcStreamListener {
+
+    private final RpcRequest request;
+
+    private final RpcClientHandler handler;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private volatile Flow.Subscriber<? super T> subscriber;
+
+    private final Queue<Object> received = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean cancelled;
+
+    private volatile boolean done;
+
+    private volatile Throwable error;
+
+    private boolean terminated;//只在回调线程中访问
+
+    // 请求发出之前订阅者请求的数量
+    private boolean started;
+    private long pendingDemand;
+
+    public RpcStream(RpcRequest request, RpcClientHandler handler) {
+        this.request = request;
+        this.handler = handler;
+    }
+
+    public long getRequestId() {
+        return request.getRequestId();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("RpcStream can only be subscribed once"));
+            return;
+        }
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(this);
+        if (cancelled) {
+            return;
+        }
+        handler.sendStreamRequest(request, this);
+        long n;
+        synchronized (this) {
+            started = true;
+            n = pendingDemand;
+            pendingDemand = 0;
+        }
+        if (n > 0) {
+            sendDemand(n);
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        if (cancelled || done) {
+            return;
+        }
+        if (n <= 0) {
+            cancelRemote();
+            onTerminate(new IllegalArgumentException("Non-positive request: " + n));
+            return;
+        }
+        synchronized (this) {
+            if (!started) {
+                pendingDemand = pendingDemand + n < 0 ? Long.MAX_VALUE : pendingDemand + n;
+                return;
+            }
+        }
+        sendDemand(n);
+    }
+
+    @Override
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        received.clear();
+        cancelRemote();
+    }
+
+    private void cancelRemote() {
+        boolean sent;
+        synchronized (this) {
+            sent = started;
+        }
+        if (sent && !done && handler.removeStream(request.getRequestId())) {
+            handler.sendStreamFrame(StreamFrame.of(RpcProtocol.TYPE_STREAM_CANCEL, request.getRequestId()));
+        }
+    }
+
+    @Override
+    public void onData(Object payload) {
+        if (cancelled || done) {
+            return;
+        }
+        received.offer(payload);
+        drain();
+    }
+
+    @Override
+    public void onEnd(String error) {
+        onTerminate(error == null ? null : new RuntimeException("Stream error", new Throwable(error)));
+    }
+
+    @Override
+    public void onFailure(Throwable cause) {
+        onTerminate(new RuntimeException("Stream failed. Request id: " + request.getRequestId(), cause));
+    }
+
+    private void onTerminate(Throwable cause) {
+        if (done) {
+            return;
+        }
+        this.error = cause;
+        this.done = true;
+        drain();
+    }
+
+    private void sendDemand(long n) {
+        StreamFrame demand = StreamFrame.of(RpcProtocol.TYPE_STREAM_DEMAND, request.getRequestId());
+        demand.setDemand(n);
+        handler.sendStreamFrame(demand);
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            RpcClient.submit(this::deliver);
+        }
+    }
+
+    /**
+     * 同一时间只有一个线程回调订阅者
+     */
+    @SuppressWarnings("unchecked")
+    private void deliver() {
+        int missed = 1;
+        for (; ; ) {
+            if (terminated) {
+                return;
+            }
+            Object item;
+            while (!cancelled && (item = received.poll()) != null) {
+                try {
+                    subscriber.onNext((T) item);
+                } catch (Throwable t) {
+                    log.error("Stream subscriber error, request id: {}", request.getRequestId(), t);
+                    cancel();
+                    terminated = true;
+                    subscriber.onError(t);
+                    return;
+                }
+            }
+            if (cancelled) {
+                terminated = true;
+                return;
+            }
+            if (done && received.isEmpty()) {
+                terminated = true;
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+}
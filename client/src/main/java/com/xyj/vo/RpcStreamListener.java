@@ -0,0 +1,35 @@
+package com.xyj.vo;
+
+/**
+ * 接收一次流式调用中服务端发来的帧，由RpcClientHandler在event loop线程上回调
+ */
+public interface RpcStreamListener {
+
+    /**
+     * 服务端发来一个元素
+     */
+    void onData(Object payload);
+
+    /**
+     * 服务端结束该流，error为null表示正常结束
+     */
+    void onEnd(String error);
+
+    /**
+     * 请求发送失败或连接断开
+     */
+    void onFailure(Throwable cause);
+
+    /**
+     * 服务端允许客户端再发送n个元素
+     */
+    default void onDemand(long n) {
+    }
+
+    /**
+     * 连接从不可写恢复为可写
+     */
+    default void onWritable() {
+    }
+
+}
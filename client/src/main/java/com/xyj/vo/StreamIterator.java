@@ -0,0 +1,107 @@
+package com.xyj.vo;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 把流式调用转换成阻塞的 {@link Iterator}，供返回值声明为Iterator的方法使用
+ * 预取prefetch个元素，消费掉一半后再向服务端请求，本地最多缓存prefetch个元素
+ */
+public class StreamIterator<T> implements Iterator<T>, Flow.Subscriber<T>, AutoCloseable {
+
+    private static final Object COMPLETE = new Object();
+
+    private final int prefetch;
+
+    private final int limit;
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    private volatile Flow.Subscription subscription;
+
+    private Object next;
+
+    private int consumed;
+
+    public StreamIterator(int prefetch) {
+        this.prefetch = prefetch;
+        this.limit = Math.max(1, prefetch >> 1);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(T item) {
+        queue.offer(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        queue.offer(new Failure(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        queue.offer(COMPLETE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException("Interrupted while waiting for stream element", e);
+            }
+        }
+        if (next instanceof Failure) {
+            Throwable cause = ((Failure) next).cause;
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        return next != COMPLETE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T item = (T) next;
+        next = null;
+        if (++consumed == limit) {
+            consumed = 0;
+            subscription.request(limit);
+        }
+        return item;
+    }
+
+    /**
+     * 不再消费剩余元素时调用，通知服务端停止发送
+     */
+    @Override
+    public void close() {
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        next = COMPLETE;
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
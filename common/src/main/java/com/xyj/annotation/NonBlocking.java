@@ -0,0 +1,16 @@
+package com.xyj.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//服务端使用，标注在服务方法（接口或实现类的）上，表示该方法不会阻塞且很快完成，如内存中的查找
+//服务端直接在连接的I/O线程上执行并写回响应，不切换到业务线程池；执行时间超过budgetMicros时计数并打印警告
+//方法阻塞会拖慢该I/O线程上的所有连接，只用于确定不阻塞的方法
+@Target(value = ElementType.METHOD)
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface NonBlocking {
+    // 在I/O线程上执行的时间预算，单位微秒
+    long budgetMicros() default 100;
+}
@@ -0,0 +1,39 @@
+package com.xyj.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//服务端使用，与@RpcService一起标注在服务实现类上时该服务使用独立的线程池，标注在方法（实现类或接口的）上时该方法使用独立的线程池
+//方法上的优先于类上的，没有标注的方法使用服务端共享的线程池
+@Target(value = {ElementType.TYPE, ElementType.METHOD})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface RpcExecutor {
+    // 线程池名称，名称相同的服务/方法共用一个池（参数以第一个为准）；为空时按服务或方法单独创建
+    String value() default "";
+
+    int coreSize() default 8;
+
+    // 不能小于coreSize
+    int maxSize() default 16;
+
+    // 等待队列长度，为0时不排队
+    int queueSize() default 1000;
+
+    // 每个请求使用一个虚拟线程（JDK 21以上），此时忽略coreSize和maxSize；JDK不支持时按上面的参数使用平台线程池
+    boolean virtualThreads() default false;
+
+    // 使用虚拟线程时最多同时执行的请求数，为0时不限制；限制时超出的请求排队，排队的超过queueSize时拒绝
+    int maxConcurrency() default 0;
+
+    // 线程池满时的处理方式，都不会在接收请求的I/O线程上执行
+    Rejection rejection() default Rejection.ABORT;
+
+    enum Rejection {
+        // 立即拒绝，给客户端回复过载（OVERLOADED）
+        ABORT,
+        // 交给服务端共享的线程池执行，共享线程池也满时拒绝；对共享线程池本身等同于ABORT
+        SHARED
+    }
+}
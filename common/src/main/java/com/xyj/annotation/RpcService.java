@@ -15,4 +15,7 @@ public @interface RpcService {
     Class<?> value();
 
     String version() default "";
+
+    // 调用该服务使用的序列化方式，如"protostuff"，为空表示使用连接协商出的方式
+    String serializer() default "";
 }
@@ -0,0 +1,15 @@
+package com.xyj.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//客户端使用，标注在服务接口或接口方法上，调用的截止时间为发起调用后value毫秒，方法上的优先于接口上的
+//截止时间随请求发给服务端，服务端在截止时间之后不再执行该请求；在服务方法中发起的RPC调用继承剩余的时间
+@Target(value = {ElementType.TYPE, ElementType.METHOD})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface RpcTimeout {
+    // 超时时间，单位毫秒
+    long value();
+}
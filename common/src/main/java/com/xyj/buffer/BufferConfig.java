@@ -0,0 +1,117 @@
+package com.xyj.buffer;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.internal.PlatformDependent;
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓冲区参数，客户端和服务端共用
+ * 分配器按参数共享：同一进程中参数相同的客户端和服务端使用同一个池，池的使用情况见 {@link BufferStats}
+ */
+@Data
+public class BufferConfig {
+
+    private static final Map<List<Object>, ByteBufAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+    // 连接上低水位的初始值
+    private static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+
+    // 使用池化的分配器，关闭后每次分配新的缓冲区
+    private boolean pooled = true;
+
+    // 优先分配堆外内存，读写socket时不需要再拷贝一次
+    private boolean preferDirect = PlatformDependent.directBufferPreferred();
+
+    // 堆内和堆外的arena数量，与Netty的默认值相同：CPU核数的2倍，且每个arena按3个chunk计算不超过可用内存的一半
+    private int heapArenas = defaultArenas(Runtime.getRuntime().maxMemory());
+
+    private int directArenas = defaultArenas(PlatformDependent.maxDirectMemory());
+
+    private int pageSize = 8192;
+
+    // chunk大小为 pageSize << maxOrder，默认16MB；超过chunk大小的缓冲区不经过池
+    private int maxOrder = 11;
+
+    // 每个线程缓存的tiny/small/normal缓冲区数量
+    private int tinyCacheSize = 512;
+
+    private int smallCacheSize = 256;
+
+    private int normalCacheSize = 64;
+
+    // 接收缓冲区按最近读到的字节数在最小值和最大值之间调整
+    private int minReceiveBufferSize = 64;
+
+    private int initialReceiveBufferSize = 1024;
+
+    private int maxReceiveBufferSize = 64 * 1024;
+
+    // 每个连接待发送的字节数超过高水位时变为不可写，降到低水位以下后恢复
+    // 不可写时服务端停止读取新请求、暂停流式发送，客户端的客户端流onNext等待，负载均衡优先选择可写的连接
+    private int writeBufferLowWaterMark = DEFAULT_LOW_WATER_MARK;
+
+    private int writeBufferHighWaterMark = 64 * 1024;
+
+    // 内存泄漏检测级别，进程内全局生效；检测到的泄漏计入 buffer.leak.reported
+    private ResourceLeakDetector.Level leakDetectionLevel = ResourceLeakDetector.Level.SIMPLE;
+
+    /**
+     * 按当前参数返回分配器，参数相同时返回同一个实例
+     */
+    public ByteBufAllocator allocator() {
+        BufferStats.setLeakDetectionLevel(leakDetectionLevel);
+        List<Object> key = Arrays.asList(pooled, preferDirect, heapArenas, directArenas, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize);
+        return ALLOCATORS.computeIfAbsent(key, k -> {
+            ByteBufAllocator allocator = pooled
+                    ? new PooledByteBufAllocator(preferDirect, heapArenas, directArenas, pageSize, maxOrder,
+                    tinyCacheSize, smallCacheSize, normalCacheSize)
+                    : new UnpooledByteBufAllocator(preferDirect);
+            BufferStats.register(allocator);
+            return allocator;
+        });
+    }
+
+    public RecvByteBufAllocator receiveBufferAllocator() {
+        return new AdaptiveRecvByteBufAllocator(minReceiveBufferSize, initialReceiveBufferSize, maxReceiveBufferSize);
+    }
+
+    /**
+     * 每个连接上需要设置的选项，按顺序设置
+     */
+    public Map<ChannelOption<?>, Object> channelOptions() {
+        if (writeBufferLowWaterMark > writeBufferHighWaterMark) {
+            throw new IllegalArgumentException("writeBufferLowWaterMark " + writeBufferLowWaterMark
+                    + " is greater than writeBufferHighWaterMark " + writeBufferHighWaterMark);
+        }
+        Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+        options.put(ChannelOption.ALLOCATOR, allocator());
+        options.put(ChannelOption.RCVBUF_ALLOCATOR, receiveBufferAllocator());
+        //设置每个水位时都不能与另一个的当前值冲突：高水位调低时先设置低水位
+        if (writeBufferHighWaterMark < DEFAULT_LOW_WATER_MARK) {
+            options.put(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark);
+            options.put(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark);
+        } else {
+            options.put(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark);
+            options.put(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark);
+        }
+        return options;
+    }
+
+    private static int defaultArenas(long maxMemory) {
+        long chunkSize = 8192L << 11;
+        return (int) Math.max(0, Math.min(Runtime.getRuntime().availableProcessors() * 2L, maxMemory / chunkSize / 2 / 3));
+    }
+}
@@ -0,0 +1,226 @@
+package com.xyj.buffer;
+
+import com.xyj.metrics.RpcMetrics;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.internal.logging.Slf4JLoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * 缓冲区相关指标，用于估算RPC层占用的内存
+ * buffer.jvm.direct.* 为JVM中所有堆外ByteBuffer（包括池中的chunk）的数量和字节数；
+ * buffer.pooled.{heap|direct}.* 为池化分配器的arena数、chunk数、chunk占用的字节数和其中已分配出去（包括线程缓存中）的字节数；
+ * buffer.leak.reported 为Netty报告的ByteBuf泄漏次数
+ * 这个版本的Netty没有公开池的统计接口，chunk的数据通过反射读取，读取不到时为-1
+ */
+public final class BufferStats {
+    private static final Logger logger = LoggerFactory.getLogger(BufferStats.class);
+
+    private static final Set<PooledByteBufAllocator> POOLED = new CopyOnWriteArraySet<>();
+
+    private static final LongAdder LEAKS = RpcMetrics.counter("buffer.leak.reported");
+
+    private static volatile boolean leakTracking;
+
+    static {
+        installLeakCounter();
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                RpcMetrics.gauge("buffer.jvm.direct.count", pool::getCount);
+                RpcMetrics.gauge("buffer.jvm.direct.capacity", pool::getTotalCapacity);
+                RpcMetrics.gauge("buffer.jvm.direct.used", pool::getMemoryUsed);
+            }
+        }
+        for (String type : new String[]{"heap", "direct"}) {
+            String prefix = "buffer.pooled." + type + ".";
+            boolean direct = "direct".equals(type);
+            RpcMetrics.gauge(prefix + "arenas", () -> sum(direct, arenas -> arenas.length));
+            RpcMetrics.gauge(prefix + "chunks", () -> sum(direct, arenas -> PoolInspector.chunks(arenas, false)));
+            RpcMetrics.gauge(prefix + "chunkBytes", () -> sum(direct, arenas -> PoolInspector.chunks(arenas, true)));
+            RpcMetrics.gauge(prefix + "usedBytes", () -> sum(direct, PoolInspector::usedBytes));
+        }
+        RpcMetrics.gauge("buffer.leak.tracking", () -> leakTracking ? 1 : 0);
+        RpcMetrics.gauge("buffer.leak.level", () -> ResourceLeakDetector.getLevel().ordinal());
+    }
+
+    private BufferStats() {
+    }
+
+    /**
+     * 先于ResourceLeakDetector初始化，保证泄漏报告可以计数
+     */
+    static void setLeakDetectionLevel(ResourceLeakDetector.Level level) {
+        ResourceLeakDetector.setLevel(level);
+    }
+
+    static void register(ByteBufAllocator allocator) {
+        if (allocator instanceof PooledByteBufAllocator) {
+            POOLED.add((PooledByteBufAllocator) allocator);
+        }
+    }
+
+    private static long sum(boolean direct, ToLongFunction<Object[]> metric) {
+        if (!PoolInspector.AVAILABLE) {
+            return -1;
+        }
+        long total = 0;
+        for (PooledByteBufAllocator allocator : POOLED) {
+            total += metric.applyAsLong(PoolInspector.arenas(allocator, direct));
+        }
+        return total;
+    }
+
+    /**
+     * Netty只通过ERROR日志报告泄漏，这里包装ResourceLeakDetector的日志对象来计数
+     * 需要在第一次分配ByteBuf之前执行，否则ResourceLeakDetector已经创建了日志对象，buffer.leak.tracking为0
+     */
+    private static void installLeakCounter() {
+        InternalLoggerFactory current = InternalLoggerFactory.getDefaultFactory();
+        if (!(current instanceof Slf4JLoggerFactory)) {
+            logger.info("Netty logger factory is {}, leak reports will not be counted", current.getClass().getName());
+            return;
+        }
+        final Slf4JLoggerFactory delegate = (Slf4JLoggerFactory) current;
+        final String leakLoggerName = ResourceLeakDetector.class.getName();
+        InternalLoggerFactory.setDefaultFactory(new InternalLoggerFactory() {
+            @Override
+            protected InternalLogger newInstance(String name) {
+                InternalLogger target = delegate.newInstance(name);
+                if (!leakLoggerName.equals(name)) {
+                    return target;
+                }
+                leakTracking = true;
+                return (InternalLogger) Proxy.newProxyInstance(InternalLogger.class.getClassLoader(),
+                        new Class<?>[]{InternalLogger.class}, (proxy, method, args) -> {
+                            if ("error".equals(method.getName())) {
+                                LEAKS.increment();
+                            }
+                            try {
+                                return method.invoke(target, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * 通过反射读取PooledByteBufAllocator内部的arena和chunk
+     */
+    private static class PoolInspector {
+        private static final String[] CHUNK_LISTS = {"qInit", "q000", "q025", "q050", "q075", "q100"};
+
+        static final boolean AVAILABLE;
+        private static Field heapArenas;
+        private static Field directArenas;
+        private static Field[] chunkLists;
+        private static Field head;
+        private static Field next;
+        private static Field chunkSize;
+        private static Field freeBytes;
+
+        static {
+            boolean available = false;
+            try {
+                heapArenas = field(PooledByteBufAllocator.class, "heapArenas");
+                directArenas = field(PooledByteBufAllocator.class, "directArenas");
+                Class<?> arena = Class.forName("io.netty.buffer.PoolArena");
+                chunkLists = new Field[CHUNK_LISTS.length];
+                for (int i = 0; i < CHUNK_LISTS.length; i++) {
+                    chunkLists[i] = field(arena, CHUNK_LISTS[i]);
+                }
+                head = field(Class.forName("io.netty.buffer.PoolChunkList"), "head");
+                Class<?> chunk = Class.forName("io.netty.buffer.PoolChunk");
+                next = field(chunk, "next");
+                chunkSize = field(chunk, "chunkSize");
+                freeBytes = field(chunk, "freeBytes");
+                available = true;
+            } catch (Exception e) {
+                logger.warn("Can not inspect pooled allocator, buffer.pooled.* metrics are unavailable: {}", e.toString());
+            }
+            AVAILABLE = available;
+        }
+
+        private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+
+        static Object[] arenas(PooledByteBufAllocator allocator, boolean direct) {
+            try {
+                Object[] arenas = (Object[]) (direct ? directArenas : heapArenas).get(allocator);
+                return arenas != null ? arenas : new Object[0];
+            } catch (IllegalAccessException e) {
+                return new Object[0];
+            }
+        }
+
+        /**
+         * bytes为false时返回chunk数，否则返回chunk占用的字节数
+         */
+        static long chunks(Object[] arenas, boolean bytes) {
+            long total = 0;
+            for (Object arena : arenas) {
+                for (Object chunk : chunksOf(arena)) {
+                    total += bytes ? intValue(chunkSize, chunk) : 1;
+                }
+            }
+            return total;
+        }
+
+        static long usedBytes(Object[] arenas) {
+            long total = 0;
+            for (Object arena : arenas) {
+                for (Object chunk : chunksOf(arena)) {
+                    total += intValue(chunkSize, chunk) - intValue(freeBytes, chunk);
+                }
+            }
+            return total;
+        }
+
+        /**
+         * arena分配和释放时持有自身的锁，遍历chunk链表时也持有
+         */
+        private static List<Object> chunksOf(Object arena) {
+            List<Object> chunks = new ArrayList<>();
+            synchronized (arena) {
+                try {
+                    for (Field list : chunkLists) {
+                        for (Object chunk = head.get(list.get(arena)); chunk != null; chunk = next.get(chunk)) {
+                            chunks.add(chunk);
+                        }
+                    }
+                } catch (IllegalAccessException e) {
+                    chunks.clear();
+                }
+            }
+            return chunks;
+        }
+
+        private static int intValue(Field field, Object target) {
+            try {
+                return field.getInt(target);
+            } catch (IllegalAccessException e) {
+                return 0;
+            }
+        }
+    }
+}
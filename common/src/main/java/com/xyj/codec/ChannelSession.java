@@ -0,0 +1,159 @@
+package com.xyj.codec;
+
+import com.xyj.compress.Compressor;
+import com.xyj.compress.Compressors;
+import com.xyj.message.Handshake;
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import com.xyj.serializer.kryo.KryoRegistration;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一个连接上通过握手协商出的参数，保存在channel的attribute中，编解码时读取
+ */
+public class ChannelSession {
+    private static final Logger logger = LoggerFactory.getLogger(ChannelSession.class);
+
+    private static final AttributeKey<ChannelSession> KEY = AttributeKey.valueOf("rpc.channelSession");
+
+    // 发送时使用的压缩算法，为null表示不压缩；接收时根据消息体中的id解压，不依赖这里
+    private volatile Compressor compressor;
+
+    // 握手协商出的序列化方式，为null表示使用编码器的默认方式；解码时根据帧头中的id选择，不依赖这里
+    private volatile Serializer serializer;
+
+    // 指定了序列化方式的方法，方法签名到序列化方式的映射
+    private volatile Map<String, Serializer> methodSerializers;
+
+    // 握手约定了类注册表时使用的Kryo实例，为null表示没有约定；带FLAG_REGISTERED的帧用它编解码
+    private volatile Serializer registeredKryo;
+
+    // 服务端在握手中下发的方法签名到方法id的映射，为null表示请求需要携带完整的类名和方法名
+    private volatile Map<String, Integer> methodIds;
+
+    // 对端能够处理OVERLOADED帧，只在服务端使用
+    private volatile boolean overloadFrame;
+
+    public static ChannelSession get(Channel channel) {
+        ChannelSession session = channel.attr(KEY).get();
+        if (session == null) {
+            session = new ChannelSession();
+            ChannelSession old = channel.attr(KEY).setIfAbsent(session);
+            if (old != null) {
+                session = old;
+            }
+        }
+        return session;
+    }
+
+    public Compressor getCompressor() {
+        return compressor;
+    }
+
+    public void setCompressor(Compressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public Map<String, Integer> getMethodIds() {
+        return methodIds;
+    }
+
+    public void setMethodIds(Map<String, Integer> methodIds) {
+        this.methodIds = methodIds;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    public Serializer getRegisteredKryo() {
+        return registeredKryo;
+    }
+
+    public void setRegisteredKryo(Serializer registeredKryo) {
+        this.registeredKryo = registeredKryo;
+    }
+
+    public Map<String, Serializer> getMethodSerializers() {
+        return methodSerializers;
+    }
+
+    public void setMethodSerializers(Map<String, Serializer> methodSerializers) {
+        this.methodSerializers = methodSerializers;
+    }
+
+    public boolean isOverloadFrame() {
+        return overloadFrame;
+    }
+
+    public void setOverloadFrame(boolean overloadFrame) {
+        this.overloadFrame = overloadFrame;
+    }
+
+    /**
+     * 客户端使用服务端回复的握手结果，由解码器在解码握手帧时调用，
+     * 保证同一次读取中紧跟在握手之后的帧（例如带FLAG_REGISTERED的响应）解码时已经能用到协商出的参数
+     */
+    public void applyHandshake(Handshake handshake, Object remotePeer) {
+        //服务指定的序列化方式需要在方法id之前设置，保证按id发送的请求能找到指定的序列化方式
+        applySerializers(handshake, remotePeer);
+        if (handshake.getKryoClasses() != null && !handshake.getKryoClasses().isEmpty()) {
+            registeredKryo = KryoRegistration.serializer(handshake.getKryoClasses());
+            logger.debug("Received {} kryo classes from {}", handshake.getKryoClasses().size(), remotePeer);
+        }
+        if (handshake.getMethods() != null) {
+            methodIds = handshake.getMethods();
+            logger.debug("Received {} method ids from {}", handshake.getMethods().size(), remotePeer);
+        }
+        String name = handshake.getCompression();
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        Compressor negotiated = Compressors.get(name);
+        if (negotiated == null) {
+            logger.warn("Server chose unknown compressor: {}, remote peer: {}", name, remotePeer);
+            return;
+        }
+        compressor = negotiated;
+        logger.info("Negotiated compressor: {}, remote peer: {}", name, remotePeer);
+    }
+
+    /**
+     * 服务端选定的序列化方式用于之后的所有请求，服务指定的序列化方式只用于对应的方法，本地不支持的忽略
+     */
+    private void applySerializers(Handshake handshake, Object remotePeer) {
+        if (handshake.getMethodSerializers() != null && !handshake.getMethodSerializers().isEmpty()) {
+            Map<String, Serializer> serializers = new HashMap<>();
+            for (Map.Entry<String, String> entry : handshake.getMethodSerializers().entrySet()) {
+                Serializer methodSerializer = SerializerRegistry.get(entry.getValue());
+                if (methodSerializer != null) {
+                    serializers.put(entry.getKey(), methodSerializer);
+                } else {
+                    logger.warn("Unknown serializer {} for method {}, use default", entry.getValue(), entry.getKey());
+                }
+            }
+            methodSerializers = serializers;
+        }
+        String name = handshake.getSerializer();
+        if (name == null || name.isEmpty()) {
+            return;
+        }
+        Serializer negotiated = SerializerRegistry.get(name);
+        if (negotiated == null) {
+            logger.warn("Server chose unknown serializer: {}, remote peer: {}", name, remotePeer);
+            return;
+        }
+        serializer = negotiated;
+        logger.info("Negotiated serializer: {}, remote peer: {}", name, remotePeer);
+    }
+}
@@ -0,0 +1,98 @@
+package com.xyj.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.TooLongFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按request id拼接分片帧，每个解码器（即每个连接）一个实例，只在event loop线程上访问
+ * 每个分片拷贝到独立的buffer中，不会因为持有分片而占住解码器的累积buffer，占用的内存可以准确统计
+ */
+class ChunkAssembler {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkAssembler.class);
+
+    private final int maxMessageLength;
+
+    private final long maxPendingBytes;
+
+    private final Map<Long, CompositeByteBuf> assemblies = new HashMap<>();
+
+    // 超过单个消息长度限制的请求，丢弃后续分片直到最后一个分片
+    private final Set<Long> discarding = new HashSet<>();
+
+    private long pendingBytes;
+
+    ChunkAssembler(CodecConfig codecConfig) {
+        this.maxMessageLength = codecConfig.getMaxMessageLength();
+        this.maxPendingBytes = codecConfig.getMaxPendingChunkBytes();
+    }
+
+    /**
+     * 追加一个分片
+     * @return 收到最后一个分片时返回拼接好的消息体，由调用方释放；否则返回null
+     */
+    ByteBuf append(ChannelHandlerContext ctx, long requestId, ByteBuf in, int length, boolean last) {
+        if (discarding.contains(requestId)) {
+            in.skipBytes(length);
+            if (last) {
+                discarding.remove(requestId);
+            }
+            return null;
+        }
+        CompositeByteBuf assembly = assemblies.get(requestId);
+        int assembled = assembly == null ? 0 : assembly.readableBytes();
+        if ((long) assembled + length > maxMessageLength) {
+            logger.error("Message length exceeds {}, discard it, request id: {}", maxMessageLength, requestId);
+            in.skipBytes(length);
+            remove(requestId);
+            if (!last) {
+                discarding.add(requestId);
+            }
+            return null;
+        }
+        if (pendingBytes + length > maxPendingBytes) {
+            throw new TooLongFrameException("Pending chunks exceed " + maxPendingBytes + " bytes");
+        }
+        if (assembly == null) {
+            assembly = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+            assemblies.put(requestId, assembly);
+        }
+        assembly.addComponent(in.readBytes(length));
+        assembly.writerIndex(assembly.writerIndex() + length);
+        pendingBytes += length;
+        if (!last) {
+            return null;
+        }
+        assemblies.remove(requestId);
+        pendingBytes -= assembly.readableBytes();
+        return assembly;
+    }
+
+    private void remove(long requestId) {
+        CompositeByteBuf assembly = assemblies.remove(requestId);
+        if (assembly != null) {
+            pendingBytes -= assembly.readableBytes();
+            assembly.release();
+        }
+    }
+
+    /**
+     * 连接关闭时释放所有未拼接完成的分片
+     */
+    void releaseAll() {
+        for (CompositeByteBuf assembly : assemblies.values()) {
+            assembly.release();
+        }
+        assemblies.clear();
+        discarding.clear();
+        pendingBytes = 0;
+    }
+}
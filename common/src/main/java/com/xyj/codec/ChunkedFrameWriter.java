@@ -0,0 +1,164 @@
+package com.xyj.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.ArrayDeque;
+
+/**
+ * 把编码后超过chunkSize的帧拆成多个分片帧发送，需要放在RpcEncoder之后（pipeline中更靠近head的位置）
+ * 每个event loop任务只发送一个分片，期间其他小消息可以直接写出，不会排在大消息后面；
+ * 多个大消息按顺序逐个发送，同一request id的后续消息也排在其后，保证同一请求内的消息顺序
+ * 所有状态只在event loop线程上访问，不需要同步
+ */
+public class ChunkedFrameWriter extends ChannelHandlerAdapter {
+
+    private final int chunkSize;
+
+    private final ArrayDeque<PendingFrame> pendingFrames = new ArrayDeque<>();
+
+    private boolean writeScheduled;
+
+    public ChunkedFrameWriter(CodecConfig codecConfig) {
+        this.chunkSize = codecConfig.getChunkSize();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof ByteBuf) || !isFrame((ByteBuf) msg)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        ByteBuf frame = (ByteBuf) msg;
+        int bodyLength = frame.readableBytes() - RpcProtocol.HEADER_LENGTH;
+        long requestId = frame.getLong(frame.readerIndex() + RpcProtocol.REQUEST_ID_OFFSET);
+        if (bodyLength <= chunkSize && !isPending(requestId)) {
+            ctx.write(frame, promise);
+            return;
+        }
+        pendingFrames.add(new PendingFrame(frame, promise, requestId));
+        scheduleWrite(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        PendingFrame pendingFrame;
+        while ((pendingFrame = pendingFrames.poll()) != null) {
+            pendingFrame.abort(new IllegalStateException("Channel closed"));
+        }
+    }
+
+    private boolean isFrame(ByteBuf buf) {
+        return buf.readableBytes() >= RpcProtocol.HEADER_LENGTH
+                && buf.getShort(buf.readerIndex()) == RpcProtocol.MAGIC;
+    }
+
+    private boolean isPending(long requestId) {
+        for (PendingFrame pendingFrame : pendingFrames) {
+            if (pendingFrame.requestId == requestId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleWrite(final ChannelHandlerContext ctx) {
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                writeScheduled = false;
+                writeNextChunk(ctx);
+            }
+        });
+    }
+
+    private void writeNextChunk(ChannelHandlerContext ctx) {
+        PendingFrame pendingFrame = pendingFrames.peek();
+        if (pendingFrame == null) {
+            return;
+        }
+        if (pendingFrame.writeChunk(ctx)) {
+            pendingFrames.poll();
+        }
+        ctx.flush();
+        if (!pendingFrames.isEmpty()) {
+            scheduleWrite(ctx);
+        }
+    }
+
+    private class PendingFrame {
+        private final ByteBuf frame;
+        private final ChannelPromise promise;
+        private final long requestId;
+        private final int bodyLength;
+        private int offset;
+        private boolean failed;
+
+        PendingFrame(ByteBuf frame, ChannelPromise promise, long requestId) {
+            this.frame = frame;
+            this.promise = promise;
+            this.requestId = requestId;
+            this.bodyLength = frame.readableBytes() - RpcProtocol.HEADER_LENGTH;
+        }
+
+        /**
+         * 写出下一个分片
+         * @return 该帧是否已经处理完
+         */
+        boolean writeChunk(ChannelHandlerContext ctx) {
+            if (failed) {
+                frame.release();
+                return true;
+            }
+            if (offset == 0 && bodyLength <= chunkSize) {
+                //因为同一请求前面有大消息而排队的小消息，整帧写出
+                ctx.write(frame, promise);
+                return true;
+            }
+            int length = Math.min(chunkSize, bodyLength - offset);
+            boolean last = offset + length == bodyLength;
+            int headerIndex = frame.readerIndex();
+
+            ByteBuf header = ctx.alloc().buffer(RpcProtocol.HEADER_LENGTH);
+            header.writeBytes(frame, headerIndex, RpcProtocol.HEADER_LENGTH);
+            byte flags = (byte) (frame.getByte(headerIndex + RpcProtocol.FLAGS_OFFSET) | RpcProtocol.FLAG_CHUNKED);
+            if (last) {
+                flags |= RpcProtocol.FLAG_LAST_CHUNK;
+            }
+            header.setByte(RpcProtocol.FLAGS_OFFSET, flags);
+            header.setInt(RpcProtocol.BODY_LENGTH_OFFSET, length);
+            ctx.write(header);
+
+            ByteBuf chunk = frame.slice(headerIndex + RpcProtocol.HEADER_LENGTH + offset, length).retain();
+            ctx.write(chunk).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        failed = true;
+                        promise.tryFailure(future.cause());
+                    } else if (last) {
+                        promise.trySuccess();
+                    }
+                }
+            });
+            offset += length;
+            if (last) {
+                frame.release();
+            }
+            return last;
+        }
+
+        void abort(Throwable cause) {
+            frame.release();
+            promise.tryFailure(cause);
+        }
+    }
+}
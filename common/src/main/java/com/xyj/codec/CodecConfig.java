@@ -0,0 +1,41 @@
+package com.xyj.codec;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 编解码参数，客户端和服务端共用
+ */
+@Data
+public class CodecConfig {
+
+    // 单帧消息体的最大长度
+    private int maxFrameLength = RpcProtocol.DEFAULT_MAX_FRAME_LENGTH;
+
+    // 消息体超过该长度时拆分成多个分片帧发送，不能超过对端的maxFrameLength
+    private int chunkSize = 32 * 1024;
+
+    // 单个消息（所有分片拼接后，以及解压后）的最大长度
+    private int maxMessageLength = 16 * 1024 * 1024;
+
+    // 每个连接上正在拼接的分片最多占用的内存，超过后关闭连接
+    private long maxPendingChunkBytes = 64 * 1024 * 1024;
+
+    // 支持的压缩算法，按优先级排序，为空表示不压缩；客户端用于发起协商，服务端用于选择
+    private List<String> compressions = new ArrayList<>();
+
+    // 默认的序列化方式，握手没有协商出其他序列化方式时使用
+    private String serializer = "kryo";
+
+    // 支持的序列化方式，按优先级排序；客户端用于发起协商，服务端表示除默认方式外还接受哪些
+    private List<String> serializers = new ArrayList<>();
+
+    // Kryo按服务端根据服务接口生成的类注册表注册类，只写类的id而不是类名；需要双方都开启
+    private boolean kryoRegistration = true;
+
+    // 消息体超过该字节数才压缩
+    private int compressThreshold = 4096;
+
+}
@@ -0,0 +1,100 @@
+package com.xyj.codec;
+
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.serializer.Serializer;
+import com.xyj.util.RequestIdGenerator;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 兼容旧版本的 "4字节长度 + 消息体" 协议，仅在灰度升级期间使用
+ * 旧协议的请求在解码时分配一个新的数字id，并记录在channel上，编码响应时再换回原来的字符串id，按旧协议写回
+ */
+final class LegacyCodec {
+
+    static final String LEGACY_BEAT_ID = "BEAT_PING_PONG";
+
+    private static final AttributeKey<Map<Long, String>> LEGACY_REQUEST_IDS = AttributeKey.valueOf("rpc.legacyRequestIds");
+
+    private LegacyCodec() {
+    }
+
+    /**
+     * 解码旧协议的消息体，心跳及不支持的消息返回null
+     */
+    static Object decode(Channel channel, byte[] data, Class<?> genericClass, Serializer serializer) {
+        if (genericClass != RpcRequest.class) {
+            // 新版本客户端只会发送新协议，因此只有服务端需要兼容旧协议
+            throw new IllegalStateException("Legacy frame is not supported for " + genericClass.getName());
+        }
+        LegacyRpcRequest legacy = (LegacyRpcRequest) serializer.deserialize(data, LegacyRpcRequest.class);
+        if (LEGACY_BEAT_ID.equalsIgnoreCase(legacy.requestId)) {
+            return null;
+        }
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(RequestIdGenerator.nextId());
+        request.setClassName(legacy.className);
+        request.setMethodName(legacy.methodName);
+        request.setParameterTypes(legacy.parameterTypes);
+        request.setParameters(legacy.parameters);
+        request.setVersion(legacy.version);
+        legacyRequestIds(channel).put(request.getRequestId(), legacy.requestId);
+        return request;
+    }
+
+    /**
+     * 如果该响应对应的是旧协议的请求，按旧协议编码，否则返回null
+     */
+    static byte[] encodeIfLegacy(Channel channel, Object msg, Serializer serializer) {
+        if (!(msg instanceof RpcResponse) || !channel.hasAttr(LEGACY_REQUEST_IDS)) {
+            return null;
+        }
+        RpcResponse response = (RpcResponse) msg;
+        String legacyId = legacyRequestIds(channel).remove(response.getRequestId());
+        if (legacyId == null) {
+            return null;
+        }
+        LegacyRpcResponse legacy = new LegacyRpcResponse();
+        legacy.requestId = legacyId;
+        legacy.error = response.getError();
+        legacy.result = response.getResult();
+        return serializer.serialize(legacy);
+    }
+
+    private static Map<Long, String> legacyRequestIds(Channel channel) {
+        Map<Long, String> ids = channel.attr(LEGACY_REQUEST_IDS).get();
+        if (ids == null) {
+            ids = new ConcurrentHashMap<>();
+            Map<Long, String> old = channel.attr(LEGACY_REQUEST_IDS).setIfAbsent(ids);
+            if (old != null) {
+                ids = old;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 旧版本RpcRequest的字段布局
+     */
+    static class LegacyRpcRequest {
+        private String requestId;
+        private String className;
+        private String methodName;
+        private Class<?>[] parameterTypes;
+        private Object[] parameters;
+        private String version;
+    }
+
+    /**
+     * 旧版本RpcResponse的字段布局
+     */
+    static class LegacyRpcResponse {
+        private String requestId;
+        private String error;
+        private Object result;
+    }
+}
@@ -1,46 +1,288 @@
 package com.xyj.codec;
 
+import com.xyj.compress.CompressionStats;
+import com.xyj.compress.Compressor;
+import com.xyj.compress.Compressors;
+import com.xyj.message.Handshake;
+import com.xyj.message.Overloaded;
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcBatchResponse;
+import com.xyj.message.RpcMessage;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.message.StreamFrame;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import com.xyj.serializer.SerializerStats;
+import com.xyj.util.JsonUtil;
 
 import java.util.List;
 
 /**
  * RPC Decoder
+ * 先根据帧头完成拆包、路由和校验，只有需要交给上层的消息才会反序列化消息体
  */
 public class RpcDecoder extends ByteToMessageDecoder {
     private static final Logger logger = LoggerFactory.getLogger(RpcDecoder.class);
     private Class<?> genericClass;
-    private Serializer serializer;
+    private Serializer serializer;//只用于旧协议，新协议按帧头中的id选择
+    private byte messageType;
+    private int maxFrameLength;
+    private int maxMessageLength;
+    private ChunkAssembler chunkAssembler;
 
     public RpcDecoder(Class<?> genericClass, Serializer serializer) {
+        this(genericClass, serializer, new CodecConfig());
+    }
+
+    public RpcDecoder(Class<?> genericClass, Serializer serializer, CodecConfig codecConfig) {
         this.genericClass = genericClass;
         this.serializer = serializer;
+        this.messageType = genericClass == RpcRequest.class ? RpcProtocol.TYPE_REQUEST : RpcProtocol.TYPE_RESPONSE;
+        this.maxFrameLength = codecConfig.getMaxFrameLength();
+        this.maxMessageLength = codecConfig.getMaxMessageLength();
+        this.chunkAssembler = new ChunkAssembler(codecConfig);
     }
 
     @Override
     public final void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        if (in.readableBytes() < 4) {
+        if (in.readableBytes() < 2) {
             return;
         }
-        in.markReaderIndex();
-        int dataLength = in.readInt();//头四个字节为消息长度
-        if (in.readableBytes() < dataLength) {
-            in.resetReaderIndex();
+        if (in.getShort(in.readerIndex()) != RpcProtocol.MAGIC) {
+            decodeLegacy(ctx, in, out);
             return;
         }
-        byte[] data = new byte[dataLength];
-        in.readBytes(data);
+        if (in.readableBytes() < RpcProtocol.HEADER_LENGTH) {
+            return;
+        }
+        int dataLength = in.getInt(in.readerIndex() + RpcProtocol.BODY_LENGTH_OFFSET);
+        checkFrameLength(dataLength);
+        if (in.readableBytes() < RpcProtocol.HEADER_LENGTH + dataLength) {
+            return;
+        }
+        in.skipBytes(2);
+        byte version = in.readByte();
+        byte flags = in.readByte();
+        byte serializerId = in.readByte();
+        byte type = in.readByte();
+        long requestId = in.readLong();
+        in.skipBytes(4);
+
+        if (version != RpcProtocol.VERSION) {
+            logger.error("Unsupported protocol version: {}, request id: {}", version, requestId);
+            in.skipBytes(dataLength);
+            return;
+        }
+        if ((flags & RpcProtocol.FLAG_CHUNKED) == 0) {
+            //直接在原buffer的切片上反序列化，不拷贝消息体
+            decodeBody(ctx, flags, serializerId, type, requestId, in.readSlice(dataLength), out);
+            return;
+        }
+        ByteBuf body = chunkAssembler.append(ctx, requestId, in, dataLength, (flags & RpcProtocol.FLAG_LAST_CHUNK) != 0);
+        if (body != null) {
+            try {
+                decodeBody(ctx, flags, serializerId, type, requestId, body, out);
+            } finally {
+                body.release();
+            }
+        }
+    }
+
+    private void decodeBody(ChannelHandlerContext ctx, byte flags, byte serializerId, byte type, long requestId,
+                            ByteBuf body, List<Object> out) {
+        if (type == RpcProtocol.TYPE_HEARTBEAT) {
+            logger.debug("Read heartbeat from {}", ctx.channel().remoteAddress());
+            return;
+        }
+        if (type == RpcProtocol.TYPE_HANDSHAKE) {
+            decodeHandshake(ctx, body, out);
+            return;
+        }
+        if (type == RpcProtocol.TYPE_OVERLOADED) {
+            out.add(Overloaded.of(requestId));
+            return;
+        }
+        if (type == RpcProtocol.TYPE_STREAM_DEMAND || type == RpcProtocol.TYPE_STREAM_CANCEL
+                || (type == RpcProtocol.TYPE_STREAM_END && !body.isReadable())) {
+            StreamFrame frame = StreamFrame.of(type, requestId);
+            if (type == RpcProtocol.TYPE_STREAM_DEMAND) {
+                long demand = readDemand(body, requestId);
+                if (demand <= 0) {
+                    logger.warn("Drop stream demand {}, request id: {}", demand, requestId);
+                    return;
+                }
+                frame.setDemand(demand);
+            }
+            out.add(frame);
+            return;
+        }
+        Class<?> targetClass;
+        if (type == messageType) {
+            targetClass = genericClass;
+        } else if (type == RpcProtocol.TYPE_STREAM_DATA || type == RpcProtocol.TYPE_STREAM_END) {
+            targetClass = StreamFrame.class;
+        } else if (type == RpcProtocol.TYPE_BATCH_REQUEST) {
+            targetClass = RpcBatchRequest.class;
+        } else if (type == RpcProtocol.TYPE_BATCH_RESPONSE) {
+            targetClass = RpcBatchResponse.class;
+        } else {
+            logger.error("Unexpected message type: {}, request id: {}", type, requestId);
+            return;
+        }
+        Serializer bodySerializer = SerializerRegistry.get(serializerId);
+        if ((flags & RpcProtocol.FLAG_REGISTERED) != 0) {
+            bodySerializer = ChannelSession.get(ctx.channel()).getRegisteredKryo();
+        }
+        if (bodySerializer == null || bodySerializer.getId() != serializerId) {
+            logger.error("Unsupported serializer: {}, request id: {}", serializerId, requestId);
+            failResponse(requestId, "Unsupported serializer: " + serializerId, out);
+            return;
+        }
+
+        ByteBuf decompressed = null;
         Object obj = null;
         try {
-            obj = serializer.deserialize(data, genericClass);
+            if ((flags & RpcProtocol.FLAG_COMPRESSED) != 0) {
+                decompressed = decompress(ctx, body);
+                body = decompressed;
+            }
+            long start = System.nanoTime();
+            obj = bodySerializer.deserialize(body, targetClass);
+            SerializerStats.of(bodySerializer).recordDeserialize(System.nanoTime() - start);
+            ((RpcMessage) obj).setRequestId(requestId);
+            if (obj instanceof StreamFrame) {
+                ((StreamFrame) obj).setType(type);
+            } else if (obj instanceof RpcRequest) {
+                RpcRequest request = (RpcRequest) obj;
+                request.setSerializer(serializerId);
+                if ((flags & RpcProtocol.FLAG_STREAM) != 0) {
+                    request.setStream(true);
+                }
+            }
             out.add(obj);
         } catch (Exception ex) {
             logger.error("Decode error: " + ex.toString());
+            failResponse(requestId, "Decode response error: " + ex, out);
+        } finally {
+            if (decompressed != null) {
+                decompressed.release();
+            }
+        }
+    }
+
+    /**
+     * 需求帧的消息体是一个long，长度不对说明对端已经不可信，按损坏的帧处理并关闭连接
+     */
+    private long readDemand(ByteBuf body, long requestId) {
+        if (body.readableBytes() < Long.BYTES) {
+            throw new CorruptedFrameException("Stream demand too short: " + body.readableBytes()
+                    + " bytes, request id: " + requestId);
+        }
+        return body.readLong();
+    }
+
+    /**
+     * 客户端在这里就使用握手结果：Netty一次读取会先解码完所有帧再交给后面的handler，
+     * 同一次读取中跟在握手之后的响应解码时需要已经能用到协商出的Kryo注册表
+     */
+    private void decodeHandshake(ChannelHandlerContext ctx, ByteBuf body, List<Object> out) {
+        byte[] data = new byte[body.readableBytes()];
+        body.readBytes(data);
+        Handshake handshake;
+        try {
+            handshake = JsonUtil.deserialize(data, Handshake.class);
+        } catch (Exception ex) {
+            logger.error("Decode handshake error: " + ex.toString());
+            return;
+        }
+        if (messageType == RpcProtocol.TYPE_RESPONSE) {
+            ChannelSession.get(ctx.channel()).applyHandshake(handshake, ctx.channel().remoteAddress());
+        }
+        out.add(handshake);
+    }
+
+    /**
+     * 客户端无法解码的响应不能直接丢弃，否则调用方会一直等待：交给上层一个带错误的响应，让对应的调用失败
+     */
+    private void failResponse(long requestId, String error, List<Object> out) {
+        if (messageType != RpcProtocol.TYPE_RESPONSE) {
+            return;
+        }
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(requestId);
+        response.setError(error);
+        out.add(response);
+    }
+
+    /**
+     * 压缩后的消息体格式为 compressor id(1 byte) + 原始长度(4 byte) + 压缩数据
+     */
+    private ByteBuf decompress(ChannelHandlerContext ctx, ByteBuf body) {
+        byte compressorId = body.readByte();
+        int originalLength = body.readInt();
+        Compressor compressor = Compressors.get(compressorId);
+        if (compressor == null) {
+            throw new IllegalStateException("Unsupported compressor: " + compressorId);
+        }
+        if (originalLength < 0 || originalLength > maxMessageLength) {
+            throw new TooLongFrameException("Decompressed length exceeds " + maxMessageLength + ": " + originalLength);
+        }
+        ByteBuf decompressed = ctx.alloc().buffer(originalLength);
+        try {
+            long start = System.nanoTime();
+            compressor.decompress(body, decompressed, originalLength);
+            CompressionStats.of(compressor).recordDecompress(System.nanoTime() - start);
+            return decompressed;
+        } catch (RuntimeException ex) {
+            decompressed.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * 旧协议：头四个字节为消息长度
+     */
+    private void decodeLegacy(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < RpcProtocol.LEGACY_HEADER_LENGTH) {
+            return;
+        }
+        int dataLength = in.getInt(in.readerIndex());
+        checkFrameLength(dataLength);
+        if (in.readableBytes() < RpcProtocol.LEGACY_HEADER_LENGTH + dataLength) {
+            return;
+        }
+        in.skipBytes(RpcProtocol.LEGACY_HEADER_LENGTH);
+        byte[] data = new byte[dataLength];
+        in.readBytes(data);
+        try {
+            Object obj = LegacyCodec.decode(ctx.channel(), data, genericClass, serializer);
+            if (obj != null) {
+                out.add(obj);
+            }
+        } catch (Exception ex) {
+            logger.error("Decode legacy frame error: " + ex.toString());
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        chunkAssembler.releaseAll();
+    }
+
+    private void checkFrameLength(int dataLength) {
+        if (dataLength < 0) {
+            throw new CorruptedFrameException("Negative frame length: " + dataLength);
+        }
+        if (dataLength > maxFrameLength) {
+            throw new TooLongFrameException("Frame length exceeds " + maxFrameLength + ": " + dataLength);
         }
     }
 
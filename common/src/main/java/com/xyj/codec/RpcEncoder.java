@@ -1,36 +1,202 @@
 package com.xyj.codec;
 
+import com.xyj.compress.CompressionStats;
+import com.xyj.compress.Compressor;
+import com.xyj.message.Beat;
+import com.xyj.message.Handshake;
+import com.xyj.message.Overloaded;
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcBatchResponse;
+import com.xyj.message.RpcMessage;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.message.StreamFrame;
+import com.xyj.util.JsonUtil;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.TooLongFrameException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import com.xyj.serializer.SerializerStats;
 
 /**
  * RPC Encoder
+ * 帧格式见 {@link RpcProtocol}
  */
 public class RpcEncoder extends MessageToByteEncoder {
     private static final Logger logger = LoggerFactory.getLogger(RpcEncoder.class);
     private Class<?> genericClass;
-    private Serializer serializer;
+    private Serializer serializer;//默认的序列化方式，握手没有协商出其他方式时以及旧协议使用
+    private byte messageType;
+    private CodecConfig codecConfig;
 
     public RpcEncoder(Class<?> genericClass, Serializer serializer) {
+        this(genericClass, serializer, new CodecConfig());
+    }
+
+    public RpcEncoder(Class<?> genericClass, Serializer serializer, CodecConfig codecConfig) {
         this.genericClass = genericClass;
         this.serializer = serializer;
+        this.messageType = genericClass == RpcRequest.class ? RpcProtocol.TYPE_REQUEST : RpcProtocol.TYPE_RESPONSE;
+        this.codecConfig = codecConfig;
     }
 
     @Override
     public void encode(ChannelHandlerContext ctx, Object in, ByteBuf out) throws Exception {
+        if (in == Beat.BEAT_PING) {
+            //心跳只有帧头
+            writeHeader(out, RpcProtocol.TYPE_HEARTBEAT, (byte) 0, serializer.getId(), Beat.BEAT_ID, 0);
+            return;
+        }
+        if (in instanceof Handshake) {
+            //握手消息固定使用JSON
+            byte[] data = JsonUtil.serialize(in);
+            writeHeader(out, RpcProtocol.TYPE_HANDSHAKE, (byte) 0, (byte) 0, 0, data.length);
+            out.writeBytes(data);
+            return;
+        }
+        if (in instanceof StreamFrame) {
+            encodeStreamFrame(ctx, (StreamFrame) in, out);
+            return;
+        }
+        if (in instanceof Overloaded) {
+            writeHeader(out, RpcProtocol.TYPE_OVERLOADED, (byte) 0, serializer.getId(), ((Overloaded) in).getRequestId(), 0);
+            return;
+        }
+        if (in instanceof RpcBatchRequest) {
+            encodeBody(ctx, RpcProtocol.TYPE_BATCH_REQUEST, (byte) 0, ((RpcMessage) in).getRequestId(), in, out);
+            return;
+        }
+        if (in instanceof RpcBatchResponse) {
+            encodeBody(ctx, RpcProtocol.TYPE_BATCH_RESPONSE, (byte) 0, ((RpcMessage) in).getRequestId(), in, out);
+            return;
+        }
         if (genericClass.isInstance(in)) {
+            int headerIndex = out.writerIndex();
             try {
-                byte[] data = serializer.serialize(in);
-                out.writeInt(data.length);//头四个字节写入长度
-                out.writeBytes(data);
+                byte[] legacy = LegacyCodec.encodeIfLegacy(ctx.channel(), in, serializer);
+                if (legacy != null) {
+                    out.writeInt(legacy.length);//旧协议：头四个字节写入长度
+                    out.writeBytes(legacy);
+                    return;
+                }
             } catch (Exception ex) {
+                out.writerIndex(headerIndex);
                 logger.error("Encode error: " + ex.toString());
+                throw new EncoderException(ex);
             }
+            byte flags = in instanceof RpcRequest && ((RpcRequest) in).isStream() ? RpcProtocol.FLAG_STREAM : 0;
+            encodeBody(ctx, messageType, flags, ((RpcMessage) in).getRequestId(), in, out);
+        }
+    }
+
+    private void encodeStreamFrame(ChannelHandlerContext ctx, StreamFrame frame, ByteBuf out) {
+        byte type = frame.getType();
+        if (type == RpcProtocol.TYPE_STREAM_DEMAND) {
+            writeHeader(out, type, (byte) 0, serializer.getId(), frame.getRequestId(), 8);
+            out.writeLong(frame.getDemand());
+        } else if (type == RpcProtocol.TYPE_STREAM_CANCEL
+                || (type == RpcProtocol.TYPE_STREAM_END && !frame.isError())) {
+            //正常结束和取消只有帧头
+            writeHeader(out, type, (byte) 0, serializer.getId(), frame.getRequestId(), 0);
+        } else {
+            encodeBody(ctx, type, (byte) 0, frame.getRequestId(), frame, out);
         }
     }
-}
 
+    private void encodeBody(ChannelHandlerContext ctx, byte type, byte flags, long requestId, Object in, ByteBuf out) {
+        int headerIndex = out.writerIndex();
+        try {
+            Serializer bodySerializer = selectSerializer(ctx, in);
+            Serializer registered = ChannelSession.get(ctx.channel()).getRegisteredKryo();
+            if (registered != null && bodySerializer.getId() == registered.getId()) {
+                bodySerializer = registered;
+                flags |= RpcProtocol.FLAG_REGISTERED;
+            }
+            writeHeader(out, type, flags, bodySerializer.getId(), requestId, 0);
+            //消息体直接序列化到out中，写完后回填长度
+            long start = System.nanoTime();
+            bodySerializer.serialize(in, out);
+            int bodyIndex = headerIndex + RpcProtocol.HEADER_LENGTH;
+            int bodyLength = out.writerIndex() - bodyIndex;
+            SerializerStats.of(bodySerializer).recordSerialize(bodyLength, System.nanoTime() - start);
+            if (bodyLength > codecConfig.getMaxMessageLength()) {
+                //对端会丢弃超长的消息，直接让本次请求失败
+                throw new TooLongFrameException("Message length exceeds " + codecConfig.getMaxMessageLength() + ": " + bodyLength);
+            }
+            Compressor compressor = ChannelSession.get(ctx.channel()).getCompressor();
+            if (compressor != null && bodyLength > codecConfig.getCompressThreshold()) {
+                bodyLength = compress(ctx, compressor, out, headerIndex, bodyIndex, bodyLength);
+            }
+            out.setInt(headerIndex + RpcProtocol.BODY_LENGTH_OFFSET, bodyLength);
+        } catch (Exception ex) {
+            //丢弃写了一半的帧，并让本次write的future失败
+            out.writerIndex(headerIndex);
+            logger.error("Encode error: " + ex.toString());
+            throw new EncoderException(ex);
+        }
+    }
+
+    /**
+     * 请求或响应指定了序列化方式时使用指定的方式，否则使用连接协商出的方式，都没有时使用默认方式
+     */
+    private Serializer selectSerializer(ChannelHandlerContext ctx, Object in) {
+        byte id = 0;
+        if (in instanceof RpcRequest) {
+            id = ((RpcRequest) in).getSerializer();
+        } else if (in instanceof RpcResponse) {
+            id = ((RpcResponse) in).getSerializer();
+        }
+        if (id != 0) {
+            Serializer pinned = SerializerRegistry.get(id);
+            if (pinned != null) {
+                return pinned;
+            }
+        }
+        Serializer negotiated = ChannelSession.get(ctx.channel()).getSerializer();
+        return negotiated != null ? negotiated : serializer;
+    }
+
+    /**
+     * 压缩out中已经写入的消息体，只有压缩后变小才替换
+     * @return 最终的消息体长度
+     */
+    private int compress(ChannelHandlerContext ctx, Compressor compressor, ByteBuf out,
+                         int headerIndex, int bodyIndex, int bodyLength) {
+        ByteBuf compressed = ctx.alloc().buffer(bodyLength >>> 1);
+        try {
+            long start = System.nanoTime();
+            compressor.compress(out.slice(bodyIndex, bodyLength), compressed);
+            long nanos = System.nanoTime() - start;
+            int compressedLength = RpcProtocol.COMPRESSED_BODY_HEADER_LENGTH + compressed.readableBytes();
+            boolean kept = compressedLength < bodyLength;
+            CompressionStats.of(compressor).recordCompress(bodyLength, compressedLength, nanos, kept);
+            if (!kept) {
+                return bodyLength;
+            }
+            out.writerIndex(bodyIndex);
+            out.writeByte(compressor.getId());
+            out.writeInt(bodyLength);
+            out.writeBytes(compressed);
+            out.setByte(headerIndex + RpcProtocol.FLAGS_OFFSET,
+                    out.getByte(headerIndex + RpcProtocol.FLAGS_OFFSET) | RpcProtocol.FLAG_COMPRESSED);
+            return compressedLength;
+        } finally {
+            compressed.release();
+        }
+    }
+
+    private void writeHeader(ByteBuf out, byte type, byte flags, byte serializerId, long requestId, int bodyLength) {
+        out.writeShort(RpcProtocol.MAGIC);
+        out.writeByte(RpcProtocol.VERSION);
+        out.writeByte(flags);
+        out.writeByte(serializerId);
+        out.writeByte(type);
+        out.writeLong(requestId);
+        out.writeInt(bodyLength);
+    }
+}
@@ -0,0 +1,69 @@
+package com.xyj.codec;
+
+/**
+ * 传输协议定义
+ *
+ * <pre>
+ * +--------+---------+-------+------------+--------+------------+-------------+
+ * | magic  | version | flags | serializer |  type  | request id | body length |
+ * | 2 byte | 1 byte  | 1 byte|   1 byte   | 1 byte |   8 byte   |   4 byte    |
+ * +--------+---------+-------+------------+--------+------------+-------------+
+ * </pre>
+ *
+ * 旧版本协议只有 4 个字节的长度字段，由于旧协议单帧不超过 64 KB，长度字段的前两个字节必为 0x0000 或 0x0001，
+ * 不会与 magic 冲突，因此解码器可以根据前两个字节区分新旧协议
+ */
+public final class RpcProtocol {
+
+    public static final short MAGIC = (short) 0xCAFE;
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_LENGTH = 18;
+
+    public static final int FLAGS_OFFSET = 3;
+
+    public static final int REQUEST_ID_OFFSET = 6;
+
+    public static final int BODY_LENGTH_OFFSET = 14;
+
+    public static final int LEGACY_HEADER_LENGTH = 4;
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 65536;
+
+    // message type
+    public static final byte TYPE_REQUEST = 1;
+    public static final byte TYPE_RESPONSE = 2;
+    public static final byte TYPE_HEARTBEAT = 3;
+    public static final byte TYPE_HANDSHAKE = 4;
+    // 流式调用，request id与发起调用的请求相同；DATA/END的消息体为序列化后的StreamFrame，
+    // DEMAND的消息体为8字节的请求数量，CANCEL只有帧头
+    public static final byte TYPE_STREAM_DATA = 5;
+    public static final byte TYPE_STREAM_END = 6;
+    public static final byte TYPE_STREAM_DEMAND = 7;
+    public static final byte TYPE_STREAM_CANCEL = 8;
+    // 批量调用，消息体为RpcBatchRequest/RpcBatchResponse
+    public static final byte TYPE_BATCH_REQUEST = 9;
+    public static final byte TYPE_BATCH_RESPONSE = 10;
+    // 服务端过载，请求没有执行，只有帧头；只发给在握手中声明支持的客户端
+    public static final byte TYPE_OVERLOADED = 11;
+
+    // flags
+    // 消息体被压缩，格式为 compressor id(1 byte) + 原始长度(4 byte) + 压缩数据
+    public static final byte FLAG_COMPRESSED = 0x01;
+
+    // 分片帧：超过chunkSize的消息体被拆成多个帧发送，每个分片都带有完整的帧头（相同的request id、type、flags），
+    // 最后一个分片额外带有FLAG_LAST_CHUNK，接收方按request id拼接后再按普通消息处理
+    public static final byte FLAG_CHUNKED = 0x02;
+    public static final byte FLAG_LAST_CHUNK = 0x04;
+    // 请求的返回值是一个流，结果通过STREAM_DATA帧按对端的DEMAND逐个返回，以STREAM_END结束
+    public static final byte FLAG_STREAM = 0x08;
+    // 消息体按握手时约定的类注册表序列化（目前只用于Kryo），未约定注册表的连接不会出现
+    public static final byte FLAG_REGISTERED = 0x10;
+
+    public static final int COMPRESSED_BODY_HEADER_LENGTH = 5;
+
+    private RpcProtocol() {
+    }
+
+}
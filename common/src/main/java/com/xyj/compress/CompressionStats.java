@@ -0,0 +1,61 @@
+package com.xyj.compress;
+
+import com.xyj.metrics.RpcMetrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压缩相关指标，用于调整压缩阈值
+ * compression.{name}.ratio 为压缩后字节数 / 压缩前字节数，compressNanos/decompressNanos 为累计耗时
+ */
+public class CompressionStats {
+
+    private static final Map<String, CompressionStats> STATS = new ConcurrentHashMap<>();
+
+    private final LongAdder compressCount;
+    private final LongAdder rawBytes;
+    private final LongAdder compressedBytes;
+    private final LongAdder compressNanos;
+    private final LongAdder discarded;
+    private final LongAdder decompressCount;
+    private final LongAdder decompressNanos;
+
+    private CompressionStats(String name) {
+        String prefix = "compression." + name + ".";
+        compressCount = RpcMetrics.counter(prefix + "compressCount");
+        rawBytes = RpcMetrics.counter(prefix + "rawBytes");
+        compressedBytes = RpcMetrics.counter(prefix + "compressedBytes");
+        compressNanos = RpcMetrics.counter(prefix + "compressNanos");
+        discarded = RpcMetrics.counter(prefix + "discarded");
+        decompressCount = RpcMetrics.counter(prefix + "decompressCount");
+        decompressNanos = RpcMetrics.counter(prefix + "decompressNanos");
+        RpcMetrics.gauge(prefix + "ratio", () -> {
+            long raw = rawBytes.sum();
+            return raw == 0 ? 1.0d : (double) compressedBytes.sum() / raw;
+        });
+    }
+
+    public static CompressionStats of(Compressor compressor) {
+        return STATS.computeIfAbsent(compressor.getName(), CompressionStats::new);
+    }
+
+    /**
+     * 记录一次压缩，kept为false表示压缩后没有变小，最终发送的是原始数据
+     */
+    public void recordCompress(int raw, int compressed, long nanos, boolean kept) {
+        compressCount.increment();
+        rawBytes.add(raw);
+        compressedBytes.add(kept ? compressed : raw);
+        compressNanos.add(nanos);
+        if (!kept) {
+            discarded.increment();
+        }
+    }
+
+    public void recordDecompress(long nanos) {
+        decompressCount.increment();
+        decompressNanos.add(nanos);
+    }
+}
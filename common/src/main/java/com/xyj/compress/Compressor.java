@@ -0,0 +1,28 @@
+package com.xyj.compress;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 消息体压缩算法的SPI
+ * 实现类通过 META-INF/services/com.xyj.compress.Compressor 注册，id写入压缩后的消息体中，通信双方必须一致
+ */
+public interface Compressor {
+
+    byte getId();
+
+    /**
+     * 握手时使用的名字
+     */
+    String getName();
+
+    /**
+     * 压缩in的全部可读字节并写入out
+     */
+    void compress(ByteBuf in, ByteBuf out);
+
+    /**
+     * 解压in的全部可读字节并写入out，originalLength为压缩前的长度
+     */
+    void decompress(ByteBuf in, ByteBuf out, int originalLength);
+
+}
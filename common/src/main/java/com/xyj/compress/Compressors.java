@@ -0,0 +1,53 @@
+package com.xyj.compress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已注册的压缩算法，通过ServiceLoader加载
+ */
+public class Compressors {
+    private static final Logger logger = LoggerFactory.getLogger(Compressors.class);
+
+    private static final Map<Byte, Compressor> COMPRESSORS_BY_ID = new ConcurrentHashMap<>();
+
+    private static final Map<String, Compressor> COMPRESSORS_BY_NAME = new ConcurrentHashMap<>();
+
+    static {
+        for (Compressor compressor : ServiceLoader.load(Compressor.class, Compressors.class.getClassLoader())) {
+            register(compressor);
+        }
+    }
+
+    private Compressors() {
+    }
+
+    public static void register(Compressor compressor) {
+        Compressor old = COMPRESSORS_BY_ID.putIfAbsent(compressor.getId(), compressor);
+        if (old != null && old.getClass() != compressor.getClass()) {
+            logger.error("Compressor id {} is already used by {}, ignore {}", compressor.getId(),
+                    old.getClass().getName(), compressor.getClass().getName());
+            return;
+        }
+        COMPRESSORS_BY_NAME.put(compressor.getName(), compressor);
+        logger.info("Register compressor: {}, id: {}", compressor.getName(), compressor.getId());
+    }
+
+    public static Compressor get(byte id) {
+        return COMPRESSORS_BY_ID.get(id);
+    }
+
+    public static Compressor get(String name) {
+        return COMPRESSORS_BY_NAME.get(name);
+    }
+
+    public static List<String> names() {
+        return new ArrayList<>(COMPRESSORS_BY_NAME.keySet());
+    }
+}
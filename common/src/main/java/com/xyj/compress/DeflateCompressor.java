@@ -0,0 +1,99 @@
+package com.xyj.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 基于JDK Deflater/Inflater的压缩实现
+ * Deflater/Inflater持有native内存，创建代价较高，每个线程复用一个实例
+ */
+public class DeflateCompressor implements Compressor {
+
+    public static final byte ID = 1;
+
+    private static final FastThreadLocal<Deflater> DEFLATER = new FastThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+
+        @Override
+        protected void onRemoval(Deflater deflater) {
+            deflater.end();
+        }
+    };
+
+    private static final FastThreadLocal<Inflater> INFLATER = new FastThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+
+        @Override
+        protected void onRemoval(Inflater inflater) {
+            inflater.end();
+        }
+    };
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        try {
+            deflater.setInput(in.nioBuffer());
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.ensureWritable(Math.max(in.readableBytes() >>> 2, 256));
+                ByteBuffer dst = out.nioBuffer(out.writerIndex(), out.writableBytes());
+                int written = deflater.deflate(dst);
+                out.writerIndex(out.writerIndex() + written);
+            }
+            in.skipBytes(in.readableBytes());
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out, int originalLength) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        try {
+            inflater.setInput(in.nioBuffer());
+            out.ensureWritable(originalLength);
+            int remaining = originalLength;
+            while (remaining > 0 && !inflater.finished()) {
+                ByteBuffer dst = out.nioBuffer(out.writerIndex(), remaining);
+                int read = inflater.inflate(dst);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated deflate stream");
+                }
+                out.writerIndex(out.writerIndex() + read);
+                remaining -= read;
+            }
+            if (remaining != 0) {
+                throw new IllegalStateException("Decompressed length mismatch, expected: " + originalLength);
+            }
+            in.skipBytes(in.readableBytes());
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            inflater.reset();
+        }
+    }
+}
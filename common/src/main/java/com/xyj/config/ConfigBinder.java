@@ -0,0 +1,57 @@
+package com.xyj.config;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * 把properties中以prefix开头的配置绑定到配置对象的属性上
+ * 嵌套的配置对象用点号分隔，如 server.buffer.writeBufferHighWaterMark=32768；列表用逗号分隔，枚举写名称
+ * 配置对象中不存在的属性抛出异常，避免写错的配置被悄悄忽略
+ */
+public final class ConfigBinder {
+
+    private ConfigBinder() {
+    }
+
+    public static <T> T bind(T target, Properties properties, String prefix) {
+        MutablePropertyValues values = new MutablePropertyValues();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                values.add(name.substring(prefix.length()), properties.getProperty(name).trim());
+            }
+        }
+        BeanWrapper wrapper = new BeanWrapperImpl(target);
+        //为null的嵌套配置（如server.limit.*）按默认构造器创建
+        wrapper.setAutoGrowNestedPaths(true);
+        wrapper.setConversionService(new DefaultConversionService());
+        wrapper.setPropertyValues(values);
+        return target;
+    }
+
+    /**
+     * 读取classpath中的properties文件
+     */
+    public static Properties load(String resource) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = ConfigBinder.class.getClassLoader();
+        }
+        Properties properties = new Properties();
+        try (InputStream in = classLoader.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Can not find " + resource + " in classpath");
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not read " + resource, e);
+        }
+        return properties;
+    }
+}
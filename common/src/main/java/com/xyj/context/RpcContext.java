@@ -0,0 +1,62 @@
+package com.xyj.context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程上的调用上下文，目前只有截止时间
+ * 服务端执行请求时设置为该请求的截止时间，服务方法中发起的RPC调用使用剩余的时间；
+ * 客户端也可以在发起调用前自己设置，之后该线程上的调用都不会超过这个时间
+ * 截止时间为System.nanoTime()的值，0表示不限
+ */
+public final class RpcContext {
+
+    private static final ThreadLocal<long[]> DEADLINE = ThreadLocal.withInitial(() -> new long[1]);
+
+    private RpcContext() {
+    }
+
+    public static long getDeadline() {
+        return DEADLINE.get()[0];
+    }
+
+    /**
+     * 设置当前线程的截止时间，返回原来的值，用完后通过setDeadline恢复
+     */
+    public static long setDeadline(long deadline) {
+        long[] holder = DEADLINE.get();
+        long previous = holder[0];
+        holder[0] = deadline;
+        return previous;
+    }
+
+    /**
+     * 从现在起timeoutMillis毫秒后的截止时间，timeoutMillis不大于0时返回0
+     */
+    public static long deadlineAfter(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        return deadline != 0 ? deadline : 1;
+    }
+
+    /**
+     * 取两个截止时间中较早的一个，0表示不限
+     */
+    public static long earlier(long deadline, long other) {
+        if (deadline == 0) {
+            return other;
+        }
+        if (other == 0) {
+            return deadline;
+        }
+        return deadline - other < 0 ? deadline : other;
+    }
+
+    /**
+     * 截止时间已过（截止时间不为0时）
+     */
+    public static boolean isExpired(long deadline) {
+        return deadline != 0 && deadline - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.xyj.handler;
+
+/**
+ * 流式调用中一个方向上的消息接收者，用于客户端流和双向流
+ *
+ * 服务接口中按如下方式声明，参数为服务端发送响应用的observer，返回值为服务端接收请求用的observer：
+ * <pre>
+ * StreamObserver&lt;Item&gt; upload(String name, StreamObserver&lt;Result&gt; responses);
+ * </pre>
+ * 客户端调用该方法即打开一个流，向返回的observer调用onNext发送数据、onCompleted表示发送完毕（half-close）、
+ * onError表示取消该调用；服务端的响应回调到传入的observer上
+ */
+public interface StreamObserver<V> {
+
+    void onNext(V value);
+
+    void onError(Throwable t);
+
+    void onCompleted();
+
+}
@@ -0,0 +1,42 @@
+package com.xyj.message;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 连接建立后客户端发送的握手消息，服务端回复同一类型的消息
+ * 握手消息体固定使用JSON编码，与协商出的序列化方式无关
+ */
+@Data
+public class Handshake {
+
+    // 客户端支持的压缩算法，按优先级排序
+    private List<String> compressions;
+
+    // 服务端选定的压缩算法，为空表示不压缩
+    private String compression;
+
+    // 客户端支持的序列化方式，按优先级排序
+    private List<String> serializers;
+
+    // 服务端选定的序列化方式，为空表示使用双方的默认方式
+    private String serializer;
+
+    // 服务通过@RpcService指定了序列化方式时，对应方法签名到序列化方式的映射
+    private Map<String, String> methodSerializers;
+
+    // 客户端能够按服务端下发的类注册表注册Kryo
+    private boolean kryoRegistration;
+
+    // 服务端下发的Kryo类注册表，第i个类的id为 KryoRegistration.FIRST_ID + i，为空表示不使用
+    private List<String> kryoClasses;
+
+    // 服务端暴露的方法签名到方法id的映射，客户端之后的请求只携带id
+    private Map<String, Integer> methods;
+
+    // 客户端能够处理OVERLOADED帧，否则服务端过载时返回错误响应
+    private boolean overloadFrame;
+
+}
@@ -0,0 +1,26 @@
+package com.xyj.message;
+
+/**
+ * 服务端过载时代替响应返回的帧，只有帧头，request id与被拒绝的请求相同
+ * 请求没有执行，客户端可以换一个节点重试
+ */
+public class Overloaded implements RpcMessage {
+
+    private long requestId;
+
+    public static Overloaded of(long requestId) {
+        Overloaded overloaded = new Overloaded();
+        overloaded.requestId = requestId;
+        return overloaded;
+    }
+
+    @Override
+    public long getRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+}
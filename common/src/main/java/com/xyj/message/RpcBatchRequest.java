@@ -0,0 +1,45 @@
+package com.xyj.message;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 批量调用请求，一次调用同一个服务的多个方法
+ * 用到的方法签名只写一次，每个调用只记录方法下标和参数
+ */
+@Data
+public class RpcBatchRequest implements RpcMessage, Serializable {
+
+    private static final long serialVersionUID = 3950128469204862761L;
+
+    // 由帧头携带，不参与序列化
+    private transient long requestId;
+
+    private String className;
+
+    private String version;
+
+    // true：按顺序逐个执行；false：并行执行
+    private boolean ordered;
+
+    // true：每个调用完成后立即返回结果；false：全部完成后一次返回
+    private boolean progressive;
+
+    // 方法表
+    private String[] methodNames;
+
+    private Class<?>[][] parameterTypes;
+
+    // 每个调用使用的方法下标及参数
+    private int[] methodIndexes;
+
+    private Object[][] parameters;
+
+    // 发送时距截止时间的毫秒数，0表示不限；整个批量调用共用一个截止时间
+    private long timeout;
+
+    // 截止时间（System.nanoTime），服务端收到时按timeout换算，0表示不限
+    private transient long deadline;
+
+}
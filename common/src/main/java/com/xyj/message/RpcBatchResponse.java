@@ -0,0 +1,26 @@
+package com.xyj.message;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 批量调用的响应，包含一个或多个调用的结果，indexes为这些调用在批量请求中的下标
+ * 同一个批量请求可能分多次返回，客户端收齐所有调用的结果后结束
+ */
+@Data
+public class RpcBatchResponse implements RpcMessage, Serializable {
+
+    private static final long serialVersionUID = -6870185930551246409L;
+
+    // 由帧头携带，不参与序列化
+    private transient long requestId;
+
+    private int[] indexes;
+
+    private Object[] results;
+
+    // 对应调用的错误信息，没有错误时为null
+    private String[] errors;
+
+}
@@ -0,0 +1,12 @@
+package com.xyj.message;
+
+/**
+ * 在帧头中携带requestId的消息，消息体中不再重复序列化requestId
+ */
+public interface RpcMessage {
+
+    long getRequestId();
+
+    void setRequestId(long requestId);
+
+}
@@ -9,11 +9,24 @@ import java.io.Serializable;
  * RPC Request
  */
 @Data
-public class RpcRequest implements Serializable {
+public class RpcRequest implements RpcMessage, Serializable {
 
     private static final long serialVersionUID = -2524587347775862771L;
 
-    private String requestId;
+    // 由帧头携带，不参与序列化
+    private transient long requestId;
+
+    // 是否为流式调用，由帧头的flags携带
+    private transient boolean stream;
+
+    // 该请求使用的序列化方式id，为0表示使用连接协商出的方式；服务端解码时填入帧头中的id，响应使用同一方式
+    private transient byte serializer;
+
+    // 握手时服务端分配的方法id，大于0时服务端按id分派，className、methodName、parameterTypes和version为空
+    private int methodId;
+
+    // 方法签名，客户端用来查找方法id，不参与序列化
+    private transient String methodKey;
 
     private String className;
 
@@ -25,4 +38,10 @@ public class RpcRequest implements Serializable {
 
     private String version;
 
-}
\ No newline at end of file
+    // 发送时距截止时间的毫秒数，0表示不限；只传相对时间，不依赖两端的时钟一致
+    private long timeout;
+
+    // 截止时间（System.nanoTime），客户端按超时配置和RpcContext计算，服务端收到时按timeout换算，0表示不限
+    private transient long deadline;
+
+}
@@ -1,9 +1,14 @@
 package com.xyj.message;
 
-public class RpcResponse {
+import java.io.Serializable;
+
+public class RpcResponse implements RpcMessage, Serializable {
     private static final long serialVersionUID = 8215493329459772524L;
 
-    private String requestId;
+    // 由帧头携带，不参与序列化
+    private transient long requestId;
+    // 使用的序列化方式id，与请求保持一致，为0表示使用连接协商出的方式
+    private transient byte serializer;
     private String error;
     private Object result;
 
@@ -11,14 +16,22 @@ public class RpcResponse {
         return error != null;
     }
 
-    public String getRequestId() {
+    public long getRequestId() {
         return requestId;
     }
 
-    public void setRequestId(String requestId) {
+    public void setRequestId(long requestId) {
         this.requestId = requestId;
     }
 
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
+
     public String getError() {
         return error;
     }
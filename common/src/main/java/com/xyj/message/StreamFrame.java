@@ -0,0 +1,71 @@
+package com.xyj.message;
+
+import java.io.Serializable;
+
+/**
+ * 流式调用中的控制和数据消息，request id与发起调用的请求相同
+ * type取值见 {@link com.xyj.codec.RpcProtocol} 中的TYPE_STREAM_*，只有DATA/END会序列化消息体
+ */
+public class StreamFrame implements RpcMessage, Serializable {
+    private static final long serialVersionUID = -4105833716398621247L;
+
+    // 由帧头携带，不参与序列化
+    private transient long requestId;
+    private transient byte type;
+    // DEMAND帧请求的元素个数
+    private transient long demand;
+
+    private Object payload;
+    private String error;
+
+    public static StreamFrame of(byte type, long requestId) {
+        StreamFrame frame = new StreamFrame();
+        frame.type = type;
+        frame.requestId = requestId;
+        return frame;
+    }
+
+    public boolean isError() {
+        return error != null;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public void setType(byte type) {
+        this.type = type;
+    }
+
+    public long getDemand() {
+        return demand;
+    }
+
+    public void setDemand(long demand) {
+        this.demand = demand;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Object payload) {
+        this.payload = payload;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,130 @@
+package com.xyj.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * RPC内部指标，包括计数器和瞬时值
+ * 通过 {@link #snapshot()} 读取，同时以 com.xyj:type=RpcMetrics 注册到JMX
+ */
+public class RpcMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(RpcMetrics.class);
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+    private static final Map<String, Supplier<? extends Number>> GAUGES = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("com.xyj:type=RpcMetrics"));
+        } catch (Exception e) {
+            logger.warn("Register rpc metrics mbean fail: {}", e.getMessage());
+        }
+    }
+
+    private RpcMetrics() {
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public static void gauge(String name, Supplier<? extends Number> supplier) {
+        GAUGES.put(name, supplier);
+    }
+
+    public static void remove(String name) {
+        COUNTERS.remove(name);
+        GAUGES.remove(name);
+    }
+
+    public static Number get(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        if (counter != null) {
+            return counter.sum();
+        }
+        Supplier<? extends Number> gauge = GAUGES.get(name);
+        return gauge != null ? gauge.get() : null;
+    }
+
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> entry : GAUGES.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 每个指标作为一个只读属性
+     */
+    private static class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) {
+            return normalize(RpcMetrics.get(attribute));
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Rpc metrics are read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Number> snapshot = snapshot();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+            int i = 0;
+            for (Map.Entry<String, Number> entry : snapshot.entrySet()) {
+                String type = normalize(entry.getValue()) instanceof Double ? Double.class.getName() : Long.class.getName();
+                attributes[i++] = new MBeanAttributeInfo(entry.getKey(), type, entry.getKey(), true, false, false);
+            }
+            return new MBeanInfo(RpcMetrics.class.getName(), "Simple rpc metrics", attributes, null, null, null);
+        }
+
+        private Object normalize(Number value) {
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return value.doubleValue();
+            }
+            return value.longValue();
+        }
+    }
+}
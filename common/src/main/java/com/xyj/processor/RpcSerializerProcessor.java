@@ -0,0 +1,814 @@
+package com.xyj.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译期为服务接口中出现的DTO生成专用的序列化器，替代运行时基于反射的Kryo FieldSerializer和Protostuff RuntimeSchema
+ * 从@RpcService的value接口（服务端）和@RpcAutowired字段的类型（客户端）出发，收集方法参数、返回值及其字段中的类，
+ * 为每个类生成 XXX_KryoSerializer 和 XXX_Schema，登记在META-INF/services中，运行时由GeneratedSerializers加载
+ * 生成的代码与反射实现的编码完全相同，字段不能通过getter/setter或直接访问读写、字段类型不支持等情况下跳过该类，
+ * 运行时仍使用反射实现
+ * 编译参数 -Arpc.generateSerializers=false 可以关闭
+ */
+@SupportedAnnotationTypes({RpcSerializerProcessor.RPC_SERVICE, RpcSerializerProcessor.RPC_AUTOWIRED})
+@SupportedOptions(RpcSerializerProcessor.OPTION_ENABLED)
+public class RpcSerializerProcessor extends AbstractProcessor {
+
+    static final String RPC_SERVICE = "com.xyj.annotation.RpcService";
+    static final String RPC_AUTOWIRED = "com.xyj.annotation.RpcAutowired";
+    static final String OPTION_ENABLED = "rpc.generateSerializers";
+
+    private static final String KRYO_BASE = "com.xyj.serializer.kryo.GeneratedKryoSerializer";
+    private static final String SCHEMA_BASE = "com.xyj.serializer.protostuff.GeneratedSchema";
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+    private boolean enabled;
+
+    // 已经处理过的类，多轮处理时不重复生成
+    private final Set<String> visited = new HashSet<>();
+
+    private final List<String> kryoSerializers = new ArrayList<>();
+    private final List<String> schemas = new ArrayList<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+        enabled = !"false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION_ENABLED));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!enabled) {
+            return false;
+        }
+        if (roundEnv.processingOver()) {
+            writeServices(KRYO_BASE, kryoSerializers);
+            writeServices(SCHEMA_BASE, schemas);
+            return false;
+        }
+        Set<TypeElement> dtos = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                TypeMirror service = serviceType(annotation, element);
+                if (service != null) {
+                    collectService(service, dtos);
+                }
+            }
+        }
+        for (TypeElement dto : dtos) {
+            if (visited.add(dto.getQualifiedName().toString())) {
+                generate(dto);
+            }
+        }
+        //不占用这些注解，Spring等其他处理器照常处理
+        return false;
+    }
+
+    /**
+     * @RpcService取value指定的接口，@RpcAutowired取字段的类型
+     */
+    private TypeMirror serviceType(TypeElement annotation, Element element) {
+        if (annotation.getQualifiedName().contentEquals(RPC_AUTOWIRED)) {
+            return element.asType();
+        }
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(RPC_SERVICE)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("value")
+                        && entry.getValue().getValue() instanceof TypeMirror) {
+                    return (TypeMirror) entry.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void collectService(TypeMirror service, Set<TypeElement> dtos) {
+        Element element = types.asElement(service);
+        if (!(element instanceof TypeElement)) {
+            return;
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers((TypeElement) element))) {
+            if (isJdk((TypeElement) method.getEnclosingElement())) {
+                continue;
+            }
+            collectType(method.getReturnType(), dtos);
+            for (VariableElement parameter : method.getParameters()) {
+                collectType(parameter.asType(), dtos);
+            }
+        }
+    }
+
+    /**
+     * 收集类型及其泛型参数、字段中出现的非JDK类
+     */
+    private void collectType(TypeMirror type, Set<TypeElement> dtos) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            collectType(((ArrayType) type).getComponentType(), dtos);
+        } else if (type.getKind() == TypeKind.WILDCARD) {
+            WildcardType wildcard = (WildcardType) type;
+            if (wildcard.getExtendsBound() != null) {
+                collectType(wildcard.getExtendsBound(), dtos);
+            }
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            DeclaredType declared = (DeclaredType) type;
+            for (TypeMirror argument : declared.getTypeArguments()) {
+                collectType(argument, dtos);
+            }
+            TypeElement element = (TypeElement) declared.asElement();
+            if (isJdk(element) || element.getKind() != ElementKind.CLASS || !dtos.add(element)) {
+                return;
+            }
+            for (TypeElement cls = element; cls != null && !isJdk(cls); cls = superclassOf(cls)) {
+                for (VariableElement field : ElementFilter.fieldsIn(cls.getEnclosedElements())) {
+                    if (!field.getModifiers().contains(Modifier.STATIC)) {
+                        collectType(field.asType(), dtos);
+                    }
+                }
+            }
+        }
+    }
+
+    private void generate(TypeElement dto) {
+        List<FieldInfo> fields;
+        try {
+            fields = analyze(dto);
+        } catch (UnsupportedTypeException e) {
+            messager.printMessage(Diagnostic.Kind.NOTE, "Skip generating serializers for "
+                    + dto.getQualifiedName() + ": " + e.getMessage());
+            return;
+        }
+        String packageName = packageOf(dto);
+        String baseName = flatName(dto);
+        try {
+            String kryoName = baseName + "_KryoSerializer";
+            write(packageName, kryoName, dto, kryoSource(packageName, kryoName, dto, fields));
+            kryoSerializers.add(qualify(packageName, kryoName));
+        } catch (UnsupportedTypeException e) {
+            messager.printMessage(Diagnostic.Kind.NOTE, "Skip generating kryo serializer for "
+                    + dto.getQualifiedName() + ": " + e.getMessage());
+        }
+        try {
+            String schemaName = baseName + "_Schema";
+            write(packageName, schemaName, dto, schemaSource(packageName, schemaName, dto, fields));
+            schemas.add(qualify(packageName, schemaName));
+        } catch (UnsupportedTypeException e) {
+            messager.printMessage(Diagnostic.Kind.NOTE, "Skip generating protostuff schema for "
+                    + dto.getQualifiedName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 检查类能否由生成的代码创建和读写，返回按声明顺序排列的字段（父类字段在前）
+     */
+    private List<FieldInfo> analyze(TypeElement dto) {
+        if (dto.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new UnsupportedTypeException("abstract class");
+        }
+        if (!dto.getTypeParameters().isEmpty()) {
+            throw new UnsupportedTypeException("generic class");
+        }
+        for (Element e = dto; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new UnsupportedTypeException("private class");
+            }
+            if (((TypeElement) e).getNestingKind() == NestingKind.MEMBER && !e.getModifiers().contains(Modifier.STATIC)
+                    && e.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                throw new UnsupportedTypeException("inner class");
+            }
+            if (((TypeElement) e).getNestingKind() == NestingKind.LOCAL
+                    || ((TypeElement) e).getNestingKind() == NestingKind.ANONYMOUS) {
+                throw new UnsupportedTypeException("local class");
+            }
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(dto.getEnclosedElements());
+        boolean instantiable = constructors.isEmpty();
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                instantiable = true;
+            }
+        }
+        if (!instantiable) {
+            throw new UnsupportedTypeException("no accessible no-arg constructor");
+        }
+        String packageName = packageOf(dto);
+        List<FieldInfo> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (TypeElement cls : hierarchy(dto)) {
+            for (VariableElement field : ElementFilter.fieldsIn(cls.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                String name = field.getSimpleName().toString();
+                if (modifiers.contains(Modifier.FINAL)) {
+                    throw new UnsupportedTypeException("final field " + name);
+                }
+                if (!names.add(name)) {
+                    throw new UnsupportedTypeException("duplicate field " + name);
+                }
+                for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+                    String annotationName = annotation.getAnnotationType().toString();
+                    if (annotationName.startsWith("com.esotericsoftware.kryo.")
+                            || annotationName.startsWith("com.dyuproject.protostuff.")
+                            || annotationName.equals("java.lang.Deprecated")) {
+                        throw new UnsupportedTypeException("annotated field " + name);
+                    }
+                }
+                fields.add(access(dto, cls, field, packageName));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 同一个包内非private的字段直接访问，否则使用getter/setter（显式声明的或由Lombok生成的）
+     */
+    private FieldInfo access(TypeElement dto, TypeElement owner, VariableElement field, String packageName) {
+        String name = field.getSimpleName().toString();
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)
+                || (!modifiers.contains(Modifier.PRIVATE) && packageOf(owner).equals(packageName))) {
+            return new FieldInfo(field, name, name, null);
+        }
+        boolean primitiveBoolean = field.asType().getKind() == TypeKind.BOOLEAN;
+        String property = name;
+        if (primitiveBoolean && name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2))) {
+            property = name.substring(2);
+        }
+        String capitalized = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        String getter = primitiveBoolean ? (property.equals(name) ? "is" + capitalized : name) : "get" + capitalized;
+        String setter = "set" + capitalized;
+        boolean found = hasMethod(dto, getter, 0) && hasMethod(dto, setter, 1);
+        if (!found && hasLombokAccessors(owner, field)) {
+            found = true;
+        }
+        if (!found) {
+            throw new UnsupportedTypeException("no accessible getter/setter for field " + name);
+        }
+        return new FieldInfo(field, name, getter + "()", setter);
+    }
+
+    private boolean hasMethod(TypeElement dto, String name, int parameters) {
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(dto))) {
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameters
+                    && method.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lombok生成的方法在本轮可能还不可见，按注解判断
+     */
+    private boolean hasLombokAccessors(TypeElement owner, VariableElement field) {
+        if (hasAnnotation(owner, "lombok.experimental.Accessors") || hasAnnotation(field, "lombok.experimental.Accessors")) {
+            return false;
+        }
+        if (hasAnnotation(owner, "lombok.Data")) {
+            return true;
+        }
+        boolean getter = hasAnnotation(owner, "lombok.Getter") || hasAnnotation(field, "lombok.Getter");
+        boolean setter = hasAnnotation(owner, "lombok.Setter") || hasAnnotation(field, "lombok.Setter");
+        return getter && setter;
+    }
+
+    private static boolean hasAnnotation(Element element, String name) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------- Kryo ----------------
+
+    /**
+     * 字段按名称排序，基本类型与FieldSerializer相同（int/long为变长编码），引用类型交给GeneratedKryoSerializer按ObjectField的方式读写
+     */
+    private String kryoSource(String packageName, String className, TypeElement dto, List<FieldInfo> fields) {
+        List<FieldInfo> sorted = new ArrayList<>(fields);
+        sorted.sort(Comparator.comparing(f -> f.name));
+        String type = dto.getQualifiedName().toString();
+        StringBuilder constants = new StringBuilder();
+        StringBuilder write = new StringBuilder();
+        StringBuilder read = new StringBuilder();
+        for (FieldInfo field : sorted) {
+            TypeMirror fieldType = field.element.asType();
+            String get = "object." + field.getter;
+            String value;
+            switch (fieldType.getKind()) {
+                case INT:
+                    write.append("        output.writeInt(").append(get).append(", false);\n");
+                    value = "input.readInt(false)";
+                    break;
+                case LONG:
+                    write.append("        output.writeLong(").append(get).append(", false);\n");
+                    value = "input.readLong(false)";
+                    break;
+                case BOOLEAN:
+                case BYTE:
+                case SHORT:
+                case CHAR:
+                case FLOAT:
+                case DOUBLE:
+                    String suffix = primitiveSuffix(fieldType.getKind());
+                    write.append("        output.write").append(suffix).append("(").append(get).append(");\n");
+                    value = "input.read" + suffix + "()";
+                    break;
+                case DECLARED:
+                case ARRAY:
+                    String fieldClass = types.erasure(fieldType).toString() + ".class";
+                    String generics = kryoGenerics(fieldType);
+                    if (generics != null) {
+                        //泛型参数数组作为常量，每次读写不再创建
+                        constants.append("    private static final Class<?>[] GENERICS_").append(field.name)
+                                .append(" = ").append(generics).append(";\n\n");
+                        generics = "GENERICS_" + field.name;
+                    } else {
+                        generics = "null";
+                    }
+                    write.append("        writeObjectField(kryo, output, ").append(get).append(", ")
+                            .append(fieldClass).append(", ").append(generics).append(");\n");
+                    value = "(" + fieldType + ") readObjectField(kryo, input, " + fieldClass + ", " + generics + ")";
+                    break;
+                default:
+                    throw new UnsupportedTypeException("field type " + fieldType);
+            }
+            read.append("        ").append(assign("object", field, value)).append(";\n");
+        }
+        StringBuilder source = header(packageName);
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(className).append(" extends ").append(KRYO_BASE)
+                .append("<").append(type).append("> {\n\n")
+                .append(constants)
+                .append("    public ").append(className).append("() {\n")
+                .append("        super(").append(type).append(".class);\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void write(com.esotericsoftware.kryo.Kryo kryo, com.esotericsoftware.kryo.io.Output output, ")
+                .append(type).append(" object) {\n")
+                .append(write)
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(type).append(" read(com.esotericsoftware.kryo.Kryo kryo, ")
+                .append("com.esotericsoftware.kryo.io.Input input, Class<").append(type).append("> type) {\n")
+                .append("        ").append(type).append(" object = new ").append(type).append("();\n")
+                .append("        kryo.reference(object);\n")
+                .append(read)
+                .append("        return object;\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * 与FieldSerializer相同，泛型参数为具体类型时传给字段的序列化器（例如List<String>的元素不再写类）
+     * 没有泛型参数时返回null
+     */
+    private String kryoGenerics(TypeMirror fieldType) {
+        if (fieldType.getKind() != TypeKind.DECLARED || ((DeclaredType) fieldType).getTypeArguments().isEmpty()) {
+            return null;
+        }
+        StringBuilder generics = new StringBuilder("new Class<?>[]{");
+        List<? extends TypeMirror> arguments = ((DeclaredType) fieldType).getTypeArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            TypeMirror argument = arguments.get(i);
+            if (argument.getKind() != TypeKind.DECLARED && argument.getKind() != TypeKind.ARRAY) {
+                throw new UnsupportedTypeException("type argument " + argument);
+            }
+            generics.append(i == 0 ? "" : ", ").append(types.erasure(argument)).append(".class");
+        }
+        return generics.append("}").toString();
+    }
+
+    private static String primitiveSuffix(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+                return "Boolean";
+            case BYTE:
+                return "Byte";
+            case SHORT:
+                return "Short";
+            case CHAR:
+                return "Char";
+            case FLOAT:
+                return "Float";
+            default:
+                return "Double";
+        }
+    }
+
+    // ---------------- Protostuff ----------------
+
+    /**
+     * 字段编号与RuntimeSchema相同：按声明顺序从1开始；只支持编码方式确定的字段类型，其他类型不生成
+     */
+    private String schemaSource(String packageName, String className, TypeElement dto, List<FieldInfo> fields) {
+        String type = dto.getQualifiedName().toString();
+        StringBuilder write = new StringBuilder();
+        StringBuilder merge = new StringBuilder();
+        StringBuilder names = new StringBuilder();
+        StringBuilder numbers = new StringBuilder();
+        List<String> nestedSchemas = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo field = fields.get(i);
+            int number = i + 1;
+            TypeMirror fieldType = field.element.asType();
+            String get = "message." + field.getter;
+            names.append("            case ").append(number).append(":\n                return \"")
+                    .append(field.name).append("\";\n");
+            numbers.append("            case \"").append(field.name).append("\":\n                return ")
+                    .append(number).append(";\n");
+            merge.append("                case ").append(number).append(":\n");
+            String scalar = protostuffScalar(fieldType);
+            if (scalar != null) {
+                if (fieldType.getKind().isPrimitive()) {
+                    write.append("        output.write").append(scalar).append("(").append(number).append(", ")
+                            .append(get).append(", false);\n");
+                } else {
+                    write.append("        {\n")
+                            .append("            ").append(fieldType).append(" value = ").append(get).append(";\n")
+                            .append("            if (value != null) {\n")
+                            .append("                output.write").append(scalar).append("(").append(number)
+                            .append(", value, false);\n")
+                            .append("            }\n")
+                            .append("        }\n");
+                }
+                merge.append("                    ").append(assign("message", field, "input.read" + scalar + "()")).append(";\n");
+            } else if (isPojo(fieldType)) {
+                String schema = nestedSchema(nestedSchemas, fieldType);
+                write.append("        {\n")
+                        .append("            ").append(fieldType).append(" value = ").append(get).append(";\n")
+                        .append("            if (value != null) {\n")
+                        .append("                output.writeObject(").append(number).append(", value, ")
+                        .append(schema).append("(), false);\n")
+                        .append("            }\n")
+                        .append("        }\n");
+                merge.append("                    ").append(assign("message", field, "input.mergeObject(" + get + ", "
+                        + schema + "())")).append(";\n");
+            } else if (isList(fieldType)) {
+                TypeMirror element = ((DeclaredType) fieldType).getTypeArguments().get(0);
+                String elementScalar = protostuffScalar(element);
+                String elementSchema = elementScalar == null ? nestedSchema(nestedSchemas, element) : null;
+                write.append("        {\n")
+                        .append("            ").append(fieldType).append(" value = ").append(get).append(";\n")
+                        .append("            if (value != null) {\n")
+                        .append("                for (").append(element).append(" element : value) {\n")
+                        .append("                    if (element != null) {\n");
+                if (elementScalar != null) {
+                    write.append("                        output.write").append(elementScalar).append("(")
+                            .append(number).append(", element, true);\n");
+                } else {
+                    write.append("                        output.writeObject(").append(number).append(", element, ")
+                            .append(elementSchema).append("(), true);\n");
+                }
+                write.append("                    }\n")
+                        .append("                }\n")
+                        .append("            }\n")
+                        .append("        }\n");
+                merge.append("                    {\n")
+                        .append("                        ").append(fieldType).append(" list = ").append(get).append(";\n")
+                        .append("                        if (list == null) {\n")
+                        .append("                            list = new java.util.ArrayList<>();\n")
+                        .append("                            ").append(assign("message", field, "list")).append(";\n")
+                        .append("                        }\n")
+                        .append("                        list.add(").append(elementScalar != null
+                                ? "input.read" + elementScalar + "()"
+                                : "input.mergeObject(null, " + elementSchema + "())").append(");\n")
+                        .append("                    }\n");
+            } else if (isStringMap(fieldType)) {
+                String schema = "com.dyuproject.protostuff.StringMapSchema.VALUE_STRING";
+                write.append("        {\n")
+                        .append("            ").append(fieldType).append(" value = ").append(get).append(";\n")
+                        .append("            if (value != null) {\n")
+                        .append("                output.writeObject(").append(number).append(", value, ")
+                        .append(schema).append(", false);\n")
+                        .append("            }\n")
+                        .append("        }\n");
+                merge.append("                    ").append(assign("message", field, "(" + fieldType + ") input.mergeObject("
+                        + get + ", " + schema + ")")).append(";\n");
+            } else {
+                throw new UnsupportedTypeException("field type " + fieldType + " of " + field.name);
+            }
+            merge.append("                    break;\n");
+        }
+        StringBuilder source = header(packageName);
+        source.append("public final class ").append(className).append(" extends ").append(SCHEMA_BASE)
+                .append("<").append(type).append("> {\n\n");
+        for (int i = 0; i < nestedSchemas.size(); i++) {
+            source.append("    private com.dyuproject.protostuff.Schema<").append(nestedSchemas.get(i))
+                    .append("> schema").append(i).append(";\n\n");
+        }
+        source.append("    public ").append(className).append("() {\n")
+                .append("        super(").append(type).append(".class);\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(type).append(" newMessage() {\n")
+                .append("        return new ").append(type).append("();\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public String getFieldName(int number) {\n")
+                .append("        switch (number) {\n")
+                .append(names)
+                .append("            default:\n")
+                .append("                return null;\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public int getFieldNumber(String name) {\n")
+                .append("        switch (name) {\n")
+                .append(numbers)
+                .append("            default:\n")
+                .append("                return 0;\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void writeTo(com.dyuproject.protostuff.Output output, ").append(type)
+                .append(" message) throws java.io.IOException {\n")
+                .append(write)
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void mergeFrom(com.dyuproject.protostuff.Input input, ").append(type)
+                .append(" message) throws java.io.IOException {\n")
+                .append("        for (int number = input.readFieldNumber(this); number != 0; number = input.readFieldNumber(this)) {\n")
+                .append("            switch (number) {\n")
+                .append(merge)
+                .append("                default:\n")
+                .append("                    input.handleUnknownField(number, this);\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("    }\n");
+        //嵌套类型的Schema在第一次使用时获取，此时生成的Schema都已经注册
+        for (int i = 0; i < nestedSchemas.size(); i++) {
+            String nested = nestedSchemas.get(i);
+            source.append("\n    private com.dyuproject.protostuff.Schema<").append(nested).append("> schema")
+                    .append(i).append("() {\n")
+                    .append("        com.dyuproject.protostuff.Schema<").append(nested).append("> schema = schema")
+                    .append(i).append(";\n")
+                    .append("        if (schema == null) {\n")
+                    .append("            schema = schemaOf(").append(nested).append(".class);\n")
+                    .append("            schema").append(i).append(" = schema;\n")
+                    .append("        }\n")
+                    .append("        return schema;\n")
+                    .append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private String nestedSchema(List<String> nestedSchemas, TypeMirror type) {
+        if (!isPojo(type)) {
+            throw new UnsupportedTypeException("element type " + type);
+        }
+        String name = types.erasure(type).toString();
+        int index = nestedSchemas.indexOf(name);
+        if (index < 0) {
+            index = nestedSchemas.size();
+            nestedSchemas.add(name);
+        }
+        return "schema" + index;
+    }
+
+    /**
+     * 标量字段对应的Output/Input方法后缀，不是标量时返回null
+     */
+    private static String protostuffScalar(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+                return "Int32";
+            case LONG:
+                return "Int64";
+            case FLOAT:
+                return "Float";
+            case DOUBLE:
+                return "Double";
+            case BOOLEAN:
+                return "Bool";
+            case DECLARED:
+                switch (type.toString()) {
+                    case "java.lang.Integer":
+                        return "Int32";
+                    case "java.lang.Long":
+                        return "Int64";
+                    case "java.lang.Float":
+                        return "Float";
+                    case "java.lang.Double":
+                        return "Double";
+                    case "java.lang.Boolean":
+                        return "Bool";
+                    case "java.lang.String":
+                        return "String";
+                    default:
+                        return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 作为嵌套消息写入的普通类：非JDK、非抽象、非枚举、没有泛型参数
+     */
+    private boolean isPojo(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED || !((DeclaredType) type).getTypeArguments().isEmpty()) {
+            return false;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        return element.getKind() == ElementKind.CLASS && !isJdk(element)
+                && !element.getModifiers().contains(Modifier.ABSTRACT);
+    }
+
+    private boolean isList(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        String raw = types.erasure(type).toString();
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        return (raw.equals("java.util.List") || raw.equals("java.util.ArrayList")) && arguments.size() == 1
+                && (protostuffScalar(arguments.get(0)) != null || isPojo(arguments.get(0)));
+    }
+
+    private boolean isStringMap(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        String raw = types.erasure(type).toString();
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        return (raw.equals("java.util.Map") || raw.equals("java.util.HashMap")) && arguments.size() == 2
+                && arguments.get(0).toString().equals("java.lang.String")
+                && arguments.get(1).toString().equals("java.lang.String");
+    }
+
+    // ---------------- 公共 ----------------
+
+    /**
+     * 给字段赋值的语句，receiver为对象的变量名
+     */
+    private static String assign(String receiver, FieldInfo field, String value) {
+        return field.setter == null ? receiver + "." + field.name + " = " + value
+                : receiver + "." + field.setter + "(" + value + ")";
+    }
+
+    private StringBuilder header(String packageName) {
+        StringBuilder source = new StringBuilder();
+        source.append("// 由RpcSerializerProcessor生成，不要手动修改\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        return source;
+    }
+
+    private void write(String packageName, String className, TypeElement origin, String source) {
+        try (Writer writer = filer.createSourceFile(qualify(packageName, className), origin).openWriter()) {
+            writer.write(source);
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Write " + className + " error: " + e, origin);
+        }
+    }
+
+    private void writeServices(String service, List<String> implementations) {
+        if (implementations.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + service);
+            try (Writer writer = file.openWriter()) {
+                for (String implementation : implementations) {
+                    writer.write(implementation);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Write services of " + service + " error: " + e);
+        }
+    }
+
+    /**
+     * 从最上层的父类到该类本身，父类有泛型参数或是JDK的类（Object除外）时不支持
+     */
+    private List<TypeElement> hierarchy(TypeElement type) {
+        List<TypeElement> classes = new ArrayList<>();
+        TypeElement current = type;
+        while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+            classes.add(0, current);
+            TypeMirror superclass = current.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                break;
+            }
+            current = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (isJdk(current) && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+                throw new UnsupportedTypeException("JDK superclass " + current.getQualifiedName());
+            }
+            if (!((DeclaredType) superclass).getTypeArguments().isEmpty()) {
+                throw new UnsupportedTypeException("generic superclass " + superclass);
+            }
+        }
+        return classes;
+    }
+
+    private static TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private String packageOf(TypeElement type) {
+        return elements.getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * 嵌套类的类名用下划线连接，例如 Payloads.OrderDto -> Payloads_OrderDto
+     */
+    private static String flatName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+            name.insert(0, e.getSimpleName() + "_");
+        }
+        return name.toString();
+    }
+
+    private static String qualify(String packageName, String className) {
+        return packageName.isEmpty() ? className : packageName + "." + className;
+    }
+
+    private boolean isJdk(TypeElement type) {
+        String name = packageOf(type);
+        return name.startsWith("java.") || name.startsWith("javax.") || name.equals("java");
+    }
+
+    private static class FieldInfo {
+        private final VariableElement element;
+        private final String name;
+        // 读取字段的表达式（相对于对象），例如 getName() 或 name
+        private final String getter;
+        // setter方法名，为null表示直接给字段赋值
+        private final String setter;
+
+        FieldInfo(VariableElement element, String name, String getter, String setter) {
+            this.element = element;
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    private static class UnsupportedTypeException extends RuntimeException {
+        UnsupportedTypeException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.xyj.serializer;
+
+import com.dyuproject.protostuff.runtime.RuntimeSchema;
+import com.esotericsoftware.kryo.Kryo;
+import com.xyj.serializer.kryo.GeneratedKryoSerializer;
+import com.xyj.serializer.protostuff.GeneratedSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * 加载编译期生成的序列化器（META-INF/services中登记），Kryo和Protostuff据此替换基于反射的实现
+ * 没有生成任何类时两者都按原来的方式工作
+ */
+public final class GeneratedSerializers {
+    private static final Logger logger = LoggerFactory.getLogger(GeneratedSerializers.class);
+
+    private static final List<GeneratedKryoSerializer<?>> KRYO_SERIALIZERS = load(GeneratedKryoSerializer.class);
+
+    private static final List<GeneratedSchema<?>> SCHEMAS = load(GeneratedSchema.class);
+
+    private static volatile boolean schemasRegistered;
+
+    private GeneratedSerializers() {
+    }
+
+    /**
+     * 作为对应类型的默认序列化器，需要在注册这些类之前调用
+     */
+    public static void registerKryo(Kryo kryo) {
+        if (KRYO_SERIALIZERS.isEmpty() || !GeneratedKryoSerializer.supports(kryo)) {
+            return;
+        }
+        for (GeneratedKryoSerializer<?> serializer : KRYO_SERIALIZERS) {
+            kryo.addDefaultSerializer(serializer.getType(), serializer);
+        }
+    }
+
+    /**
+     * 注册到RuntimeSchema，需要在创建引用这些类型的Schema之前调用，重复调用无效
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized void registerSchemas() {
+        if (schemasRegistered) {
+            return;
+        }
+        schemasRegistered = true;
+        for (GeneratedSchema<?> schema : SCHEMAS) {
+            GeneratedSchema<Object> generated = (GeneratedSchema<Object>) schema;
+            if (!RuntimeSchema.register((Class<Object>) generated.typeClass(), generated)) {
+                logger.warn("Schema of {} is created before the generated one is registered", generated.messageFullName());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> List<S> load(Class<?> service) {
+        List<S> result = new ArrayList<>();
+        try {
+            for (Object generated : ServiceLoader.load(service)) {
+                result.add((S) generated);
+            }
+        } catch (Throwable t) {
+            logger.warn("Load generated serializers error, fall back to reflection: {}", t.toString());
+            return Collections.emptyList();
+        }
+        if (!result.isEmpty()) {
+            logger.info("Loaded {} generated {}", result.size(), service.getSimpleName());
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
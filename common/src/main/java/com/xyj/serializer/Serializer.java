@@ -1,7 +1,38 @@
 package com.xyj.serializer;
 
+import io.netty.buffer.ByteBuf;
+
 public abstract class Serializer {
+    // serializer id, written into the frame header
+    public static final byte KRYO = 1;
+    public static final byte PROTOSTUFF = 2;
+    public static final byte HESSIAN = 3;
+    public static final byte HESSIAN1 = 4;
+
+    public abstract byte getId();
+
+    // 握手和配置中使用的名称
+    public abstract String getName();
+
     public abstract <T> byte[] serialize(T obj);
 
     public abstract <T> Object deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 直接写入out的可写区域，不经过中间的字节数组
+     * 默认实现退化为字节数组，子类应当覆盖
+     */
+    public <T> void serialize(T obj, ByteBuf out) {
+        out.writeBytes(serialize(obj));
+    }
+
+    /**
+     * 直接从in的可读区域反序列化，调用方需要保证in只包含一个完整的消息体
+     * 默认实现退化为字节数组，子类应当覆盖
+     */
+    public <T> Object deserialize(ByteBuf in, Class<T> clazz) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return deserialize(bytes, clazz);
+    }
 }
@@ -0,0 +1,69 @@
+package com.xyj.serializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已注册的序列化方式，通过ServiceLoader加载
+ * 解码时按帧头中的id查找，每帧都会调用，按id直接下标访问
+ */
+public class SerializerRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(SerializerRegistry.class);
+
+    private static final Serializer[] SERIALIZERS_BY_ID = new Serializer[256];
+
+    private static final Map<String, Serializer> SERIALIZERS_BY_NAME = new ConcurrentHashMap<>();
+
+    static {
+        for (Serializer serializer : ServiceLoader.load(Serializer.class, SerializerRegistry.class.getClassLoader())) {
+            register(serializer);
+        }
+    }
+
+    private SerializerRegistry() {
+    }
+
+    public static synchronized void register(Serializer serializer) {
+        int index = serializer.getId() & 0xFF;
+        Serializer old = SERIALIZERS_BY_ID[index];
+        if (old != null && old.getClass() != serializer.getClass()) {
+            logger.error("Serializer id {} is already used by {}, ignore {}", serializer.getId(),
+                    old.getClass().getName(), serializer.getClass().getName());
+            return;
+        }
+        if (old == null) {
+            SERIALIZERS_BY_ID[index] = serializer;
+        }
+        SERIALIZERS_BY_NAME.putIfAbsent(serializer.getName(), SERIALIZERS_BY_ID[index]);
+        logger.info("Register serializer: {}, id: {}", serializer.getName(), serializer.getId());
+    }
+
+    public static Serializer get(byte id) {
+        return SERIALIZERS_BY_ID[id & 0xFF];
+    }
+
+    public static Serializer get(String name) {
+        return name == null ? null : SERIALIZERS_BY_NAME.get(name);
+    }
+
+    /**
+     * 按名称查找，不存在时抛出异常，用于读取配置
+     */
+    public static Serializer require(String name) {
+        Serializer serializer = get(name);
+        if (serializer == null) {
+            throw new IllegalArgumentException("Unknown serializer: " + name + ", available: " + names());
+        }
+        return serializer;
+    }
+
+    public static List<String> names() {
+        return new ArrayList<>(SERIALIZERS_BY_NAME.keySet());
+    }
+}
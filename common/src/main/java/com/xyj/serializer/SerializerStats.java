@@ -0,0 +1,55 @@
+package com.xyj.serializer;
+
+import com.xyj.metrics.RpcMetrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 各序列化方式的指标，用于比较不同序列化方式的开销
+ * serializer.{name}.serializedBytes/serializeNanos/deserializeNanos 为累计值
+ */
+public class SerializerStats {
+
+    private static final SerializerStats[] STATS = new SerializerStats[256];
+
+    private final LongAdder serializeCount;
+    private final LongAdder serializedBytes;
+    private final LongAdder serializeNanos;
+    private final LongAdder deserializeCount;
+    private final LongAdder deserializeNanos;
+
+    private SerializerStats(String name) {
+        String prefix = "serializer." + name + ".";
+        serializeCount = RpcMetrics.counter(prefix + "serializeCount");
+        serializedBytes = RpcMetrics.counter(prefix + "serializedBytes");
+        serializeNanos = RpcMetrics.counter(prefix + "serializeNanos");
+        deserializeCount = RpcMetrics.counter(prefix + "deserializeCount");
+        deserializeNanos = RpcMetrics.counter(prefix + "deserializeNanos");
+    }
+
+    public static SerializerStats of(Serializer serializer) {
+        int index = serializer.getId() & 0xFF;
+        SerializerStats stats = STATS[index];
+        if (stats == null) {
+            synchronized (STATS) {
+                stats = STATS[index];
+                if (stats == null) {
+                    stats = new SerializerStats(serializer.getName());
+                    STATS[index] = stats;
+                }
+            }
+        }
+        return stats;
+    }
+
+    public void recordSerialize(int bytes, long nanos) {
+        serializeCount.increment();
+        serializedBytes.add(bytes);
+        serializeNanos.add(nanos);
+    }
+
+    public void recordDeserialize(long nanos) {
+        deserializeCount.increment();
+        deserializeNanos.add(nanos);
+    }
+}
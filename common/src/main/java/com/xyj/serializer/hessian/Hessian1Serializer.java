@@ -3,6 +3,9 @@ package com.xyj.serializer.hessian;
 import com.caucho.hessian.io.HessianInput;
 import com.caucho.hessian.io.HessianOutput;
 import com.xyj.serializer.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -10,6 +13,16 @@ import java.io.IOException;
 
 public class Hessian1Serializer extends Serializer {
 
+    @Override
+    public byte getId() {
+        return HESSIAN1;
+    }
+
+    @Override
+    public String getName() {
+        return "hessian1";
+    }
+
     @Override
     public <T> byte[] serialize(T obj) {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
@@ -58,4 +71,37 @@ public class Hessian1Serializer extends Serializer {
         }
     }
 
+    @Override
+    public <T> void serialize(T obj, ByteBuf out) {
+        HessianOutput ho = new HessianOutput(new ByteBufOutputStream(out));
+        try {
+            ho.writeObject(obj);
+            ho.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                ho.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public <T> Object deserialize(ByteBuf in, Class<T> clazz) {
+        HessianInput hi = new HessianInput(new ByteBufInputStream(in));
+        try {
+            return hi.readObject();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                hi.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
 }
@@ -3,6 +3,9 @@ package com.xyj.serializer.hessian;
 import com.caucho.hessian.io.Hessian2Input;
 import com.caucho.hessian.io.Hessian2Output;
 import com.xyj.serializer.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -10,6 +13,16 @@ import java.io.IOException;
 
 public class HessianSerializer extends Serializer {
 
+    @Override
+    public byte getId() {
+        return HESSIAN;
+    }
+
+    @Override
+    public String getName() {
+        return "hessian";
+    }
+
     @Override
     public <T> byte[] serialize(T obj) {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
@@ -59,4 +72,37 @@ public class HessianSerializer extends Serializer {
         }
     }
 
+    @Override
+    public <T> void serialize(T obj, ByteBuf out) {
+        Hessian2Output ho = new Hessian2Output(new ByteBufOutputStream(out));
+        try {
+            ho.writeObject(obj);
+            ho.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                ho.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public <T> Object deserialize(ByteBuf in, Class<T> clazz) {
+        Hessian2Input hi = new Hessian2Input(new ByteBufInputStream(in));
+        try {
+            return hi.readObject();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                hi.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
 }
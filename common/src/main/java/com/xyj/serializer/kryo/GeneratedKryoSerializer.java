@@ -0,0 +1,92 @@
+package com.xyj.serializer.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializerConfig;
+
+/**
+ * 由 {@link com.xyj.processor.RpcSerializerProcessor} 在编译期为服务DTO生成的Kryo序列化器的基类
+ * 生成的子类通过getter/setter或字段直接读写，不使用反射；字段按名称排序，
+ * 每个字段的格式与Kryo的FieldSerializer相同，只有一端使用生成的序列化器时双方仍然兼容
+ * 无状态，同一个实例可以被多个Kryo共用；只适用于FieldSerializer的默认配置，见 {@link #supports(Kryo)}
+ */
+public abstract class GeneratedKryoSerializer<T> extends Serializer<T> {
+
+    private final Class<T> type;
+
+    protected GeneratedKryoSerializer(Class<T> type) {
+        this.type = type;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * 生成的代码按FieldSerializer的默认配置编码（字段可以为null、不固定字段类型、不序列化transient字段），
+     * 修改了这些配置的Kryo不使用生成的序列化器；泛型参数是否生效在运行时按optimizedGenerics判断
+     */
+    public static boolean supports(Kryo kryo) {
+        FieldSerializerConfig config = kryo.getFieldSerializerConfig();
+        return config.isFieldsCanBeNull() && !config.isFixedFieldTypes() && !config.isSerializeTransient()
+                && config.isIgnoreSyntheticFields();
+    }
+
+    /**
+     * 写入一个引用类型的字段，与FieldSerializer的ObjectField相同：
+     * 字段类型是final时只写是否为null和值，否则先写实际的类
+     */
+    @SuppressWarnings("unchecked")
+    protected static void writeObjectField(Kryo kryo, Output output, Object value, Class<?> fieldClass,
+                                           Class<?>[] generics) {
+        if (generics != null && !kryo.getFieldSerializerConfig().isOptimizedGenerics()) {
+            generics = null;
+        }
+        Serializer serializer;
+        if (kryo.isFinal(fieldClass)) {
+            serializer = kryo.getSerializer(fieldClass);
+            if (generics != null) {
+                serializer.setGenerics(kryo, generics);
+            }
+            kryo.writeObjectOrNull(output, value, serializer);
+            return;
+        }
+        if (value == null) {
+            kryo.writeClass(output, null);
+            return;
+        }
+        Registration registration = kryo.writeClass(output, value.getClass());
+        serializer = registration.getSerializer();
+        if (generics != null) {
+            serializer.setGenerics(kryo, generics);
+        }
+        kryo.writeObject(output, value, serializer);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static Object readObjectField(Kryo kryo, Input input, Class<?> fieldClass, Class<?>[] generics) {
+        if (generics != null && !kryo.getFieldSerializerConfig().isOptimizedGenerics()) {
+            generics = null;
+        }
+        Serializer serializer;
+        if (kryo.isFinal(fieldClass)) {
+            serializer = kryo.getSerializer(fieldClass);
+            if (generics != null) {
+                serializer.setGenerics(kryo, generics);
+            }
+            return kryo.readObjectOrNull(input, fieldClass, serializer);
+        }
+        Registration registration = kryo.readClass(input);
+        if (registration == null) {
+            return null;
+        }
+        serializer = registration.getSerializer();
+        if (generics != null) {
+            serializer.setGenerics(kryo, generics);
+        }
+        return kryo.readObject(input, registration.getType(), serializer);
+    }
+}
@@ -0,0 +1,46 @@
+package com.xyj.serializer.kryo;
+
+import com.esotericsoftware.kryo.io.Output;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 直接写入堆内ByteBuf底层数组的Output，空间不够时扩容ByteBuf本身，不经过中间缓冲区
+ */
+final class HeapByteBufOutput extends Output {
+    private ByteBuf target;
+    private int arrayOffset;
+
+    void wrap(ByteBuf target) {
+        this.target = target;
+        total = 0;
+        map();
+    }
+
+    /**
+     * 把写入的字节计入ByteBuf的writerIndex，并放开对ByteBuf的引用
+     */
+    void finish() {
+        target.writerIndex(position - arrayOffset);
+        target = null;
+        buffer = null;
+    }
+
+    private void map() {
+        arrayOffset = target.arrayOffset();
+        buffer = target.array();
+        position = arrayOffset + target.writerIndex();
+        capacity = arrayOffset + target.capacity();
+    }
+
+    @Override
+    protected boolean require(int required) {
+        if (capacity - position >= required) {
+            return false;
+        }
+        //扩容可能换了底层数组，先记下已写入的位置
+        target.writerIndex(position - arrayOffset);
+        target.ensureWritable(required);
+        map();
+        return true;
+    }
+}
@@ -5,6 +5,7 @@ import com.esotericsoftware.kryo.pool.KryoFactory;
 import com.esotericsoftware.kryo.pool.KryoPool;
 import com.xyj.message.RpcRequest;
 import com.xyj.message.RpcResponse;
+import com.xyj.serializer.GeneratedSerializers;
 import org.objenesis.strategy.StdInstantiatorStrategy;
 
 public class KryoPoolFactory {
@@ -13,16 +14,25 @@ public class KryoPoolFactory {
     private KryoFactory factory = new KryoFactory() {
         @Override
         public Kryo create() {
-            Kryo kryo = new Kryo();
-            kryo.setReferences(false);
-            kryo.register(RpcRequest.class);
-            kryo.register(RpcResponse.class);
-            Kryo.DefaultInstantiatorStrategy strategy = (Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy();
-            strategy.setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
-            return kryo;
+            return newKryo();
         }
     };
 
+    /**
+     * 按统一的配置创建Kryo实例，池化的实例和线程独享的实例使用同一配置
+     */
+    public static Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setReferences(false);
+        //编译期生成的序列化器作为对应类型的默认序列化器，之后注册的类会使用它们
+        GeneratedSerializers.registerKryo(kryo);
+        kryo.register(RpcRequest.class);
+        kryo.register(RpcResponse.class);
+        Kryo.DefaultInstantiatorStrategy strategy = (Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy();
+        strategy.setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
+        return kryo;
+    }
+
     private KryoPool pool = new KryoPool.Builder(factory).build();
 
     private KryoPoolFactory() {
@@ -0,0 +1,116 @@
+package com.xyj.serializer.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcBatchResponse;
+import com.xyj.message.StreamFrame;
+import com.xyj.util.ServiceTypeScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Kryo的类注册表：服务端根据暴露的服务接口生成，握手时下发给客户端，双方按相同的顺序注册
+ * 注册过的类在消息体中只写一个变长的id，不再写完整的类名，解码时也不需要按类名加载类
+ * 表中第i个类的id为 FIRST_ID + i，本地加载不到的类保留其id，不影响其他类
+ */
+public final class KryoRegistration {
+    private static final Logger logger = LoggerFactory.getLogger(KryoRegistration.class);
+
+    // 避开Kryo默认注册的基本类型以及KryoPoolFactory中注册的类
+    public static final int FIRST_ID = 64;
+
+    // 参数、返回值和集合字段中常见的JDK类型，放在表的最前面
+    private static final Class<?>[] COMMON_TYPES = {Object[].class, Object[][].class, Class.class, Class[].class,
+            String[].class, byte[].class, int[].class, long[].class, ArrayList.class, LinkedList.class,
+            HashMap.class, LinkedHashMap.class, TreeMap.class, HashSet.class, LinkedHashSet.class, TreeSet.class,
+            Date.class, BigDecimal.class, BigInteger.class,
+            RpcBatchRequest.class, RpcBatchResponse.class, StreamFrame.class};
+
+    // 相同的注册表共用一个序列化实例，客户端连接同一服务的多个节点时不会重复创建Kryo
+    private static final Map<List<String>, KryoSerializer> SERIALIZERS = new ConcurrentHashMap<>();
+
+    private KryoRegistration() {
+    }
+
+    /**
+     * 由服务接口生成注册表，同一组接口每次生成的结果相同
+     */
+    public static List<String> classNames(Collection<Class<?>> interfaces) {
+        List<String> names = new ArrayList<>();
+        for (Class<?> type : COMMON_TYPES) {
+            names.add(type.getName());
+        }
+        List<String> scanned = new ArrayList<>();
+        for (Class<?> type : ServiceTypeScanner.scan(interfaces)) {
+            if (isConcrete(type) && !names.contains(type.getName())) {
+                scanned.add(type.getName());
+            }
+        }
+        //按类名排序，与接口和方法的声明顺序无关
+        Collections.sort(scanned);
+        names.addAll(scanned);
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * 返回按该注册表注册的序列化实例
+     */
+    public static KryoSerializer serializer(List<String> classNames) {
+        return SERIALIZERS.computeIfAbsent(new ArrayList<>(classNames), KryoRegistration::newSerializer);
+    }
+
+    private static KryoSerializer newSerializer(List<String> classNames) {
+        List<Class<?>> classes = new ArrayList<>(classNames.size());
+        int missing = 0;
+        for (String name : classNames) {
+            Class<?> type = null;
+            try {
+                type = loadClass(name);
+            } catch (ClassNotFoundException e) {
+                missing++;
+                logger.debug("Registered class {} is not found locally", name);
+            }
+            classes.add(type);
+        }
+        logger.info("Kryo registration table created, {} classes, {} not found locally", classNames.size(), missing);
+        return new KryoSerializer(Collections.unmodifiableList(classes));
+    }
+
+    static void register(Kryo kryo, List<Class<?>> classes) {
+        for (int i = 0; i < classes.size(); i++) {
+            if (classes.get(i) != null) {
+                kryo.register(classes.get(i), FIRST_ID + i);
+            }
+        }
+    }
+
+    private static Class<?> loadClass(String name) throws ClassNotFoundException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = KryoRegistration.class.getClassLoader();
+        }
+        return Class.forName(name, false, loader);
+    }
+
+    private static boolean isConcrete(Class<?> type) {
+        return type.isEnum() || !(type.isInterface() || Modifier.isAbstract(type.getModifiers()));
+    }
+}
@@ -3,55 +3,201 @@ package com.xyj.serializer.kryo;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.pool.KryoPool;
 import com.xyj.serializer.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * 每个线程独享一个Kryo实例和可复用的Output/Input，编解码的热路径上不产生中间对象
+ * 编码时堆内ByteBuf直接写入其底层数组，空间不够时扩容ByteBuf本身；堆外的先写入线程独享的Output缓冲区，再一次拷贝到ByteBuf：
+ * Kryo 4的ByteBufferOutput每写一个ASCII字符串都会String.getBytes()分配数组，整数逐字节put，
+ * 实测直接写堆外内存比写数组再拷贝一次更慢且每条消息有分配（见KryoAllocationBenchmark），一次memcpy的开销可以忽略
+ * 解码时堆内ByteBuf直接读取其底层数组，堆外的先拷贝到线程独享的数组
+ * event loop线程（FastThreadLocalThread）上通过FastThreadLocal按下标访问，业务线程退化为普通的ThreadLocal
+ * 带类注册表的实例由 {@link KryoRegistration} 创建，与默认实例使用各自的Kryo
+ */
 public class KryoSerializer extends Serializer {
-    private KryoPool pool = KryoPoolFactory.getKryoPoolInstance();
+    private static final int BUFFER_SIZE = 4096;
+
+    // 超过该大小的缓冲区在使用后丢弃，避免一次大消息让每个线程长期占用大数组
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // 在默认注册之外额外注册的类，下标对应 KryoRegistration.FIRST_ID 起的id，null表示本地没有该类
+    private final List<Class<?>> registrations;
+
+    private final FastThreadLocal<KryoContext> contexts = new FastThreadLocal<KryoContext>() {
+        @Override
+        protected KryoContext initialValue() {
+            return newContext();
+        }
+    };
+
+    public KryoSerializer() {
+        this(Collections.<Class<?>>emptyList());
+    }
+
+    KryoSerializer(List<Class<?>> registrations) {
+        this.registrations = registrations;
+    }
+
+    @Override
+    public byte getId() {
+        return KRYO;
+    }
+
+    @Override
+    public String getName() {
+        return "kryo";
+    }
 
     @Override
     public <T> byte[] serialize(T obj) {
-        Kryo kryo = pool.borrow();
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        Output out = new Output(byteArrayOutputStream);
+        KryoContext context = acquire();
         try {
-            kryo.writeObject(out, obj);
-            out.close();
-            return byteArrayOutputStream.toByteArray();
+            Output output = context.output;
+            output.clear();
+            context.kryo.writeObject(output, obj);
+            return Arrays.copyOf(output.getBuffer(), output.position());
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         } finally {
-            try {
-                byteArrayOutputStream.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            pool.release(kryo);
+            release(context);
         }
     }
 
     @Override
     public <T> Object deserialize(byte[] bytes, Class<T> clazz) {
-        Kryo kryo = pool.borrow();
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-        Input in = new Input(byteArrayInputStream);
+        KryoContext context = acquire();
+        try {
+            context.input.setBuffer(bytes);
+            return context.kryo.readObject(context.input, clazz);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            release(context);
+        }
+    }
+
+    @Override
+    public <T> void serialize(T obj, ByteBuf out) {
+        if (out.hasArray()) {
+            serializeHeap(obj, out);
+        } else {
+            serializeCopy(obj, out);
+        }
+    }
+
+    private <T> void serializeHeap(T obj, ByteBuf out) {
+        KryoContext context = acquire();
+        int start = out.writerIndex();
+        HeapByteBufOutput output = context.heapOutput;
+        output.wrap(out);
+        try {
+            context.kryo.writeObject(output, obj);
+            output.finish();
+        } catch (Exception ex) {
+            output.finish();
+            out.writerIndex(start);
+            throw new RuntimeException(ex);
+        } finally {
+            release(context);
+        }
+    }
+
+    private <T> void serializeCopy(T obj, ByteBuf out) {
+        KryoContext context = acquire();
         try {
-            Object result = kryo.readObject(in, clazz);
-            in.close();
+            Output output = context.output;
+            output.clear();
+            context.kryo.writeObject(output, obj);
+            out.writeBytes(output.getBuffer(), 0, output.position());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            release(context);
+        }
+    }
+
+    @Override
+    public <T> Object deserialize(ByteBuf in, Class<T> clazz) {
+        KryoContext context = acquire();
+        try {
+            int length = in.readableBytes();
+            int offset;
+            byte[] bytes;
+            if (in.hasArray()) {
+                bytes = in.array();
+                offset = in.arrayOffset() + in.readerIndex();
+            } else {
+                bytes = context.scratch(length);
+                offset = 0;
+                in.getBytes(in.readerIndex(), bytes, 0, length);
+            }
+            Input input = context.input;
+            input.setBuffer(bytes, offset, length);
+            Object result = context.kryo.readObject(input, clazz);
+            in.skipBytes(input.position() - offset);
             return result;
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         } finally {
-            try {
-                byteArrayInputStream.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            release(context);
+        }
+    }
+
+    /**
+     * 同一线程上嵌套调用（例如自定义的Kryo Serializer中再次序列化）时使用临时的实例
+     */
+    private KryoContext acquire() {
+        KryoContext context = contexts.get();
+        if (context.inUse) {
+            context = newContext();
+        }
+        context.inUse = true;
+        return context;
+    }
+
+    private static void release(KryoContext context) {
+        context.inUse = false;
+        //不再引用ByteBuf的底层数组
+        context.input.setBuffer(EMPTY);
+        if (context.output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+            context.output.setBuffer(new byte[BUFFER_SIZE], -1);
+        }
+        if (context.scratch.length > MAX_RETAINED_BUFFER_SIZE) {
+            context.scratch = EMPTY;
+        }
+    }
+
+    private KryoContext newContext() {
+        Kryo kryo = KryoPoolFactory.newKryo();
+        KryoRegistration.register(kryo, registrations);
+        return new KryoContext(kryo);
+    }
+
+    private static class KryoContext {
+        private final Kryo kryo;
+        private final Output output = new Output(BUFFER_SIZE, -1);
+        private final HeapByteBufOutput heapOutput = new HeapByteBufOutput();
+        private final Input input = new Input();
+        private byte[] scratch = EMPTY;
+        private boolean inUse;
+
+        KryoContext(Kryo kryo) {
+            this.kryo = kryo;
+        }
+
+        byte[] scratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, BUFFER_SIZE)];
             }
-            pool.release(kryo);
+            return scratch;
         }
     }
 }
@@ -0,0 +1,45 @@
+package com.xyj.serializer.protostuff;
+
+import com.dyuproject.protostuff.Schema;
+import com.dyuproject.protostuff.runtime.RuntimeSchema;
+
+/**
+ * 由 {@link com.xyj.processor.RpcSerializerProcessor} 在编译期为服务DTO生成的Protostuff Schema的基类
+ * 字段编号和编码方式与RuntimeSchema相同（按声明顺序从1开始，父类字段在前），只有一端使用生成的Schema时双方仍然兼容
+ * 启动时注册到RuntimeSchema，其他类型中该类型的字段也会使用生成的Schema
+ */
+public abstract class GeneratedSchema<T> implements Schema<T> {
+
+    private final Class<T> type;
+
+    protected GeneratedSchema(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public Class<T> typeClass() {
+        return type;
+    }
+
+    @Override
+    public boolean isInitialized(T message) {
+        return true;
+    }
+
+    @Override
+    public String messageName() {
+        return type.getSimpleName();
+    }
+
+    @Override
+    public String messageFullName() {
+        return type.getName();
+    }
+
+    /**
+     * 字段类型的Schema，生成的类会缓存返回值，不能在构造时调用（此时生成的Schema可能还没有注册）
+     */
+    protected static <S> Schema<S> schemaOf(Class<S> cls) {
+        return RuntimeSchema.getSchema(cls);
+    }
+}
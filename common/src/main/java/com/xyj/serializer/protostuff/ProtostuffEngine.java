@@ -0,0 +1,199 @@
+package com.xyj.serializer.protostuff;
+
+import com.dyuproject.protostuff.LinkedBuffer;
+import com.dyuproject.protostuff.ProtostuffIOUtil;
+import com.dyuproject.protostuff.Schema;
+import com.dyuproject.protostuff.runtime.RuntimeSchema;
+import com.xyj.serializer.GeneratedSerializers;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.lang.reflect.Modifier;
+
+/**
+ * Protostuff编解码的唯一实现，ProtostuffSerializer和SerializationUtil都委托到这里
+ * 编译期生成的Schema优先，其余类型通过RuntimeSchema创建；Schema通过ClassValue缓存，查找不经过ConcurrentHashMap；
+ * 对象由Schema.newMessage创建，不再使用Objenesis
+ * 每个线程独享一个LinkedBuffer，编码时写满一块就直接刷到目标ByteBuf，不产生中间字节数组；
+ * 解码时堆内ByteBuf直接读取其底层数组，堆外的先拷贝到线程独享的数组
+ */
+public final class ProtostuffEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ProtostuffEngine.class);
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // 超过该大小的数组在使用后丢弃
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    static {
+        //先注册编译期生成的Schema，之后创建的RuntimeSchema中这些类型的字段也使用生成的Schema
+        GeneratedSerializers.registerSchemas();
+    }
+
+    // 与嵌套字段使用同一份RuntimeSchema缓存，预热后运行时不再创建Schema
+    private static final ClassValue<Schema<?>> SCHEMAS = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return RuntimeSchema.getSchema(type);
+        }
+    };
+
+    private static final FastThreadLocal<Context> CONTEXT = new FastThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    private ProtostuffEngine() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Schema<T> getSchema(Class<T> cls) {
+        return (Schema<T>) SCHEMAS.get(cls);
+    }
+
+    /**
+     * 启动时提前为这些类型创建Schema，接口、抽象类、基本类型和JDK自带的类型会被跳过
+     * 返回实际预热的类型数量
+     */
+    public static int warmUp(Iterable<Class<?>> types) {
+        int count = 0;
+        for (Class<?> type : types) {
+            if (!isSchemaType(type)) {
+                continue;
+            }
+            try {
+                SCHEMAS.get(type);
+                count++;
+            } catch (Exception e) {
+                logger.debug("Can not create protostuff schema for {}", type.getName(), e);
+            }
+        }
+        return count;
+    }
+
+    static boolean isSchemaType(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum()
+                || Modifier.isAbstract(type.getModifiers())) {
+            return false;
+        }
+        String name = type.getName();
+        return !name.startsWith("java.") && !name.startsWith("javax.");
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> byte[] serialize(T obj) {
+        Schema<T> schema = getSchema((Class<T>) obj.getClass());
+        Context context = acquire();
+        try {
+            return ProtostuffIOUtil.toByteArray(obj, schema, context.buffer);
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            release(context);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> void serialize(T obj, ByteBuf out) {
+        Schema<T> schema = getSchema((Class<T>) obj.getClass());
+        Context context = acquire();
+        try {
+            context.sink.target = out;
+            ProtostuffIOUtil.writeTo(context.sink, obj, schema, context.buffer);
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            release(context);
+        }
+    }
+
+    public static <T> T deserialize(byte[] data, int offset, int length, Class<T> cls) {
+        try {
+            Schema<T> schema = getSchema(cls);
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(data, offset, length, message, schema);
+            return message;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 读取in中全部可读的字节
+     */
+    public static <T> T deserialize(ByteBuf in, Class<T> cls) {
+        int length = in.readableBytes();
+        if (in.hasArray()) {
+            T message = deserialize(in.array(), in.arrayOffset() + in.readerIndex(), length, cls);
+            in.skipBytes(length);
+            return message;
+        }
+        Context context = acquire();
+        try {
+            byte[] bytes = context.scratch(length);
+            in.readBytes(bytes, 0, length);
+            return deserialize(bytes, 0, length, cls);
+        } finally {
+            release(context);
+        }
+    }
+
+    /**
+     * 同一线程上嵌套调用时使用临时的实例
+     */
+    private static Context acquire() {
+        Context context = CONTEXT.get();
+        if (context.inUse) {
+            context = new Context();
+        }
+        context.inUse = true;
+        return context;
+    }
+
+    private static void release(Context context) {
+        context.inUse = false;
+        context.buffer.clear();
+        context.sink.target = null;
+        if (context.scratch.length > MAX_RETAINED_BUFFER_SIZE) {
+            context.scratch = EMPTY;
+        }
+    }
+
+    private static class Context {
+        private final LinkedBuffer buffer = LinkedBuffer.allocate(BUFFER_SIZE);
+        private final ByteBufSink sink = new ByteBufSink();
+        private byte[] scratch = EMPTY;
+        private boolean inUse;
+
+        byte[] scratch(int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, BUFFER_SIZE)];
+            }
+            return scratch;
+        }
+    }
+
+    /**
+     * 可复用的OutputStream，把LinkedBuffer刷出的数据直接写入当前的ByteBuf
+     */
+    private static class ByteBufSink extends OutputStream {
+        private ByteBuf target;
+
+        @Override
+        public void write(int b) {
+            target.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target.writeBytes(b, off, len);
+        }
+    }
+}
@@ -1,50 +1,40 @@
 package com.xyj.serializer.protostuff;
 
-import com.dyuproject.protostuff.LinkedBuffer;
-import com.dyuproject.protostuff.ProtostuffIOUtil;
-import com.dyuproject.protostuff.Schema;
-import com.dyuproject.protostuff.runtime.RuntimeSchema;
-import org.objenesis.Objenesis;
-import org.objenesis.ObjenesisStd;
 import com.xyj.serializer.Serializer;
+import io.netty.buffer.ByteBuf;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * 编解码由 {@link ProtostuffEngine} 完成
+ */
 public class ProtostuffSerializer extends Serializer {
-    private Map<Class<?>, Schema<?>> cachedSchema = new ConcurrentHashMap<>();
 
-    private Objenesis objenesis = new ObjenesisStd(true);
+    @Override
+    public byte getId() {
+        return PROTOSTUFF;
+    }
 
-    @SuppressWarnings("unchecked")
-    private <T> Schema<T> getSchema(Class<T> cls) {
-        // for thread-safe
-        return (Schema<T>) cachedSchema.computeIfAbsent(cls, RuntimeSchema::createFrom);
+    @Override
+    public String getName() {
+        return "protostuff";
     }
 
     @Override
     public <T> byte[] serialize(T obj) {
-        Class<T> cls = (Class<T>) obj.getClass();
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
-        try {
-            Schema<T> schema = getSchema(cls);
-            return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
-        } catch (Exception e) {
-            throw new IllegalStateException(e.getMessage(), e);
-        } finally {
-            buffer.clear();
-        }
+        return ProtostuffEngine.serialize(obj);
     }
 
     @Override
     public <T> Object deserialize(byte[] bytes, Class<T> clazz) {
-        try {
-            T message = (T) objenesis.newInstance(clazz);
-            Schema<T> schema = getSchema(clazz);
-            ProtostuffIOUtil.mergeFrom(bytes, message, schema);
-            return message;
-        } catch (Exception e) {
-            throw new IllegalStateException(e.getMessage(), e);
-        }
+        return ProtostuffEngine.deserialize(bytes, 0, bytes.length, clazz);
+    }
+
+    @Override
+    public <T> void serialize(T obj, ByteBuf out) {
+        ProtostuffEngine.serialize(obj, out);
+    }
+
+    @Override
+    public <T> Object deserialize(ByteBuf in, Class<T> clazz) {
+        return ProtostuffEngine.deserialize(in, clazz);
     }
 }
@@ -0,0 +1,126 @@
+package com.xyj.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.internal.PlatformDependent;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 传输层参数，客户端和服务端共用
+ * Linux上可以加载native库时使用epoll，否则（或关闭nativeTransport时）使用NIO，两者的行为相同
+ * 这个版本的epoll传输需要sun.misc.Unsafe分配内存，Netty在JDK 9以上拿不到时同样使用NIO
+ */
+@Data
+public class TransportConfig {
+    private static final Logger logger = LoggerFactory.getLogger(TransportConfig.class);
+
+    // 是否已经打印过epoll不可用的原因
+    private static volatile boolean unavailableLogged;
+
+    // 可用时使用native epoll传输
+    private boolean nativeTransport = true;
+
+    // epoll使用边缘触发（Netty的默认方式），关闭后为水平触发
+    private boolean edgeTriggered = true;
+
+    // 服务端监听socket开启SO_REUSEPORT，绑定acceptors个socket，由内核在它们之间分配新连接；只有epoll支持
+    private boolean reusePort = false;
+
+    private int acceptors = 1;
+
+    // 关闭Nagle算法，小的请求和响应立即发出
+    private boolean tcpNoDelay = true;
+
+    /**
+     * 是否实际使用epoll
+     */
+    public boolean isEpoll() {
+        if (!nativeTransport) {
+            return false;
+        }
+        if (Epoll.isAvailable() && PlatformDependent.hasUnsafe()) {
+            return true;
+        }
+        if (!unavailableLogged) {
+            unavailableLogged = true;
+            logger.warn("Native epoll transport is unavailable, use NIO: {}", Epoll.isAvailable()
+                    ? "sun.misc.Unsafe is not accessible" : String.valueOf(Epoll.unavailabilityCause()));
+        }
+        return false;
+    }
+
+    /**
+     * threads为0时使用Netty的默认线程数（CPU核数的2倍）
+     */
+    public EventLoopGroup eventLoopGroup(int threads) {
+        return isEpoll() ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return isEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends Channel> channelClass() {
+        return isEpoll() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * 服务端绑定的监听socket数：开启reusePort且使用epoll时为acceptors，否则为1
+     */
+    public int bindCount() {
+        if (acceptors <= 1 || !reusePort) {
+            return 1;
+        }
+        if (!isEpoll()) {
+            logger.warn("SO_REUSEPORT requires the epoll transport, bind one acceptor instead of {}", acceptors);
+            return 1;
+        }
+        return acceptors;
+    }
+
+    /**
+     * 服务端监听socket上需要设置的选项
+     */
+    public Map<ChannelOption<?>, Object> serverChannelOptions() {
+        Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+        if (isEpoll()) {
+            options.put(EpollChannelOption.EPOLL_MODE, epollMode());
+            if (bindCount() > 1) {
+                options.put(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * 每个连接上需要设置的选项
+     */
+    public Map<ChannelOption<?>, Object> channelOptions() {
+        Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+        options.put(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (isEpoll()) {
+            options.put(EpollChannelOption.EPOLL_MODE, epollMode());
+        }
+        return options;
+    }
+
+    private EpollMode epollMode() {
+        return edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+    }
+}
@@ -0,0 +1,17 @@
+package com.xyj.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求id生成器，进程内单调递增，0 保留给心跳
+ */
+public class RequestIdGenerator {
+    private static final AtomicLong REQUEST_ID = new AtomicLong(0);
+
+    private RequestIdGenerator() {
+    }
+
+    public static long nextId() {
+        return REQUEST_ID.incrementAndGet();
+    }
+}
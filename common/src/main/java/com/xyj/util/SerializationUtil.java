@@ -1,70 +1,28 @@
 package com.xyj.util;
 
 
-import com.dyuproject.protostuff.LinkedBuffer;
-import com.dyuproject.protostuff.ProtostuffIOUtil;
-import com.dyuproject.protostuff.Schema;
-import com.dyuproject.protostuff.runtime.RuntimeSchema;
-import org.objenesis.Objenesis;
-import org.objenesis.ObjenesisStd;
-
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import com.xyj.serializer.protostuff.ProtostuffEngine;
 
 /**
  * Serialization Util（Based on Protostuff）
+ * 与ProtostuffSerializer共用 {@link ProtostuffEngine}
  */
 public class SerializationUtil {
 
-    private static Map<Class<?>, Schema<?>> cachedSchema = new ConcurrentHashMap<>();
-
-    private static Objenesis objenesis = new ObjenesisStd(true);
-
     private SerializationUtil() {
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T> Schema<T> getSchema(Class<T> cls) {
-//        Schema<T> schema = (Schema<T>) cachedSchema.get(cls);
-//        if (schema == null) {
-//            schema = RuntimeSchema.createFrom(cls);
-//            if (schema != null) {
-//                cachedSchema.put(cls, schema);
-//            }
-//        }
-//        return schema;
-        // for thread-safe
-        return (Schema<T>) cachedSchema.computeIfAbsent(cls, RuntimeSchema::createFrom);
-    }
-
     /**
      * 序列化（对象 -> 字节数组）
      */
-    @SuppressWarnings("unchecked")
     public static <T> byte[] serialize(T obj) {
-        Class<T> cls = (Class<T>) obj.getClass();
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
-        try {
-            Schema<T> schema = getSchema(cls);
-            return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
-        } catch (Exception e) {
-            throw new IllegalStateException(e.getMessage(), e);
-        } finally {
-            buffer.clear();
-        }
+        return ProtostuffEngine.serialize(obj);
     }
 
     /**
      * 反序列化（字节数组 -> 对象）
      */
     public static <T> T deserialize(byte[] data, Class<T> cls) {
-        try {
-            T message = (T) objenesis.newInstance(cls);
-            Schema<T> schema = getSchema(cls);
-            ProtostuffIOUtil.mergeFrom(data, message, schema);
-            return message;
-        } catch (Exception e) {
-            throw new IllegalStateException(e.getMessage(), e);
-        }
+        return ProtostuffEngine.deserialize(data, 0, data.length, cls);
     }
 }
@@ -0,0 +1,104 @@
+package com.xyj.util;
+
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcBatchResponse;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.message.StreamFrame;
+import com.xyj.serializer.protostuff.ProtostuffEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 扫描服务接口的方法签名，收集参数、返回值（包括泛型参数）以及这些类型的字段中出现的所有类型
+ * 启动时用来预热序列化用的Schema，避免第一次调用时才创建
+ */
+public class ServiceTypeScanner {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceTypeScanner.class);
+
+    // 每次调用都会用到的协议消息
+    private static final Class<?>[] MESSAGE_TYPES = {RpcRequest.class, RpcResponse.class,
+            RpcBatchRequest.class, RpcBatchResponse.class, StreamFrame.class};
+
+    private ServiceTypeScanner() {
+    }
+
+    /**
+     * 返回接口方法签名中直接或间接引用的类型，包含协议消息本身
+     */
+    public static Set<Class<?>> scan(Collection<Class<?>> interfaces) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        Deque<Type> pending = new ArrayDeque<>(Arrays.asList(MESSAGE_TYPES));
+        for (Class<?> iface : interfaces) {
+            for (Method method : iface.getMethods()) {
+                if (method.getDeclaringClass() == Object.class) {
+                    continue;
+                }
+                pending.add(method.getGenericReturnType());
+                pending.addAll(Arrays.asList(method.getGenericParameterTypes()));
+            }
+        }
+        Type type;
+        while ((type = pending.poll()) != null) {
+            if (type instanceof ParameterizedType) {
+                pending.add(((ParameterizedType) type).getRawType());
+                pending.addAll(Arrays.asList(((ParameterizedType) type).getActualTypeArguments()));
+            } else if (type instanceof GenericArrayType) {
+                pending.add(((GenericArrayType) type).getGenericComponentType());
+            } else if (type instanceof WildcardType) {
+                pending.addAll(Arrays.asList(((WildcardType) type).getUpperBounds()));
+            } else if (type instanceof TypeVariable) {
+                pending.addAll(Arrays.asList(((TypeVariable<?>) type).getBounds()));
+            } else if (type instanceof Class) {
+                Class<?> cls = (Class<?>) type;
+                while (cls.isArray()) {
+                    cls = cls.getComponentType();
+                }
+                if (cls.isPrimitive() || isJdkType(cls) || !types.add(cls)) {
+                    continue;
+                }
+                for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                            pending.add(field.getGenericType());
+                        }
+                    }
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * 扫描并预热Protostuff的Schema
+     */
+    public static void warmUp(Collection<Class<?>> interfaces) {
+        long start = System.nanoTime();
+        Set<Class<?>> types = scan(interfaces);
+        int count = ProtostuffEngine.warmUp(types);
+        logger.info("Warmed up {} protostuff schemas for {} service interfaces in {} ms", count, interfaces.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static boolean isJdkType(Class<?> cls) {
+        String name = cls.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.")
+                || name.startsWith("sun.");
+    }
+}
@@ -10,4 +10,21 @@ public class ServiceUtil {
         }
         return serviceKey;
     }
+
+    /**
+     * 方法签名，握手时用来对应服务端分配的方法id
+     * 格式：serviceKey.methodName(参数类型,...)
+     */
+    public static String makeMethodKey(String serviceKey, String methodName, Class<?>[] parameterTypes) {
+        StringBuilder builder = new StringBuilder(serviceKey).append('.').append(methodName).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(parameterTypes[i].getName());
+            }
+        }
+        return builder.append(')').toString();
+    }
 }
@@ -1,26 +1,52 @@
 package com.xyj.util;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class ThreadPoolUtil {
     public static ThreadPoolExecutor makeServerThreadPool(final String serviceName, int corePoolSize, int maxPoolSize) {
+        return makeServerThreadPool(serviceName, corePoolSize, maxPoolSize, 1000, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * queueSize为0时不排队，没有空闲线程且线程数达到maxPoolSize时直接交给handler
+     */
+    public static ThreadPoolExecutor makeServerThreadPool(final String serviceName, int corePoolSize, int maxPoolSize,
+                                                          int queueSize, RejectedExecutionHandler handler) {
+        BlockingQueue<Runnable> queue = queueSize > 0
+                ? new LinkedBlockingQueue<Runnable>(queueSize) : new SynchronousQueue<Runnable>();
         ThreadPoolExecutor serverHandlerPool = new ThreadPoolExecutor(
                 corePoolSize,
                 maxPoolSize,
                 60L,
                 TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(1000),
+                queue,
                 new ThreadFactory() {
                     @Override
                     public Thread newThread(Runnable r) {
                         return new Thread(r, "netty-rpc-" + serviceName + "-" + r.hashCode());
                     }
                 },
-                new ThreadPoolExecutor.AbortPolicy());
+                handler);
 
         return serverHandlerPool;
     }
+
+    /**
+     * 调整已有线程池的线程数，先调整会与另一个值冲突的那个
+     */
+    public static void resize(ThreadPoolExecutor pool, int corePoolSize, int maxPoolSize) {
+        if (corePoolSize > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(maxPoolSize);
+            pool.setCorePoolSize(corePoolSize);
+        } else {
+            pool.setCorePoolSize(corePoolSize);
+            pool.setMaximumPoolSize(maxPoolSize);
+        }
+    }
 }
@@ -0,0 +1,237 @@
+package com.xyj.codec;
+
+import com.xyj.message.RpcRequest;
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 超过chunkSize的消息由ChunkedFrameWriter拆成分片帧，接收方的RpcDecoder按request id拼接
+ */
+class ChunkedTransferTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private final Serializer kryo = SerializerRegistry.require("kryo");
+
+    private EmbeddedChannel sender;
+
+    private EmbeddedChannel receiver;
+
+    @BeforeEach
+    void setUp() {
+        //发送方不限制消息长度，由接收方的限制决定是否丢弃
+        CodecConfig senderConfig = limited(Integer.MAX_VALUE);
+        sender = new EmbeddedChannel(new ChunkedFrameWriter(senderConfig), new RpcEncoder(RpcRequest.class, kryo, senderConfig));
+        receiver = new EmbeddedChannel(new RpcDecoder(RpcRequest.class, kryo, limited(64 * CHUNK_SIZE)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.finish();
+        receiver.finish();
+    }
+
+    @Test
+    void largeMessageIsSplitAndReassembled() {
+        byte[] payload = payload(5 * CHUNK_SIZE + 100, 1);
+        List<ByteBuf> frames = send(request(1L, payload));
+
+        assertTrue(frames.size() >= 6, "chunks: " + frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            ByteBuf frame = frames.get(i);
+            byte flags = frame.getByte(RpcProtocol.FLAGS_OFFSET);
+            assertEquals(RpcProtocol.FLAG_CHUNKED, flags & RpcProtocol.FLAG_CHUNKED);
+            assertEquals(i == frames.size() - 1, (flags & RpcProtocol.FLAG_LAST_CHUNK) != 0);
+            assertEquals(1L, frame.getLong(RpcProtocol.REQUEST_ID_OFFSET));
+            assertTrue(frame.getInt(RpcProtocol.BODY_LENGTH_OFFSET) <= CHUNK_SIZE);
+        }
+
+        receiver.writeInbound(join(frames));
+        RpcRequest decoded = receiver.readInbound();
+        assertEquals(1L, decoded.getRequestId());
+        assertArrayEquals(payload, (byte[]) decoded.getParameters()[0]);
+        assertNull(receiver.readInbound());
+    }
+
+    @Test
+    void smallMessageIsNotChunked() {
+        List<ByteBuf> frames = send(request(1L, payload(CHUNK_SIZE / 2, 1)));
+        assertEquals(1, frames.size());
+        assertEquals(0, frames.get(0).getByte(RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_CHUNKED);
+        frames.get(0).release();
+    }
+
+    @Test
+    void smallMessageOfOtherRequestIsNotQueuedBehindLargeOne() {
+        sender.write(request(1L, payload(4 * CHUNK_SIZE, 1)));
+        sender.writeAndFlush(request(2L, payload(10, 2)));
+        //大消息的分片还没写出之前，小消息已经整帧写出
+        ByteBuf first = readFrame();
+        assertEquals(2L, first.getLong(RpcProtocol.REQUEST_ID_OFFSET));
+        assertEquals(0, first.getByte(RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_CHUNKED);
+        first.release();
+        for (ByteBuf frame : drain()) {
+            assertEquals(1L, frame.getLong(RpcProtocol.REQUEST_ID_OFFSET));
+            frame.release();
+        }
+    }
+
+    @Test
+    void interleavedChunksOfDifferentRequestsAreReassembled() {
+        byte[] payloadA = payload(3 * CHUNK_SIZE, 1);
+        byte[] payloadB = payload(4 * CHUNK_SIZE, 2);
+        List<ByteBuf> chunksA = send(request(1L, payloadA));
+        List<ByteBuf> chunksB = send(request(2L, payloadB));
+
+        List<ByteBuf> interleaved = new ArrayList<>();
+        for (int i = 0; i < Math.max(chunksA.size(), chunksB.size()); i++) {
+            if (i < chunksB.size()) {
+                interleaved.add(chunksB.get(i));
+            }
+            if (i < chunksA.size()) {
+                interleaved.add(chunksA.get(i));
+            }
+        }
+        receiver.writeInbound(join(interleaved));
+
+        RpcRequest first = receiver.readInbound();
+        RpcRequest second = receiver.readInbound();
+        assertEquals(1L, first.getRequestId());
+        assertArrayEquals(payloadA, (byte[]) first.getParameters()[0]);
+        assertEquals(2L, second.getRequestId());
+        assertArrayEquals(payloadB, (byte[]) second.getParameters()[0]);
+    }
+
+    @Test
+    void oversizedMessageIsDiscardedWithoutAffectingOthers() {
+        List<ByteBuf> oversized = send(request(1L, payload(80 * CHUNK_SIZE, 1)));
+        byte[] payloadB = payload(2 * CHUNK_SIZE, 2);
+        List<ByteBuf> chunksB = send(request(2L, payloadB));
+
+        receiver = new EmbeddedChannel(new RpcDecoder(RpcRequest.class, kryo, limited(8 * CHUNK_SIZE)));
+        List<ByteBuf> frames = new ArrayList<>();
+        frames.add(oversized.get(0));
+        frames.add(chunksB.get(0));
+        frames.addAll(oversized.subList(1, oversized.size()));
+        frames.addAll(chunksB.subList(1, chunksB.size()));
+        receiver.writeInbound(join(frames));
+
+        //超长的请求在超过限制时丢弃，其余分片直到最后一个都被跳过
+        RpcRequest decoded = receiver.readInbound();
+        assertEquals(2L, decoded.getRequestId());
+        assertArrayEquals(payloadB, (byte[]) decoded.getParameters()[0]);
+        assertNull(receiver.readInbound());
+    }
+
+    @Test
+    void pendingChunksOverLimitFailTheConnection() {
+        CodecConfig config = limited(64 * CHUNK_SIZE);
+        config.setMaxPendingChunkBytes(2 * CHUNK_SIZE);
+        receiver = new EmbeddedChannel(new RpcDecoder(RpcRequest.class, kryo, config));
+        List<ByteBuf> chunks = send(request(1L, payload(4 * CHUNK_SIZE, 1)));
+
+        //第三个分片让累计的字节数超过限制
+        assertThrows(TooLongFrameException.class, () -> receiver.writeInbound(join(chunks.subList(0, 3))));
+        //实际运行时连接随之关闭，这里移除decoder，丢弃没有解码的数据并释放已拼接的分片
+        receiver.pipeline().remove(RpcDecoder.class);
+        ByteBuf remaining = receiver.readInbound();
+        remaining.release();
+        for (ByteBuf chunk : chunks.subList(3, chunks.size())) {
+            chunk.release();
+        }
+    }
+
+    @Test
+    void pendingFramesAreAbortedWhenChannelCloses() {
+        ChannelFuture future = sender.writeAndFlush(request(1L, payload(4 * CHUNK_SIZE, 1)));
+        //分片还没写出就关闭连接，未写完的帧失败
+        sender.close();
+        sender.runPendingTasks();
+        assertTrue(future.isDone());
+        assertFalse(future.isSuccess());
+        for (ByteBuf frame : drain()) {
+            frame.release();
+        }
+    }
+
+    private CodecConfig limited(int maxMessageLength) {
+        CodecConfig config = new CodecConfig();
+        config.setChunkSize(CHUNK_SIZE);
+        config.setMaxFrameLength(CHUNK_SIZE);
+        config.setMaxMessageLength(maxMessageLength);
+        return config;
+    }
+
+    /**
+     * 写出一个消息，返回写出的所有帧（分片帧的帧头和消息体合成一个buffer）
+     */
+    private List<ByteBuf> send(RpcRequest request) {
+        //分片在event loop任务中逐个写出，writeOutbound要求写操作立即完成，这里不能使用
+        sender.writeAndFlush(request);
+        return drain();
+    }
+
+    private List<ByteBuf> drain() {
+        List<ByteBuf> frames = new ArrayList<>();
+        ByteBuf frame;
+        while ((frame = readFrame()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private ByteBuf readFrame() {
+        sender.runPendingTasks();
+        ByteBuf first = sender.readOutbound();
+        if (first == null) {
+            return null;
+        }
+        if (first.readableBytes() > RpcProtocol.HEADER_LENGTH
+                || first.getInt(first.readerIndex() + RpcProtocol.BODY_LENGTH_OFFSET) == 0) {
+            return first;
+        }
+        ByteBuf body = sender.readOutbound();
+        return Unpooled.wrappedBuffer(first, body);
+    }
+
+    private static ByteBuf join(List<ByteBuf> frames) {
+        return Unpooled.wrappedBuffer(frames.toArray(new ByteBuf[0]));
+    }
+
+    private static RpcRequest request(long requestId, byte[] payload) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(requestId);
+        request.setClassName("com.xyj.UploadService");
+        request.setMethodName("upload");
+        request.setParameterTypes(new Class<?>[]{byte[].class});
+        request.setParameters(new Object[]{payload});
+        request.setVersion("1.0");
+        return request;
+    }
+
+    private static byte[] payload(int length, int seed) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (i * 31 + seed);
+        }
+        return payload;
+    }
+}
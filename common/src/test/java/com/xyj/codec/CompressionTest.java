@@ -0,0 +1,117 @@
+package com.xyj.codec;
+
+import com.xyj.compress.Compressors;
+import com.xyj.message.RpcResponse;
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 协商出压缩算法后，只压缩超过compressThreshold且压缩后变小的消息体
+ */
+class CompressionTest {
+
+    private static final int THRESHOLD = 1024;
+
+    private final Serializer kryo = SerializerRegistry.require("kryo");
+
+    private EmbeddedChannel server;
+
+    private EmbeddedChannel client;
+
+    @BeforeEach
+    void setUp() {
+        CodecConfig codecConfig = new CodecConfig();
+        codecConfig.setCompressThreshold(THRESHOLD);
+        server = new EmbeddedChannel(new RpcEncoder(RpcResponse.class, kryo, codecConfig));
+        ChannelSession.get(server).setCompressor(Compressors.get("deflate"));
+        client = new EmbeddedChannel(new RpcDecoder(RpcResponse.class, kryo, codecConfig));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.finish();
+        client.finish();
+    }
+
+    @Test
+    void bodyBelowThresholdIsNotCompressed() {
+        ByteBuf frame = encode(compressible(THRESHOLD / 2));
+        assertEquals(0, frame.getByte(RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_COMPRESSED);
+        assertArrayEquals(compressible(THRESHOLD / 2), decode(frame));
+    }
+
+    @Test
+    void bodyAboveThresholdIsCompressed() {
+        byte[] payload = compressible(THRESHOLD * 8);
+        ByteBuf frame = encode(payload);
+        assertEquals(RpcProtocol.FLAG_COMPRESSED, frame.getByte(RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_COMPRESSED);
+        int bodyLength = frame.getInt(RpcProtocol.BODY_LENGTH_OFFSET);
+        assertTrue(bodyLength < payload.length, "compressed body " + bodyLength);
+        assertEquals(Compressors.get("deflate").getId(), frame.getByte(RpcProtocol.HEADER_LENGTH));
+        assertArrayEquals(payload, decode(frame));
+    }
+
+    @Test
+    void incompressibleBodyIsSentAsIs() {
+        byte[] payload = new byte[THRESHOLD * 8];
+        new Random(1).nextBytes(payload);
+        ByteBuf frame = encode(payload);
+        assertEquals(0, frame.getByte(RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_COMPRESSED);
+        assertArrayEquals(payload, decode(frame));
+    }
+
+    @Test
+    void bodyIsNotCompressedWithoutNegotiatedCompressor() {
+        ChannelSession.get(server).setCompressor(null);
+        ByteBuf frame = encode(compressible(THRESHOLD * 8));
+        assertEquals(0, frame.getByte(RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_COMPRESSED);
+        frame.release();
+    }
+
+    @Test
+    void oversizedDecompressedLengthFailsTheResponse() {
+        ByteBuf frame = encode(compressible(THRESHOLD * 8));
+        //压缩体头部的原始长度超过maxMessageLength时不解压，客户端得到带错误的响应
+        frame.setInt(RpcProtocol.HEADER_LENGTH + 1, new CodecConfig().getMaxMessageLength() + 1);
+        client.writeInbound(frame);
+        RpcResponse response = client.readInbound();
+        assertNotNull(response.getError());
+        assertNull(response.getResult());
+    }
+
+    private ByteBuf encode(byte[] payload) {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(1L);
+        response.setResult(payload);
+        server.writeOutbound(response);
+        return server.readOutbound();
+    }
+
+    private byte[] decode(ByteBuf frame) {
+        client.writeInbound(frame);
+        RpcResponse response = client.readInbound();
+        assertNull(response.getError());
+        return (byte[]) response.getResult();
+    }
+
+    private static byte[] compressible(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) ('a' + i % 7);
+        }
+        return payload;
+    }
+}
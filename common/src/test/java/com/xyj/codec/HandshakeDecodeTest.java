@@ -0,0 +1,125 @@
+package com.xyj.codec;
+
+import com.xyj.message.Handshake;
+import com.xyj.message.RpcResponse;
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import com.xyj.serializer.kryo.KryoRegistration;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 服务端回复握手后立即启用Kryo注册表，按注册表编码的响应可能和握手回复在同一次读取中到达客户端
+ */
+class HandshakeDecodeTest {
+
+    private final Serializer kryo = SerializerRegistry.require("kryo");
+
+    private final List<String> kryoClasses = KryoRegistration.classNames(Collections.singletonList(EchoService.class));
+
+    private EmbeddedChannel server;
+
+    private EmbeddedChannel client;
+
+    @BeforeEach
+    void setUp() {
+        CodecConfig codecConfig = new CodecConfig();
+        server = new EmbeddedChannel(new RpcEncoder(RpcResponse.class, kryo, codecConfig));
+        client = new EmbeddedChannel(new RpcDecoder(RpcResponse.class, kryo, codecConfig));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.finish();
+        client.finish();
+    }
+
+    @Test
+    void registeredResponseInSameReadAsHandshakeIsDecoded() {
+        Handshake reply = new Handshake();
+        reply.setKryoClasses(kryoClasses);
+        reply.setMethods(Collections.singletonMap("com.xyj.codec.HandshakeDecodeTest$EchoService#echo(java.lang.String)", 1));
+        server.writeOutbound(reply);
+        ChannelSession.get(server).setRegisteredKryo(KryoRegistration.serializer(kryoClasses));
+        server.writeOutbound(response(7L, new Echo("hello")));
+
+        ByteBuf frames = readAll(server);
+        assertTrue((frames.getByte(handshakeLength(frames) + RpcProtocol.FLAGS_OFFSET) & RpcProtocol.FLAG_REGISTERED) != 0);
+        client.writeInbound(frames);
+
+        assertInstanceOf(Handshake.class, client.readInbound());
+        RpcResponse response = client.readInbound();
+        assertEquals(7L, response.getRequestId());
+        assertNull(response.getError());
+        assertEquals("hello", ((Echo) response.getResult()).getText());
+        assertSame(KryoRegistration.serializer(kryoClasses), ChannelSession.get(client).getRegisteredKryo());
+        assertEquals(1, ChannelSession.get(client).getMethodIds().size());
+    }
+
+    @Test
+    void registeredResponseWithoutHandshakeFailsTheCall() {
+        ChannelSession.get(server).setRegisteredKryo(KryoRegistration.serializer(kryoClasses));
+        server.writeOutbound(response(7L, new Echo("hello")));
+        client.writeInbound(readAll(server));
+
+        //无法解码的响应不能丢弃，转成带错误的响应让调用失败
+        RpcResponse response = client.readInbound();
+        assertEquals(7L, response.getRequestId());
+        assertNotNull(response.getError());
+        assertNull(client.readInbound());
+    }
+
+    private static int handshakeLength(ByteBuf frames) {
+        return RpcProtocol.HEADER_LENGTH + frames.getInt(RpcProtocol.BODY_LENGTH_OFFSET);
+    }
+
+    private static ByteBuf readAll(EmbeddedChannel channel) {
+        ByteBuf all = Unpooled.buffer();
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            all.writeBytes(buf);
+            buf.release();
+        }
+        return all;
+    }
+
+    private static RpcResponse response(long requestId, Object result) {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(requestId);
+        response.setResult(result);
+        return response;
+    }
+
+    interface EchoService {
+        Echo echo(String text);
+    }
+
+    public static class Echo {
+        private String text;
+
+        public Echo() {
+        }
+
+        Echo(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+}
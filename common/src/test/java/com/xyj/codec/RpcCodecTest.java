@@ -0,0 +1,263 @@
+package com.xyj.codec;
+
+import com.xyj.message.Beat;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.message.StreamFrame;
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 帧头编解码，以及旧协议请求的解码和响应的回写
+ */
+class RpcCodecTest {
+
+    private final Serializer kryo = SerializerRegistry.require("kryo");
+
+    private EmbeddedChannel client;
+
+    private EmbeddedChannel server;
+
+    @BeforeEach
+    void setUp() {
+        client = new EmbeddedChannel(new RpcEncoder(RpcRequest.class, kryo), new RpcDecoder(RpcResponse.class, kryo));
+        server = new EmbeddedChannel(new RpcDecoder(RpcRequest.class, kryo), new RpcEncoder(RpcResponse.class, kryo));
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.finish();
+        server.finish();
+        releaseAll(client);
+        releaseAll(server);
+    }
+
+    @Test
+    void requestRoundTrip() {
+        RpcRequest request = request(42L);
+        client.writeOutbound(request);
+        ByteBuf frame = client.readOutbound();
+
+        assertEquals(RpcProtocol.MAGIC, frame.getShort(0));
+        assertEquals(RpcProtocol.VERSION, frame.getByte(2));
+        assertEquals(kryo.getId(), frame.getByte(4));
+        assertEquals(RpcProtocol.TYPE_REQUEST, frame.getByte(5));
+        assertEquals(42L, frame.getLong(RpcProtocol.REQUEST_ID_OFFSET));
+        assertEquals(frame.readableBytes() - RpcProtocol.HEADER_LENGTH, frame.getInt(RpcProtocol.BODY_LENGTH_OFFSET));
+
+        server.writeInbound(frame);
+        RpcRequest decoded = server.readInbound();
+        assertEquals(42L, decoded.getRequestId());
+        assertEquals(request.getClassName(), decoded.getClassName());
+        assertEquals(request.getMethodName(), decoded.getMethodName());
+        assertArrayEquals(request.getParameterTypes(), decoded.getParameterTypes());
+        assertArrayEquals(request.getParameters(), decoded.getParameters());
+        assertEquals(kryo.getId(), decoded.getSerializer());
+    }
+
+    @Test
+    void responseRoundTrip() {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(7L);
+        response.setResult("done");
+        server.writeOutbound(response);
+
+        client.writeInbound((Object) server.readOutbound());
+        RpcResponse decoded = client.readInbound();
+        assertEquals(7L, decoded.getRequestId());
+        assertEquals("done", decoded.getResult());
+        assertNull(decoded.getError());
+    }
+
+    @Test
+    void frameSplitAcrossReads() {
+        client.writeOutbound(request(1L), request(2L));
+        ByteBuf frames = Unpooled.wrappedBuffer(client.<ByteBuf>readOutbound(), client.<ByteBuf>readOutbound());
+
+        //帧头和消息体分成任意几次到达，都只在完整之后解码
+        server.writeInbound(frames.readSlice(5).retain());
+        assertNull(server.readInbound());
+        server.writeInbound(frames.readSlice(RpcProtocol.HEADER_LENGTH).retain());
+        assertNull(server.readInbound());
+        server.writeInbound(frames);
+        assertEquals(1L, server.<RpcRequest>readInbound().getRequestId());
+        assertEquals(2L, server.<RpcRequest>readInbound().getRequestId());
+    }
+
+    @Test
+    void heartbeatIsConsumedByDecoder() {
+        client.writeOutbound(Beat.BEAT_PING);
+        ByteBuf frame = client.readOutbound();
+        assertEquals(RpcProtocol.HEADER_LENGTH, frame.readableBytes());
+        assertEquals(RpcProtocol.TYPE_HEARTBEAT, frame.getByte(5));
+
+        server.writeInbound(frame);
+        assertNull(server.readInbound());
+    }
+
+    @Test
+    void unsupportedVersionIsSkipped() {
+        client.writeOutbound(request(1L), request(2L));
+        ByteBuf first = client.readOutbound();
+        first.setByte(2, RpcProtocol.VERSION + 1);
+
+        server.writeInbound(Unpooled.wrappedBuffer(first, client.<ByteBuf>readOutbound()));
+        assertEquals(2L, server.<RpcRequest>readInbound().getRequestId());
+        assertNull(server.readInbound());
+    }
+
+    @Test
+    void streamDemandRoundTrip() {
+        StreamFrame demand = StreamFrame.of(RpcProtocol.TYPE_STREAM_DEMAND, 9L);
+        demand.setDemand(256);
+        client.writeOutbound(demand);
+
+        server.writeInbound((Object) client.readOutbound());
+        StreamFrame decoded = server.readInbound();
+        assertEquals(RpcProtocol.TYPE_STREAM_DEMAND, decoded.getType());
+        assertEquals(9L, decoded.getRequestId());
+        assertEquals(256, decoded.getDemand());
+    }
+
+    @Test
+    void nonPositiveDemandIsDropped() {
+        server.writeInbound(frame(RpcProtocol.TYPE_STREAM_DEMAND, 9L, Unpooled.buffer().writeLong(0)));
+        server.writeInbound(frame(RpcProtocol.TYPE_STREAM_DEMAND, 9L, Unpooled.buffer().writeLong(-1)));
+        assertNull(server.readInbound());
+    }
+
+    @Test
+    void shortDemandIsCorruptedFrame() {
+        assertThrows(CorruptedFrameException.class,
+                () -> server.writeInbound(frame(RpcProtocol.TYPE_STREAM_DEMAND, 9L, Unpooled.buffer().writeInt(1))));
+    }
+
+    @Test
+    void negativeBodyLengthIsCorruptedFrame() {
+        ByteBuf frame = frame(RpcProtocol.TYPE_REQUEST, 1L, Unpooled.EMPTY_BUFFER);
+        frame.setInt(RpcProtocol.BODY_LENGTH_OFFSET, -1);
+        assertThrows(CorruptedFrameException.class, () -> server.writeInbound(frame));
+        //长度不可信时无法跳过该帧，连接关闭时剩下的字节再次报错，由handler关闭连接
+        assertThrows(CorruptedFrameException.class, server::finish);
+    }
+
+    @Test
+    void legacyRequestIsAnsweredWithLegacyResponse() throws Exception {
+        LegacyCodec.LegacyRpcRequest legacy = new LegacyCodec.LegacyRpcRequest();
+        set(legacy, "requestId", "legacy-1");
+        set(legacy, "className", "com.xyj.HelloService");
+        set(legacy, "methodName", "hello");
+        set(legacy, "parameterTypes", new Class<?>[]{String.class});
+        set(legacy, "parameters", new Object[]{"world"});
+        set(legacy, "version", "1.0");
+        byte[] body = kryo.serialize(legacy);
+        server.writeInbound(Unpooled.buffer().writeInt(body.length).writeBytes(body));
+
+        RpcRequest request = server.readInbound();
+        assertEquals("hello", request.getMethodName());
+        assertEquals("world", request.getParameters()[0]);
+        assertTrue(request.getRequestId() != 0);
+
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setResult("hello world");
+        server.writeOutbound(response);
+
+        //旧协议的响应：4字节长度 + 旧版本RpcResponse，请求id换回原来的字符串
+        ByteBuf out = server.readOutbound();
+        int length = out.readInt();
+        assertEquals(out.readableBytes(), length);
+        byte[] data = new byte[length];
+        out.readBytes(data);
+        out.release();
+        LegacyCodec.LegacyRpcResponse decoded =
+                (LegacyCodec.LegacyRpcResponse) kryo.deserialize(data, LegacyCodec.LegacyRpcResponse.class);
+        assertEquals("legacy-1", get(decoded, "requestId"));
+        assertEquals("hello world", get(decoded, "result"));
+    }
+
+    @Test
+    void legacyHeartbeatIsConsumedByDecoder() throws Exception {
+        LegacyCodec.LegacyRpcRequest beat = new LegacyCodec.LegacyRpcRequest();
+        set(beat, "requestId", LegacyCodec.LEGACY_BEAT_ID);
+        byte[] body = kryo.serialize(beat);
+        server.writeInbound(Unpooled.buffer().writeInt(body.length).writeBytes(body));
+        assertNull(server.readInbound());
+    }
+
+    @Test
+    void responseOfNewProtocolRequestIsNotLegacy() {
+        client.writeOutbound(request(5L));
+        server.writeInbound((Object) client.readOutbound());
+        RpcRequest request = server.readInbound();
+
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        server.writeOutbound(response);
+        ByteBuf out = server.readOutbound();
+        assertNotNull(out);
+        assertEquals(RpcProtocol.MAGIC, out.getShort(0));
+        out.release();
+    }
+
+    private static RpcRequest request(long requestId) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(requestId);
+        request.setClassName("com.xyj.HelloService");
+        request.setMethodName("hello");
+        request.setParameterTypes(new Class<?>[]{String.class, int.class});
+        request.setParameters(new Object[]{"world", 3});
+        request.setVersion("1.0");
+        return request;
+    }
+
+    private ByteBuf frame(byte type, long requestId, ByteBuf body) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeShort(RpcProtocol.MAGIC);
+        frame.writeByte(RpcProtocol.VERSION);
+        frame.writeByte(0);
+        frame.writeByte(kryo.getId());
+        frame.writeByte(type);
+        frame.writeLong(requestId);
+        frame.writeInt(body.readableBytes());
+        frame.writeBytes(body);
+        return frame;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static Object get(Object target, String name) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    private static void releaseAll(EmbeddedChannel channel) {
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            if (msg instanceof ByteBuf) {
+                ((ByteBuf) msg).release();
+            }
+        }
+    }
+}
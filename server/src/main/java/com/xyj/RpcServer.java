@@ -2,6 +2,7 @@ package com.xyj;
 
 import com.xyj.annotation.RpcService;
 import com.xyj.server.NettyServer;
+import com.xyj.server.RpcServerConfig;
 import org.apache.commons.collections4.MapUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.DisposableBean;
@@ -20,6 +21,10 @@ public class RpcServer extends NettyServer implements ApplicationContextAware, I
         super(serverAddress, registryAddress);
     }
 
+    public RpcServer(RpcServerConfig config) {
+        super(config);
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext ctx) throws BeansException {
         Map<String, Object> serviceBeanMap = ctx.getBeansWithAnnotation(RpcService.class);
@@ -28,7 +33,7 @@ public class RpcServer extends NettyServer implements ApplicationContextAware, I
                 RpcService nettyRpcService = serviceBean.getClass().getAnnotation(RpcService.class);
                 String interfaceName = nettyRpcService.value().getName();
                 String version = nettyRpcService.version();
-                super.addService(interfaceName, version, serviceBean);
+                super.addService(interfaceName, version, serviceBean, nettyRpcService.serializer());
             }
         }
     }
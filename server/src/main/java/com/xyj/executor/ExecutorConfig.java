@@ -0,0 +1,43 @@
+package com.xyj.executor;
+
+import com.xyj.annotation.RpcExecutor;
+import lombok.Data;
+
+/**
+ * 服务或方法独立线程池（舱壁）的参数，与 {@link RpcExecutor} 的属性相同，用于不修改代码的外部配置
+ */
+@Data
+public class ExecutorConfig {
+
+    // 线程池名称，名称相同的服务/方法共用一个池；为空时按服务或方法命名
+    private String name = "";
+
+    private int coreSize = 8;
+
+    // 不能小于coreSize
+    private int maxSize = 16;
+
+    // 等待队列长度，为0时不排队
+    private int queueSize = 1000;
+
+    // 每个请求使用一个虚拟线程（JDK 21以上），此时忽略coreSize和maxSize；JDK不支持时按上面的参数使用平台线程池
+    private boolean virtualThreads = false;
+
+    // 使用虚拟线程时最多同时执行的请求数，为0时不限制；限制时超出的请求排队，排队的超过queueSize时拒绝
+    private int maxConcurrency = 0;
+
+    // 线程池满时的处理方式：ABORT立即回复过载，SHARED交给服务端共享的线程池
+    private RpcExecutor.Rejection rejection = RpcExecutor.Rejection.ABORT;
+
+    public static ExecutorConfig from(RpcExecutor annotation) {
+        ExecutorConfig config = new ExecutorConfig();
+        config.setName(annotation.value());
+        config.setCoreSize(annotation.coreSize());
+        config.setMaxSize(annotation.maxSize());
+        config.setQueueSize(annotation.queueSize());
+        config.setVirtualThreads(annotation.virtualThreads());
+        config.setMaxConcurrency(annotation.maxConcurrency());
+        config.setRejection(annotation.rejection());
+        return config;
+    }
+}
@@ -0,0 +1,187 @@
+package com.xyj.executor;
+
+import com.xyj.annotation.RpcExecutor;
+import com.xyj.metrics.RpcMetrics;
+import com.xyj.util.ThreadPoolUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端按服务或方法隔离的线程池（舱壁），一个服务中的慢调用占满自己的池后不会影响其他服务
+ * 查找顺序：方法的外部配置、实现类方法上的注解、接口方法上的注解、服务的外部配置、实现类上的注解，都没有时使用共享的线程池
+ * 线程池可以是平台线程池或虚拟线程（见 {@link VirtualThreadExecutor}），每个池的指标记录在 executor.{name}.* 中
+ */
+@Slf4j
+public class ServiceExecutors {
+
+    private final Map<String, ExecutorConfig> configs = new ConcurrentHashMap<>();
+
+    private final Map<String, Executor> pools = new ConcurrentHashMap<>();
+
+    // 服务端共享的线程池，服务端启动时设置；rejection为SHARED的线程池满时把任务交给它
+    private volatile Executor sharedPool;
+
+    private final Executor overflow = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            Executor pool = sharedPool;
+            if (pool == null) {
+                throw new RejectedExecutionException("Shared executor is not started");
+            }
+            pool.execute(task);
+        }
+    };
+
+    public void setSharedPool(Executor sharedPool) {
+        this.sharedPool = sharedPool;
+    }
+
+    /**
+     * 外部配置，优先于注解；需要在添加服务之前设置
+     * target为serviceKey（接口名#版本）时作用于整个服务，为 serviceKey.方法名 时作用于该方法的所有重载
+     */
+    public void configure(String target, ExecutorConfig config) {
+        checkSizes(target, config);
+        configs.put(target, config);
+    }
+
+    /**
+     * 返回执行该方法的线程池，没有配置时返回null，表示使用共享的线程池
+     */
+    public Executor resolve(String serviceKey, Class<?> beanClass, Method method) {
+        String methodTarget = serviceKey + "." + method.getName();
+        ExecutorConfig config = configs.get(methodTarget);
+        if (config == null) {
+            config = annotated(implMethod(beanClass, method));
+        }
+        if (config == null) {
+            config = annotated(method);
+        }
+        String name = methodTarget;
+        if (config == null) {
+            config = configs.get(serviceKey);
+            if (config == null && beanClass.isAnnotationPresent(RpcExecutor.class)) {
+                config = ExecutorConfig.from(beanClass.getAnnotation(RpcExecutor.class));
+            }
+            name = serviceKey;
+        }
+        if (config == null) {
+            return null;
+        }
+        if (config.getName() != null && !config.getName().isEmpty()) {
+            name = config.getName();
+        }
+        final ExecutorConfig poolConfig = config;
+        return pools.computeIfAbsent(name, key -> newExecutor(key, poolConfig, overflow));
+    }
+
+    private static ExecutorConfig annotated(Method method) {
+        RpcExecutor annotation = method != null ? method.getAnnotation(RpcExecutor.class) : null;
+        return annotation != null ? ExecutorConfig.from(annotation) : null;
+    }
+
+    private static Method implMethod(Class<?> beanClass, Method method) {
+        try {
+            return beanClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 创建没有溢出去处的线程池（服务端共享的线程池），满时总是拒绝
+     */
+    public static Executor newExecutor(String name, ExecutorConfig config) {
+        return newExecutor(name, config, null);
+    }
+
+    /**
+     * 按参数创建线程池并注册指标，要求虚拟线程而JDK不支持时使用平台线程池
+     * 线程池满时拒绝，由调用方回复过载；rejection为SHARED且有overflow时先交给overflow，它也满时再拒绝
+     * 两种方式都不会在接收请求的I/O线程上执行
+     */
+    private static Executor newExecutor(String name, ExecutorConfig config, Executor overflow) {
+        checkSizes(name, config);
+        Executor fallback = config.getRejection() == RpcExecutor.Rejection.SHARED ? overflow : null;
+        if (config.isVirtualThreads()) {
+            if (VirtualThreadExecutor.AVAILABLE) {
+                log.info("Create virtual thread executor {}: max concurrency {}, queue {}, rejection {}", name,
+                        config.getMaxConcurrency(), config.getQueueSize(), config.getRejection());
+                return new VirtualThreadExecutor(name, config, fallback);
+            }
+            log.warn("Virtual threads are not supported by JDK {}, executor {} falls back to platform threads",
+                    System.getProperty("java.version"), name);
+        }
+        log.info("Create executor {}: core {}, max {}, queue {}, rejection {}", name, config.getCoreSize(),
+                config.getMaxSize(), config.getQueueSize(), config.getRejection());
+        RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
+        if (fallback != null) {
+            handler = (task, executor) -> fallback.execute(task);
+        }
+        ThreadPoolExecutor pool = ThreadPoolUtil.makeServerThreadPool(name, config.getCoreSize(), config.getMaxSize(),
+                config.getQueueSize(), handler);
+        monitor(name, pool);
+        return pool;
+    }
+
+    /**
+     * 虚拟线程不可用时也会按coreSize和maxSize创建平台线程池，所以总是检查
+     */
+    private static void checkSizes(String name, ExecutorConfig config) {
+        if (config.getMaxSize() < config.getCoreSize()) {
+            throw new IllegalArgumentException("Invalid executor " + name + ": coreSize " + config.getCoreSize()
+                    + " is greater than maxSize " + config.getMaxSize());
+        }
+    }
+
+    /**
+     * 注册线程池的指标，拒绝次数通过包装拒绝策略统计
+     * saturation为 (执行中 + 排队) / (最大线程数 + 队列长度)，达到1时新的请求会被拒绝
+     */
+    private static void monitor(String name, final ThreadPoolExecutor pool) {
+        String prefix = "executor." + name + ".";
+        final LongAdder rejected = RpcMetrics.counter(prefix + "rejected");
+        final RejectedExecutionHandler handler = pool.getRejectedExecutionHandler();
+        pool.setRejectedExecutionHandler((r, executor) -> {
+            rejected.increment();
+            handler.rejectedExecution(r, executor);
+        });
+        RpcMetrics.gauge(prefix + "poolSize", pool::getPoolSize);
+        RpcMetrics.gauge(prefix + "maxSize", pool::getMaximumPoolSize);
+        RpcMetrics.gauge(prefix + "active", pool::getActiveCount);
+        RpcMetrics.gauge(prefix + "queued", () -> pool.getQueue().size());
+        RpcMetrics.gauge(prefix + "queueRemaining", () -> pool.getQueue().remainingCapacity());
+        RpcMetrics.gauge(prefix + "completed", pool::getCompletedTaskCount);
+        RpcMetrics.gauge(prefix + "saturation", () -> {
+            int queued = pool.getQueue().size();
+            int capacity = pool.getMaximumPoolSize() + queued + pool.getQueue().remainingCapacity();
+            return (double) (pool.getActiveCount() + queued) / capacity;
+        });
+    }
+
+    /**
+     * 服务端停止时关闭所有独立的线程池，已经提交的请求会执行完
+     */
+    public void shutdown() {
+        for (Executor pool : pools.values()) {
+            shutdown(pool);
+        }
+    }
+
+    public static void shutdown(Executor pool) {
+        if (pool instanceof ExecutorService) {
+            ((ExecutorService) pool).shutdown();
+        } else if (pool instanceof VirtualThreadExecutor) {
+            ((VirtualThreadExecutor) pool).shutdown();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.xyj.executor;
+
+import com.xyj.metrics.RpcMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每个请求一个虚拟线程，服务方法阻塞（JDBC、HTTP）时只挂起虚拟线程，不占用平台线程
+ * 虚拟线程需要JDK 21，而编译时不能直接引用其API：父pom的maven-compiler-plugin配置了release 11，
+ * 优先于各模块pom中的source/target（15，test模块为17），产出的是JDK 11字节码，因此通过反射创建；
+ * 不支持时 {@link #AVAILABLE} 为false，由调用方退回平台线程池
+ * maxConcurrency大于0时最多同时执行这么多个请求，其余的请求在虚拟线程中等待，等待的超过queueSize时交给overflow，没有overflow时拒绝
+ */
+@Slf4j
+class VirtualThreadExecutor implements Executor {
+
+    static final boolean AVAILABLE;
+
+    private static Method ofVirtual;
+    private static Method name;
+    private static Method factory;
+    private static Method newThreadPerTaskExecutor;
+
+    static {
+        boolean available = false;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            //JDK 19/20中虚拟线程是预览特性，没有--enable-preview时创建会失败
+            newThreadFactory("netty-rpc-virtual-probe-").newThread(() -> {
+            });
+            available = true;
+        } catch (Throwable e) {
+            log.debug("Virtual threads are not available: {}", e.toString());
+        }
+        AVAILABLE = available;
+    }
+
+    private final ExecutorService delegate;
+
+    private final Semaphore permits;
+
+    private final int maxConcurrency;
+
+    private final int maxPending;
+
+    // 满时接手任务的线程池，为null时拒绝
+    private final Executor overflow;
+
+    // 已提交还没有执行完的请求数，包括等待并发额度的
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder rejected;
+
+    VirtualThreadExecutor(String name, ExecutorConfig config, Executor overflow) {
+        this.overflow = overflow;
+        this.delegate = newExecutor(newThreadFactory("netty-rpc-virtual-" + name + "-"));
+        this.maxConcurrency = config.getMaxConcurrency();
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        this.maxPending = maxConcurrency > 0 ? maxConcurrency + Math.max(0, config.getQueueSize()) : Integer.MAX_VALUE;
+        String prefix = "executor." + name + ".";
+        this.rejected = RpcMetrics.counter(prefix + "rejected");
+        RpcMetrics.gauge(prefix + "poolSize", pending::get);
+        RpcMetrics.gauge(prefix + "maxSize", () -> maxConcurrency);
+        RpcMetrics.gauge(prefix + "active", running::get);
+        RpcMetrics.gauge(prefix + "queued", () -> Math.max(0, pending.get() - running.get()));
+        RpcMetrics.gauge(prefix + "queueRemaining", () -> maxConcurrency > 0 ? Math.max(0, maxPending - pending.get()) : -1);
+        RpcMetrics.gauge(prefix + "completed", completed::sum);
+        RpcMetrics.gauge(prefix + "saturation", () -> maxConcurrency > 0 ? (double) pending.get() / maxPending : 0.0);
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        try {
+            Object builder = name.invoke(ofVirtual.invoke(null), prefix, 0L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create virtual thread factory", e);
+        }
+    }
+
+    private static ExecutorService newExecutor(ThreadFactory threadFactory) {
+        try {
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create virtual thread executor", e);
+        }
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejected.increment();
+            if (overflow != null) {
+                overflow.execute(task);
+                return;
+            }
+            throw new RejectedExecutionException("Virtual thread executor is full, max concurrency "
+                    + maxConcurrency + ", pending " + maxPending);
+        }
+        try {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (permits != null) {
+                            permits.acquireUninterruptibly();
+                        }
+                        running.incrementAndGet();
+                        try {
+                            task.run();
+                        } finally {
+                            running.decrementAndGet();
+                            if (permits != null) {
+                                permits.release();
+                            }
+                        }
+                    } finally {
+                        pending.decrementAndGet();
+                        completed.increment();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    void shutdown() {
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,338 @@
+package com.xyj.handler;
+
+import com.xyj.annotation.NonBlocking;
+import com.xyj.executor.ServiceExecutors;
+import com.xyj.limit.AdaptiveLimiter;
+import com.xyj.limit.ServiceLimiters;
+import com.xyj.metrics.RpcMetrics;
+import com.xyj.serializer.kryo.KryoRegistration;
+import com.xyj.util.ServiceUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端暴露的所有方法，每个方法分配一个从1开始的id
+ * 握手时把方法签名到id的映射发给客户端，之后的请求只携带id，服务端按下标直接找到预先创建的调用器
+ * 只携带方法名和参数类型的请求（握手前、流式和批量调用）按方法签名查找同一个调用器
+ * 添加服务时整体替换，读取不加锁
+ * 创建调用器时同时确定执行该方法的线程池（见 {@link ServiceExecutors}）和所属服务的并发限制（见 {@link ServiceLimiters}）
+ */
+@Slf4j
+public class MethodTable {
+
+    private volatile MethodInvoker[] invokers = new MethodInvoker[1];//下标0保留，表示没有分配id
+
+    private volatile Map<String, Integer> methodIds = Collections.emptyMap();
+
+    private volatile Map<String, String> methodSerializers = Collections.emptyMap();
+
+    private volatile List<Class<?>> interfaces = Collections.emptyList();
+
+    // 由服务接口生成的Kryo类注册表，握手时下发给客户端
+    private volatile List<String> kryoClasses = Collections.emptyList();
+
+    // 按方法签名查找调用器，用于只携带方法名和参数类型的请求
+    private volatile Map<Signature, MethodInvoker> signatures = Collections.emptyMap();
+
+    // 方法表中没有的方法（服务接口加载不到或没有通过addService登记），第一次调用时创建
+    private final Map<Signature, MethodInvoker> lateInvokers = new ConcurrentHashMap<>();
+
+    // 为空时所有方法都使用共享的线程池
+    private final ServiceExecutors executors;
+
+    // 为空时不限制并发
+    private final ServiceLimiters limiters;
+
+    public MethodTable() {
+        this(null, null);
+    }
+
+    public MethodTable(ServiceExecutors executors, ServiceLimiters limiters) {
+        this.executors = executors;
+        this.limiters = limiters;
+    }
+
+    public void addService(String interfaceName, String version, Object serviceBean) {
+        addService(interfaceName, version, serviceBean, null);
+    }
+
+    /**
+     * 登记一个服务接口的所有方法，接口找不到时只能通过类名和方法名调用
+     * serializer不为空时客户端调用这些方法使用该序列化方式
+     */
+    public synchronized void addService(String interfaceName, String version, Object serviceBean,
+                                        String serializer) {
+        Class<?> interfaceClass;
+        try {
+            interfaceClass = Class.forName(interfaceName, false, serviceBean.getClass().getClassLoader());
+        } catch (ClassNotFoundException e) {
+            log.warn("Can not load service interface {}, its methods will not be interned", interfaceName);
+            return;
+        }
+        String serviceKey = ServiceUtil.makeServiceKey(interfaceName, version);
+        Method[] methods = interfaceClass.getMethods();
+        //按签名排序，保证同一份服务每次启动分配的id相同
+        Arrays.sort(methods, Comparator.comparing(Method::toGenericString));
+        MethodInvoker[] newInvokers = Arrays.copyOf(invokers, invokers.length + methods.length);
+        Map<String, Integer> newMethodIds = new HashMap<>(methodIds);
+        Map<String, String> newMethodSerializers = new HashMap<>(methodSerializers);
+        Map<Signature, MethodInvoker> newSignatures = new HashMap<>(signatures);
+        int id = invokers.length;
+        for (Method method : methods) {
+            String methodKey = ServiceUtil.makeMethodKey(serviceKey, method.getName(), method.getParameterTypes());
+            if (newMethodIds.containsKey(methodKey)) {
+                continue;
+            }
+            try {
+                newInvokers[id] = new MethodInvoker(serviceBean, interfaceName, version, method,
+                        executorOf(serviceKey, serviceBean, method), limiterOf(serviceKey));
+            } catch (IllegalAccessException e) {
+                log.warn("Can not access method {}, it will not be interned", methodKey);
+                continue;
+            }
+            newMethodIds.put(methodKey, id);
+            newSignatures.put(new Signature(interfaceName, version, method.getName(), method.getParameterTypes()),
+                    newInvokers[id]);
+            if (serializer != null && !serializer.isEmpty()) {
+                newMethodSerializers.put(methodKey, serializer);
+            }
+            id++;
+        }
+        invokers = Arrays.copyOf(newInvokers, id);
+        methodIds = Collections.unmodifiableMap(newMethodIds);
+        methodSerializers = Collections.unmodifiableMap(newMethodSerializers);
+        signatures = Collections.unmodifiableMap(newSignatures);
+        List<Class<?>> newInterfaces = new ArrayList<>(interfaces);
+        newInterfaces.add(interfaceClass);
+        interfaces = Collections.unmodifiableList(newInterfaces);
+        kryoClasses = KryoRegistration.classNames(newInterfaces);
+    }
+
+    /**
+     * 按id查找调用器，不存在时返回null
+     */
+    public MethodInvoker get(int methodId) {
+        MethodInvoker[] current = invokers;
+        return methodId > 0 && methodId < current.length ? current[methodId] : null;
+    }
+
+    /**
+     * 按方法签名查找调用器，包括之前通过create创建的，不存在时返回null
+     */
+    public MethodInvoker get(String className, String version, String methodName, Class<?>[] parameterTypes) {
+        Signature signature = new Signature(className, version, methodName, parameterTypes);
+        MethodInvoker invoker = signatures.get(signature);
+        return invoker != null ? invoker : lateInvokers.get(signature);
+    }
+
+    /**
+     * 为方法表中没有的方法按服务对象的公有方法创建调用器并缓存
+     */
+    public MethodInvoker create(Object serviceBean, String className, String version, String methodName,
+                                Class<?>[] parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+        Method method = serviceBean.getClass().getMethod(methodName, parameterTypes);
+        String serviceKey = ServiceUtil.makeServiceKey(className, version);
+        MethodInvoker invoker = new MethodInvoker(serviceBean, className, version, method,
+                executorOf(serviceKey, serviceBean, method), limiterOf(serviceKey));
+        lateInvokers.put(new Signature(className, version, methodName, parameterTypes), invoker);
+        return invoker;
+    }
+
+    private Executor executorOf(String serviceKey, Object serviceBean, Method method) {
+        return executors != null ? executors.resolve(serviceKey, serviceBean.getClass(), method) : null;
+    }
+
+    private AdaptiveLimiter limiterOf(String serviceKey) {
+        return limiters != null ? limiters.resolve(serviceKey) : null;
+    }
+
+    public Map<String, Integer> getMethodIds() {
+        return methodIds;
+    }
+
+    public Map<String, String> getMethodSerializers() {
+        return methodSerializers;
+    }
+
+    /**
+     * 已登记的服务接口
+     */
+    public List<Class<?>> getInterfaces() {
+        return interfaces;
+    }
+
+    public List<String> getKryoClasses() {
+        return kryoClasses;
+    }
+
+    /**
+     * 查找调用器用的方法签名，不拼接字符串；version为空白时与没有version相同
+     */
+    private static final class Signature {
+        private final String className;
+        private final String version;
+        private final String methodName;
+        private final Class<?>[] parameterTypes;
+        private final int hash;
+
+        Signature(String className, String version, String methodName, Class<?>[] parameterTypes) {
+            this.className = className;
+            this.version = version == null || version.trim().isEmpty() ? "" : version;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes == null ? new Class<?>[0] : parameterTypes;
+            this.hash = 31 * (31 * (31 * className.hashCode() + this.version.hashCode()) + methodName.hashCode())
+                    + Arrays.hashCode(this.parameterTypes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            Signature other = (Signature) o;
+            return hash == other.hash && className.equals(other.className) && version.equals(other.version)
+                    && methodName.equals(other.methodName) && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 预先解析好的服务方法：绑定了服务对象、参数展开为Object[]的MethodHandle
+     * 服务方法抛出的异常直接抛出，不再包装为InvocationTargetException
+     * 标注了 {@link NonBlocking} 的方法在I/O线程上执行，超过时间预算的次数记录在 server.nonBlocking.overrun.{方法签名} 中
+     */
+    public static class MethodInvoker {
+        private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+        private final MethodHandle handle;
+        private final String className;
+        private final String version;
+        private final Method method;
+        private final Executor executor;
+        private final AdaptiveLimiter limiter;
+        private final long budgetNanos;//不为0时在I/O线程上执行
+        private final LongAdder overruns;
+        private final AtomicLong lastReported = new AtomicLong();
+
+        MethodInvoker(Object serviceBean, String className, String version, Method method, Executor executor,
+                      AdaptiveLimiter limiter) throws IllegalAccessException {
+            MethodHandle target = unreflect(method).bindTo(serviceBean);
+            //参数和返回值先转为Object（基本类型拆装箱，void返回null），再把Object[]展开为参数
+            target = target.asType(target.type().generic());
+            this.handle = target.asSpreader(Object[].class, method.getParameterCount()).asType(INVOKER_TYPE);
+            this.className = className;
+            this.version = version;
+            this.method = method;
+            this.executor = executor;
+            this.limiter = limiter;
+            NonBlocking nonBlocking = nonBlocking(serviceBean.getClass(), method);
+            this.budgetNanos = nonBlocking != null ? TimeUnit.MICROSECONDS.toNanos(Math.max(1, nonBlocking.budgetMicros())) : 0;
+            this.overruns = nonBlocking != null ? RpcMetrics.counter("server.nonBlocking.overrun." + ServiceUtil.makeMethodKey(
+                    ServiceUtil.makeServiceKey(className, version), method.getName(), method.getParameterTypes())) : null;
+        }
+
+        private static NonBlocking nonBlocking(Class<?> beanClass, Method method) {
+            try {
+                NonBlocking annotation = beanClass.getMethod(method.getName(), method.getParameterTypes())
+                        .getAnnotation(NonBlocking.class);
+                if (annotation != null) {
+                    return annotation;
+                }
+            } catch (NoSuchMethodException e) {
+                //接口方法没有对应的公有实现，只看接口上的注解
+            }
+            return method.getAnnotation(NonBlocking.class);
+        }
+
+        private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+            try {
+                return MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                //接口本身不是公有的（例如嵌套在包内可见的类中）
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method);
+            }
+        }
+
+        public Object invoke(Object[] parameters) throws Throwable {
+            return handle.invokeExact(parameters);
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public boolean isNonBlocking() {
+            return budgetNanos > 0;
+        }
+
+        /**
+         * 记录一次在I/O线程上执行的耗时，返回是否超过了预算
+         */
+        boolean recordInline(long elapsedNanos) {
+            if (elapsedNanos <= budgetNanos) {
+                return false;
+            }
+            overruns.increment();
+            return true;
+        }
+
+        /**
+         * 超过预算时是否打印警告，每个方法每分钟最多一次
+         */
+        boolean reportOverrun() {
+            long now = System.nanoTime();
+            long last = lastReported.get();
+            return (last == 0 || now - last > TimeUnit.MINUTES.toNanos(1)) && lastReported.compareAndSet(last, now);
+        }
+
+        public long getBudgetNanos() {
+            return budgetNanos;
+        }
+
+        /**
+         * 该方法独立的线程池，为null时使用共享的线程池
+         */
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * 所属服务的并发限制，为null时不限制
+         */
+        public AdaptiveLimiter getLimiter() {
+            return limiter;
+        }
+    }
+}
@@ -1,81 +1,131 @@
 package com.xyj.handler;
 
 
+import com.xyj.codec.ChannelSession;
+import com.xyj.codec.RpcProtocol;
+import com.xyj.context.RpcContext;
+import com.xyj.limit.AdaptiveLimiter;
 import com.xyj.message.Beat;
+import com.xyj.message.Overloaded;
+import com.xyj.message.RpcBatchRequest;
+import com.xyj.message.RpcBatchResponse;
+import com.xyj.message.RpcMessage;
 import com.xyj.message.RpcRequest;
 import com.xyj.message.RpcResponse;
+import com.xyj.message.StreamFrame;
+import com.xyj.metrics.RpcMetrics;
 import com.xyj.util.ServiceUtil;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.timeout.IdleStateEvent;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.cglib.reflect.FastClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * RPC Handler（RPC request processor）
  * 处理请求连接
  */
 @Slf4j
-public class RpcServerHandler extends SimpleChannelInboundHandler<RpcRequest> {
+public class RpcServerHandler extends SimpleChannelInboundHandler<RpcMessage> {
+
+    // 在I/O线程上执行的调用次数和其中超过时间预算的次数
+    private static final LongAdder INLINE_CALLS = RpcMetrics.counter("server.nonBlocking.inline");
+    private static final LongAdder INLINE_OVERRUNS = RpcMetrics.counter("server.nonBlocking.overrun");
+    // 因并发限制或线程池已满没有执行的请求数
+    private static final LongAdder OVERLOADED = RpcMetrics.counter("server.overloaded");
+    // 执行前已过截止时间而丢弃的请求数，以及执行完时已过截止时间而不再发送的响应数
+    private static final LongAdder DEADLINE_EXPIRED = RpcMetrics.counter("server.deadline.expired");
+    private static final LongAdder DEADLINE_LATE = RpcMetrics.counter("server.deadline.late");
+
+    private static final String OVERLOADED_ERROR = "Server is overloaded";
+    // 批量调用中因并发限制或线程池已满没有执行的调用的结果
+    private static final BatchCallResult OVERLOADED_CALL = new BatchCallResult(null, OVERLOADED_ERROR, false);
+    // 批量调用中开始前已过截止时间而没有执行的调用的结果
+    private static final BatchCallResult EXPIRED_CALL = new BatchCallResult(null, "Deadline exceeded", false);
 
     private final Map<String, Object> handlerMap;
-    private final ThreadPoolExecutor serverHandlerPool;
+    private final Executor serverHandlerPool;
+    private final MethodTable methodTable;
+    private final Map<Long, ServerStream> streams = new ConcurrentHashMap<>();//该连接上进行中的流式调用
+    private final Map<Long, ServerCall> calls = new ConcurrentHashMap<>();//该连接上进行中的客户端流/双向流调用
+
+    public RpcServerHandler(Map<String, Object> handlerMap, final Executor threadPoolExecutor) {
+        this(handlerMap, threadPoolExecutor, new MethodTable());
+    }
 
-    public RpcServerHandler(Map<String, Object> handlerMap, final ThreadPoolExecutor threadPoolExecutor) {
+    public RpcServerHandler(Map<String, Object> handlerMap, final Executor threadPoolExecutor,
+                            MethodTable methodTable) {
         this.handlerMap = handlerMap;
         this.serverHandlerPool = threadPoolExecutor;
+        this.methodTable = methodTable;
     }
 
 
+    /**
+     * 在方法表中查找调用器：握手后的请求只携带方法id，按下标查找；其他请求按方法签名查找，不存在时返回null
+     * @param request
+     * @return
+     */
+    private MethodTable.MethodInvoker lookup(RpcRequest request) {
+        if (request.getMethodId() > 0) {
+            return methodTable.get(request.getMethodId());
+        }
+        return methodTable.get(request.getClassName(), request.getVersion(), request.getMethodName(),
+                request.getParameterTypes());
+    }
+
     /**
      * 根据RPC请求执行方法得到结果
+     * 调用器在添加服务时已经创建好，方法表中没有时按服务对象创建
      * @param request
+     * @param invoker lookup的结果
      * @return
      * @throws Throwable
      */
-    private Object handle(RpcRequest request) throws Throwable {
+    private Object handle(RpcRequest request, MethodTable.MethodInvoker invoker) throws Throwable {
+        if (invoker != null) {
+            return invoker.invoke(request.getParameters());
+        }
+        if (request.getMethodId() > 0) {
+            throw new IllegalArgumentException("Unknown method id: " + request.getMethodId());
+        }
         String className = request.getClassName();
         String version = request.getVersion();
-        String serviceKey = ServiceUtil.makeServiceKey(className, version);
-        Object serviceBean = handlerMap.get(serviceKey);
+        Object serviceBean = handlerMap.get(ServiceUtil.makeServiceKey(className, version));
         if (serviceBean == null) {
             log.error("Can not find service implement with interface name: {} and version: {}", className, version);
             return null;
         }
+        invoker = methodTable.create(serviceBean, className, version, request.getMethodName(),
+                request.getParameterTypes());
+        return invoker.invoke(request.getParameters());
+    }
 
-        Class<?> serviceClass = serviceBean.getClass();
-        String methodName = request.getMethodName();
-        Class<?>[] parameterTypes = request.getParameterTypes();
-        Object[] parameters = request.getParameters();
-
-        log.debug(serviceClass.getName());
-        log.debug(methodName);
-        for (int i = 0; i < parameterTypes.length; ++i) {
-            log.debug(parameterTypes[i].getName());
-        }
-        for (int i = 0; i < parameters.length; ++i) {
-            log.debug(parameters[i].toString());
-        }
-
-        // JDK reflect
-//        Method method = serviceClass.getMethod(methodName, parameterTypes);
-//        method.setAccessible(true);
-//        return method.invoke(serviceBean, parameters);
-
-        // Cglib reflect
-        FastClass serviceFastClass = FastClass.create(serviceClass);
-//        FastMethod serviceFastMethod = serviceFastClass.getMethod(methodName, parameterTypes);
-//        return serviceFastMethod.invoke(serviceBean, parameters);
-        // for higher-performance
-        int methodIndex = serviceFastClass.getIndex(methodName, parameterTypes);
-        return serviceFastClass.invoke(methodIndex, serviceBean, parameters);
+    /**
+     * 方法声明了独立的线程池时使用该线程池，否则使用共享的线程池
+     */
+    private Executor executorOf(MethodTable.MethodInvoker invoker) {
+        Executor executor = invoker != null ? invoker.getExecutor() : null;
+        return executor != null ? executor : serverHandlerPool;
     }
 
     /**
@@ -86,36 +136,654 @@ public class RpcServerHandler extends SimpleChannelInboundHandler<RpcRequest> {
      */
 
     @Override
-    protected void messageReceived(ChannelHandlerContext channelHandlerContext, RpcRequest rpcRequest) throws Exception {
-        // 检测是否为心跳
-        if (Beat.BEAT_ID.equalsIgnoreCase(rpcRequest.getRequestId())) {
-            log.info("Server read heartbeat ping");
+    protected void messageReceived(ChannelHandlerContext channelHandlerContext, RpcMessage message) throws Exception {
+        if (message instanceof StreamFrame) {
+            handleStreamFrame((StreamFrame) message);
             return;
         }
-
-        serverHandlerPool.execute(new Runnable() {
+        if (message instanceof RpcBatchRequest) {
+            handleBatch(channelHandlerContext, (RpcBatchRequest) message);
+            return;
+        }
+        RpcRequest rpcRequest = (RpcRequest) message;
+        if (rpcRequest.isStream()) {
+            handleStreamRequest(channelHandlerContext, rpcRequest);
+            return;
+        }
+        if (rpcRequest.getTimeout() > 0) {
+            //按收到请求的时间换算截止时间，之后在线程池中排队的时间也计算在内
+            rpcRequest.setDeadline(RpcContext.deadlineAfter(rpcRequest.getTimeout()));
+        }
+        final MethodTable.MethodInvoker invoker = lookup(rpcRequest);
+        final AdaptiveLimiter limiter = invoker != null ? invoker.getLimiter() : null;
+        if (limiter != null && !limiter.tryAcquire()) {
+            overloaded(channelHandlerContext, rpcRequest);
+            return;
+        }
+        final long acquiredAt = limiter != null ? System.nanoTime() : 0;
+        if (invoker != null && invoker.isNonBlocking()) {
+            //不阻塞的方法直接在I/O线程上执行并写出响应，不切换线程
+            process(channelHandlerContext, rpcRequest, invoker, true, acquiredAt);
+            return;
+        }
+        Runnable task = new Runnable() {
             @Override
             public void run() {
-                log.info("Receive request " + rpcRequest.getRequestId());
-                RpcResponse response = new RpcResponse();
-                response.setRequestId(rpcRequest.getRequestId());
-                try {
-                    Object result = handle(rpcRequest);
-                    response.setResult(result);
-                } catch (Throwable t) {
-                    response.setError(t.toString());
-                    log.error("RPC Server handle request error", t);
+                process(channelHandlerContext, rpcRequest, invoker, false, acquiredAt);
+            }
+        };
+        try {
+            executorOf(invoker).execute(task);
+        } catch (RejectedExecutionException e) {
+            //线程池已满时只让这个请求失败，不关闭连接
+            log.warn("Reject request {}: {}", rpcRequest.getRequestId(), e.toString());
+            if (limiter != null) {
+                limiter.cancel();
+            }
+            overloaded(channelHandlerContext, rpcRequest);
+        }
+    }
+
+    /**
+     * 过载时请求没有执行：支持OVERLOADED帧的客户端会换一个节点重试，其他客户端收到错误响应
+     */
+    private void overloaded(ChannelHandlerContext ctx, RpcRequest request) {
+        OVERLOADED.increment();
+        if (ChannelSession.get(ctx.channel()).isOverloadFrame()) {
+            ctx.writeAndFlush(Overloaded.of(request.getRequestId()));
+            return;
+        }
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer());
+        response.setError(OVERLOADED_ERROR);
+        ctx.writeAndFlush(response);
+    }
+
+    /**
+     * 执行请求并写回响应，inline为true时在I/O线程上执行
+     * 方法返回CompletionStage时当前线程立即返回，等它完成后再写回响应
+     * acquiredAt不为0时请求占用了服务的并发名额，得到结果后归还
+     * 请求在线程池中排队到了截止时间时直接丢弃，方法中发起的RPC调用使用该请求剩余的时间
+     */
+    private void process(final ChannelHandlerContext ctx, final RpcRequest request,
+                         final MethodTable.MethodInvoker invoker, boolean inline, final long acquiredAt) {
+        log.debug("Receive request {}", request.getRequestId());
+        if (RpcContext.isExpired(request.getDeadline())) {
+            //客户端已经不再等待，不执行也不响应
+            DEADLINE_EXPIRED.increment();
+            log.debug("Drop request {}, deadline exceeded", request.getRequestId());
+            cancel(invoker, acquiredAt);
+            return;
+        }
+        final RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer());
+        long start = inline ? System.nanoTime() : 0;
+        Object result = null;
+        //服务方法中发起的RPC调用继承该请求剩余的时间
+        long previousDeadline = RpcContext.setDeadline(request.getDeadline());
+        try {
+            result = handle(request, invoker);
+        } catch (Throwable t) {
+            response.setError(t.toString());
+            log.error("RPC Server handle request error", t);
+        } finally {
+            RpcContext.setDeadline(previousDeadline);
+        }
+        if (inline) {
+            checkBudget(invoker, System.nanoTime() - start);
+        }
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, failure) -> {
+                if (failure != null) {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause() : failure;
+                    response.setError(cause.toString());
+                    log.error("RPC Server async request error", cause);
+                } else {
+                    response.setResult(value);
                 }
-                channelHandlerContext.writeAndFlush(response).addListener(new ChannelFutureListener() {
+                release(invoker, acquiredAt);
+                writeResponse(ctx, request, response);
+            });
+            return;
+        }
+        response.setResult(result);
+        release(invoker, acquiredAt);
+        writeResponse(ctx, request, response);
+    }
+
+    private static void release(MethodTable.MethodInvoker invoker, long acquiredAt) {
+        if (acquiredAt != 0) {
+            invoker.getLimiter().release(acquiredAt);
+        }
+    }
+
+    /**
+     * 请求没有执行（例如排队到了截止时间），只归还名额，不把这段时间计入限制器的延迟样本
+     */
+    private static void cancel(MethodTable.MethodInvoker invoker, long acquiredAt) {
+        if (acquiredAt != 0) {
+            invoker.getLimiter().cancel();
+        }
+    }
+
+    /**
+     * 批量调用中的一个调用结束：执行过的按耗时归还名额，没有执行的只取消占用
+     */
+    private static void release(MethodTable.MethodInvoker invoker, long acquiredAt, BatchCallResult result) {
+        if (result.invoked) {
+            release(invoker, acquiredAt);
+        } else {
+            cancel(invoker, acquiredAt);
+        }
+    }
+
+    private void writeResponse(final ChannelHandlerContext ctx, final RpcRequest request, final RpcResponse response) {
+        if (RpcContext.isExpired(request.getDeadline())) {
+            //执行完时客户端已经超时，不再序列化和发送结果
+            DEADLINE_LATE.increment();
+            log.debug("Discard response for request {}, deadline exceeded", request.getRequestId());
+            return;
+        }
+        ctx.writeAndFlush(response).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture channelFuture) throws Exception {
+                if (channelFuture.isSuccess()) {
+                    log.debug("Send response for request {}", request.getRequestId());
+                } else if (channelFuture.cause() instanceof EncoderException && !response.isError()) {
+                    //结果无法序列化时改为返回错误，避免客户端一直等待
+                    log.error("Encode response for request {} error", request.getRequestId());
+                    RpcResponse error = new RpcResponse();
+                    error.setRequestId(request.getRequestId());
+                    error.setError(channelFuture.cause().toString());
+                    ctx.writeAndFlush(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在I/O线程上执行的方法超过时间预算时计数，并按方法限频打印警告
+     */
+    private void checkBudget(MethodTable.MethodInvoker invoker, long elapsedNanos) {
+        INLINE_CALLS.increment();
+        if (!invoker.recordInline(elapsedNanos)) {
+            return;
+        }
+        INLINE_OVERRUNS.increment();
+        if (invoker.reportOverrun()) {
+            log.warn("Non-blocking method {}.{} ran {} us on the event loop, budget is {} us",
+                    invoker.getClassName(), invoker.getMethod().getName(), TimeUnit.NANOSECONDS.toMicros(elapsedNanos),
+                    TimeUnit.NANOSECONDS.toMicros(invoker.getBudgetNanos()));
+        }
+    }
+
+
+    /**
+     * 批量调用：服务只查找一次，按请求并行或顺序执行每个调用
+     * progressive时每个调用完成后立即返回结果，否则全部完成后一次返回
+     * 每个调用和单个请求一样占用服务的并发名额，超过限制或线程池已满的调用返回过载错误；
+     * 整个批量调用共用一个截止时间，到期后还没有开始的调用不再执行，结果也不再发送
+     * @param ctx
+     * @param batch
+     */
+    private void handleBatch(final ChannelHandlerContext ctx, final RpcBatchRequest batch) {
+        String invalid = validateBatch(batch);
+        if (invalid != null) {
+            log.warn("Invalid batch request {}: {}", batch.getRequestId(), invalid);
+            rejectBatch(ctx, batch, "Invalid batch request: " + invalid);
+            return;
+        }
+        final int size = batch.getMethodIndexes().length;
+        log.debug("Receive batch request {}, size: {}", batch.getRequestId(), size);
+        if (size == 0) {
+            ctx.writeAndFlush(newBatchResponse(batch.getRequestId(), 0));
+            return;
+        }
+        if (batch.getTimeout() > 0) {
+            batch.setDeadline(RpcContext.deadlineAfter(batch.getTimeout()));
+        }
+        final BatchInvokers invokers = resolveBatch(batch);
+        final RpcBatchResponse response = batch.isProgressive() ? null : newBatchResponse(batch.getRequestId(), size);
+        if (batch.isOrdered()) {
+            submitOrdered(ctx, batch, invokers, response, 0);
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(size);
+        for (int i = 0; i < size; i++) {
+            final int index = i;
+            final MethodTable.MethodInvoker invoker = invokers.invokers[batch.getMethodIndexes()[index]];
+            final AdaptiveLimiter limiter = invoker != null ? invoker.getLimiter() : null;
+            if (limiter != null && !limiter.tryAcquire()) {
+                OVERLOADED.increment();
+                finishBatchCall(ctx, batch, response, remaining, index, OVERLOADED_CALL);
+                continue;
+            }
+            final long acquiredAt = limiter != null ? System.nanoTime() : 0;
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    invokeBatchCall(invokers, batch, index).thenAccept(result -> {
+                        release(invoker, acquiredAt, result);
+                        finishBatchCall(ctx, batch, response, remaining, index, result);
+                    });
+                }
+            };
+            try {
+                executorOf(invoker).execute(task);
+            } catch (RejectedExecutionException e) {
+                //线程池已满时只让这个调用失败，不丢弃其他调用的结果
+                log.warn("Reject call {} of batch {}: {}", index, batch.getRequestId(), e.toString());
+                if (limiter != null) {
+                    limiter.cancel();
+                }
+                OVERLOADED.increment();
+                finishBatchCall(ctx, batch, response, remaining, index, OVERLOADED_CALL);
+            }
+        }
+    }
+
+    private void finishBatchCall(ChannelHandlerContext ctx, RpcBatchRequest batch, RpcBatchResponse response,
+                                 AtomicInteger remaining, int index, BatchCallResult result) {
+        completeBatchCall(ctx, batch, response, index, result);
+        if (remaining.decrementAndGet() == 0 && response != null) {
+            writeBatchResponse(ctx, batch, response);
+        }
+    }
+
+    /**
+     * 顺序执行：从index开始的调用逐个提交到各自方法所在的线程池，前一个完成后才提交下一个，不破坏线程池之间的隔离
+     * 异步方法返回的future完成时再提交下一个，等待期间不占用线程
+     * 找不到方法、超过并发限制或线程池已满的调用直接失败，接着处理下一个；全部完成后一次返回时在最后写出结果
+     */
+    private void submitOrdered(final ChannelHandlerContext ctx, final RpcBatchRequest batch,
+                               final BatchInvokers invokers, final RpcBatchResponse response, int index) {
+        int size = batch.getMethodIndexes().length;
+        for (int i = index; i < size; i++) {
+            final int current = i;
+            final MethodTable.MethodInvoker invoker = invokers.invokers[batch.getMethodIndexes()[current]];
+            if (invoker == null) {
+                completeBatchCall(ctx, batch, response, current,
+                        new BatchCallResult(null, invokers.errors[batch.getMethodIndexes()[current]], false));
+                continue;
+            }
+            final AdaptiveLimiter limiter = invoker.getLimiter();
+            if (limiter != null && !limiter.tryAcquire()) {
+                OVERLOADED.increment();
+                completeBatchCall(ctx, batch, response, current, OVERLOADED_CALL);
+                continue;
+            }
+            final long acquiredAt = limiter != null ? System.nanoTime() : 0;
+            try {
+                executorOf(invoker).execute(new Runnable() {
                     @Override
-                    public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                        log.info("Send response for request " + rpcRequest.getRequestId());
+                    public void run() {
+                        invokeBatchCall(invokers, batch, current).thenAccept(result -> {
+                            release(invoker, acquiredAt, result);
+                            completeBatchCall(ctx, batch, response, current, result);
+                            submitOrdered(ctx, batch, invokers, response, current + 1);
+                        });
                     }
                 });
+                return;
+            } catch (RejectedExecutionException e) {
+                log.warn("Reject call {} of batch {}: {}", current, batch.getRequestId(), e.toString());
+                if (limiter != null) {
+                    limiter.cancel();
+                }
+                OVERLOADED.increment();
+                completeBatchCall(ctx, batch, response, current, OVERLOADED_CALL);
             }
+        }
+        if (response != null) {
+            writeBatchResponse(ctx, batch, response);
+        }
+    }
+
+    /**
+     * 检查批量请求中各数组的长度和方法下标，返回错误描述，没有问题时返回null
+     * 在event loop上执行，不合法的请求不能在这里抛出越界异常
+     */
+    private static String validateBatch(RpcBatchRequest batch) {
+        if (batch.getMethodIndexes() == null || batch.getParameters() == null
+                || batch.getMethodNames() == null || batch.getParameterTypes() == null) {
+            return "missing methods or calls";
+        }
+        if (batch.getMethodIndexes().length != batch.getParameters().length) {
+            return batch.getMethodIndexes().length + " calls but " + batch.getParameters().length + " parameter lists";
+        }
+        int methods = batch.getMethodNames().length;
+        if (batch.getParameterTypes().length != methods) {
+            return methods + " methods but " + batch.getParameterTypes().length + " parameter type lists";
+        }
+        for (int methodIndex : batch.getMethodIndexes()) {
+            if (methodIndex < 0 || methodIndex >= methods) {
+                return "method index " + methodIndex + " out of " + methods + " methods";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 整个批量请求不能执行时，每个调用都以同一个错误失败；没有调用列表时回复空结果
+     */
+    private void rejectBatch(ChannelHandlerContext ctx, RpcBatchRequest batch, String error) {
+        int size = batch.getMethodIndexes() != null ? batch.getMethodIndexes().length : 0;
+        RpcBatchResponse response = newBatchResponse(batch.getRequestId(), size);
+        for (int i = 0; i < size; i++) {
+            response.getIndexes()[i] = i;
+            response.getErrors()[i] = error;
+        }
+        ctx.writeAndFlush(response);
+    }
+
+    /**
+     * 批量调用中的每个方法只查找一次调用器
+     */
+    private BatchInvokers resolveBatch(RpcBatchRequest batch) {
+        String[] methodNames = batch.getMethodNames();
+        BatchInvokers resolved = new BatchInvokers(methodNames.length);
+        Object serviceBean = null;
+        for (int i = 0; i < methodNames.length; i++) {
+            resolved.invokers[i] = methodTable.get(batch.getClassName(), batch.getVersion(), methodNames[i],
+                    batch.getParameterTypes()[i]);
+            if (resolved.invokers[i] != null) {
+                continue;
+            }
+            if (serviceBean == null) {
+                serviceBean = handlerMap.get(ServiceUtil.makeServiceKey(batch.getClassName(), batch.getVersion()));
+            }
+            if (serviceBean == null) {
+                resolved.errors[i] = "Can not find service implement with interface name: "
+                        + batch.getClassName() + " and version: " + batch.getVersion();
+                continue;
+            }
+            try {
+                resolved.invokers[i] = methodTable.create(serviceBean, batch.getClassName(), batch.getVersion(),
+                        methodNames[i], batch.getParameterTypes()[i]);
+            } catch (Exception e) {
+                resolved.errors[i] = e.toString();
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * 执行批量调用中的一个调用，同步方法返回已完成的结果；异步方法返回的future完成时结果才完成，当前线程不等待
+     */
+    private CompletionStage<BatchCallResult> invokeBatchCall(BatchInvokers invokers, RpcBatchRequest batch, int index) {
+        int methodIndex = batch.getMethodIndexes()[index];
+        MethodTable.MethodInvoker invoker = invokers.invokers[methodIndex];
+        if (invoker == null) {
+            return CompletableFuture.completedFuture(new BatchCallResult(null, invokers.errors[methodIndex], false));
+        }
+        if (RpcContext.isExpired(batch.getDeadline())) {
+            //客户端已经不再等待，后面的写出也会丢弃这个结果
+            DEADLINE_EXPIRED.increment();
+            return CompletableFuture.completedFuture(EXPIRED_CALL);
+        }
+        Object result;
+        long previousDeadline = RpcContext.setDeadline(batch.getDeadline());
+        try {
+            result = invoker.invoke(batch.getParameters()[index]);
+        } catch (Throwable t) {
+            log.error("RPC Server handle batch call error", t);
+            return CompletableFuture.completedFuture(new BatchCallResult(null, t.toString()));
+        } finally {
+            RpcContext.setDeadline(previousDeadline);
+        }
+        if (!(result instanceof CompletionStage)) {
+            return CompletableFuture.completedFuture(new BatchCallResult(result, null));
+        }
+        return ((CompletionStage<?>) result).handle((value, failure) -> {
+            if (failure == null) {
+                return new BatchCallResult(value, null);
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            log.error("RPC Server async batch call error", cause);
+            return new BatchCallResult(null, cause.toString());
         });
     }
 
+    private void completeBatchCall(ChannelHandlerContext ctx, RpcBatchRequest batch, RpcBatchResponse response,
+                                   int index, BatchCallResult result) {
+        if (response != null) {
+            //每个调用只写自己的下标，全部完成后由最后一个调用发送，不需要同步
+            response.getIndexes()[index] = index;
+            response.getResults()[index] = result.result;
+            response.getErrors()[index] = result.error;
+            return;
+        }
+        RpcBatchResponse single = newBatchResponse(batch.getRequestId(), 1);
+        single.getIndexes()[0] = index;
+        single.getResults()[0] = result.result;
+        single.getErrors()[0] = result.error;
+        writeBatchResponse(ctx, batch, single);
+    }
+
+    private void writeBatchResponse(ChannelHandlerContext ctx, RpcBatchRequest batch, RpcBatchResponse response) {
+        if (RpcContext.isExpired(batch.getDeadline())) {
+            DEADLINE_LATE.increment();
+            log.debug("Discard response for batch {}, deadline exceeded", batch.getRequestId());
+            return;
+        }
+        ctx.writeAndFlush(response);
+    }
+
+    private RpcBatchResponse newBatchResponse(long requestId, int size) {
+        RpcBatchResponse response = new RpcBatchResponse();
+        response.setRequestId(requestId);
+        response.setIndexes(new int[size]);
+        response.setResults(new Object[size]);
+        response.setErrors(new String[size]);
+        return response;
+    }
+
+    private static class BatchInvokers {
+        private final MethodTable.MethodInvoker[] invokers;
+        private final String[] errors;
+
+        BatchInvokers(int size) {
+            this.invokers = new MethodTable.MethodInvoker[size];
+            this.errors = new String[size];
+        }
+    }
+
+    private static class BatchCallResult {
+        private final Object result;
+        private final String error;
+        // 方法是否执行过，没有执行的调用不计入限制器的延迟样本
+        private final boolean invoked;
+
+        BatchCallResult(Object result, String error) {
+            this(result, error, true);
+        }
+
+        BatchCallResult(Object result, String error, boolean invoked) {
+            this.result = result;
+            this.error = error;
+            this.invoked = invoked;
+        }
+    }
+
+    /**
+     * 流式调用：在event loop上先登记，保证之后到达的DEMAND帧能找到对应的流，再在线程池中执行方法
+     * 流在结束之前一直占用服务的一个并发名额，超过限制或线程池已满时与单个请求一样回复过载
+     * @param ctx
+     * @param rpcRequest
+     */
+    private void handleStreamRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest) {
+        final long requestId = rpcRequest.getRequestId();
+        Class<?>[] parameterTypes = rpcRequest.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (parameterTypes[i] == StreamObserver.class) {
+                handleCallRequest(ctx, rpcRequest, i);
+                return;
+            }
+        }
+        final MethodTable.MethodInvoker invoker = lookup(rpcRequest);
+        final AdaptiveLimiter limiter = invoker != null ? invoker.getLimiter() : null;
+        if (limiter != null && !limiter.tryAcquire()) {
+            overloaded(ctx, rpcRequest);
+            return;
+        }
+        Executor executor = executorOf(invoker);
+        final ServerStream stream = new ServerStream(ctx, requestId, executor,
+                onStreamTerminate(streams, requestId, limiter));
+        streams.put(requestId, stream);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    log.debug("Receive stream request {}", requestId);
+                    Object result;
+                    try {
+                        result = handle(rpcRequest, invoker);
+                    } catch (Throwable t) {
+                        log.error("RPC Server handle stream request error", t);
+                        stream.complete(t.toString());
+                        return;
+                    }
+                    stream.start(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Reject stream request {}: {}", requestId, e.toString());
+            streams.remove(requestId);
+            if (limiter != null) {
+                limiter.cancel();
+            }
+            overloaded(ctx, rpcRequest);
+        }
+    }
+
+    /**
+     * 客户端流/双向流调用：把服务端发送响应用的observer作为参数传给服务方法，返回的observer接收客户端的数据
+     * @param ctx
+     * @param rpcRequest
+     * @param observerIndex StreamObserver参数的位置
+     */
+    private void handleCallRequest(ChannelHandlerContext ctx, RpcRequest rpcRequest, int observerIndex) {
+        final long requestId = rpcRequest.getRequestId();
+        final MethodTable.MethodInvoker invoker = lookup(rpcRequest);
+        final AdaptiveLimiter limiter = invoker != null ? invoker.getLimiter() : null;
+        if (limiter != null && !limiter.tryAcquire()) {
+            overloaded(ctx, rpcRequest);
+            return;
+        }
+        Executor executor = executorOf(invoker);
+        final ServerCall call = new ServerCall(ctx, requestId, executor, onStreamTerminate(calls, requestId, limiter));
+        calls.put(requestId, call);
+        rpcRequest.getParameters()[observerIndex] = call.getResponseObserver();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    log.debug("Receive stream call {}", requestId);
+                    Object result;
+                    try {
+                        result = handle(rpcRequest, invoker);
+                    } catch (Throwable t) {
+                        log.error("RPC Server handle stream call error", t);
+                        call.getResponseObserver().onError(t);
+                        return;
+                    }
+                    call.start(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Reject stream call {}: {}", requestId, e.toString());
+            calls.remove(requestId);
+            if (limiter != null) {
+                limiter.cancel();
+            }
+            overloaded(ctx, rpcRequest);
+        }
+    }
+
+    /**
+     * 流结束时从登记表中移除并归还并发名额；可能被调用多次，名额只归还一次
+     * 流的持续时间取决于客户端消费和发送的快慢，不是服务的处理延迟，所以不计入限制器的延迟样本
+     */
+    private static Runnable onStreamTerminate(final Map<Long, ?> registry, final long requestId,
+                                              final AdaptiveLimiter limiter) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return new Runnable() {
+            @Override
+            public void run() {
+                registry.remove(requestId);
+                if (limiter != null && released.compareAndSet(false, true)) {
+                    limiter.cancel();
+                }
+            }
+        };
+    }
+
+    private void handleStreamFrame(StreamFrame frame) {
+        ServerCall call = calls.get(frame.getRequestId());
+        if (call != null) {
+            if (frame.getType() == RpcProtocol.TYPE_STREAM_DATA) {
+                call.onData(frame.getPayload());
+            } else if (frame.getType() == RpcProtocol.TYPE_STREAM_END) {
+                call.onEnd(frame.getError());
+            } else if (frame.getType() == RpcProtocol.TYPE_STREAM_CANCEL) {
+                call.cancel(new CancellationException("Cancelled by client"));
+            } else {
+                log.warn("Unexpected stream frame type {}, request id: {}", frame.getType(), frame.getRequestId());
+            }
+            return;
+        }
+        ServerStream stream = streams.get(frame.getRequestId());
+        if (stream == null) {
+            log.debug("Stream {} is already finished, ignore frame type {}", frame.getRequestId(), frame.getType());
+            return;
+        }
+        if (frame.getType() == RpcProtocol.TYPE_STREAM_DEMAND) {
+            stream.request(frame.getDemand());
+        } else if (frame.getType() == RpcProtocol.TYPE_STREAM_CANCEL) {
+            stream.cancel();
+        } else {
+            log.warn("Unexpected stream frame type {}, request id: {}", frame.getType(), frame.getRequestId());
+        }
+    }
+
+    /**
+     * 连接断开时取消所有进行中的流式调用
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        for (ServerStream stream : streams.values()) {
+            stream.cancel();
+        }
+        for (ServerCall call : calls.values()) {
+            call.cancel(new ClosedChannelException());
+        }
+    }
+
+    /**
+     * 待发送的字节超过写缓冲区高水位时停止读取新的请求，由TCP把压力传回客户端；
+     * 流式调用暂停发送，降到低水位以下后恢复读取并继续发送
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        log.debug("Channel {} writable: {}", ctx.channel().remoteAddress(), writable);
+        ctx.channel().config().setAutoRead(writable);
+        if (writable) {
+            for (ServerStream stream : streams.values()) {
+                stream.resume();
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
 
     /**
      * 异常处理
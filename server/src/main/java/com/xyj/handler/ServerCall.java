@@ -0,0 +1,257 @@
+package com.xyj.handler;
+
+import com.xyj.codec.RpcProtocol;
+import com.xyj.message.StreamFrame;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端的一次客户端流/双向流调用
+ * 客户端发来的数据在业务线程池中按顺序回调服务方法返回的 {@link StreamObserver}；
+ * 服务端通过DEMAND帧给客户端发放额度，每回调一半窗口的数据再补充，客户端额度用完时阻塞，服务端处理慢时不会无限缓存
+ * 服务端的响应通过传给服务方法的observer直接写回，不做流控
+ */
+@Slf4j
+class ServerCall {
+
+    // 发给客户端的额度
+    static final int WINDOW = 256;
+
+    private final ChannelHandlerContext ctx;
+
+    private final long requestId;
+
+    private final Executor executor;
+
+    private final Runnable onTerminate;
+
+    private final ResponseObserver responseObserver = new ResponseObserver();
+
+    private volatile StreamObserver<Object> requestObserver;
+
+    private final Queue<Object> received = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    // 客户端已经half-close或出错，error为null表示half-close
+    private volatile boolean inboundDone;
+
+    private volatile Throwable inboundError;
+
+    // 已经回调了requestObserver的onCompleted/onError
+    private volatile boolean inboundTerminated;
+
+    private volatile boolean cancelled;
+
+    // 已经发放但还没收到的额度，只在event loop线程上访问
+    private long outstanding;
+
+    // 已经回调但还没有补充额度的数量，只在回调线程中访问
+    private int consumed;
+
+    ServerCall(ChannelHandlerContext ctx, long requestId, Executor executor, Runnable onTerminate) {
+        this.ctx = ctx;
+        this.requestId = requestId;
+        this.executor = executor;
+        this.onTerminate = onTerminate;
+    }
+
+    StreamObserver<Object> getResponseObserver() {
+        return responseObserver;
+    }
+
+    /**
+     * 服务方法返回后开始接收客户端的数据
+     */
+    @SuppressWarnings("unchecked")
+    void start(Object result) {
+        if (!(result instanceof StreamObserver)) {
+            responseObserver.onError(new IllegalStateException("Method does not return a StreamObserver"));
+            return;
+        }
+        requestObserver = (StreamObserver<Object>) result;
+        if (cancelled) {
+            drain();
+            return;
+        }
+        ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                outstanding += WINDOW;
+            }
+        });
+        sendDemand(WINDOW);
+        drain();
+    }
+
+    /**
+     * 客户端发来的数据，在event loop线程上调用
+     */
+    void onData(Object payload) {
+        if (cancelled || inboundDone) {
+            return;
+        }
+        if (--outstanding < 0) {
+            log.error("Stream {} received more data than granted, cancel it", requestId);
+            cancel(new IllegalStateException("Flow control window exceeded"));
+            ctx.writeAndFlush(end("Flow control window exceeded"));
+            return;
+        }
+        received.offer(payload);
+        drain();
+    }
+
+    /**
+     * 客户端half-close，或以错误结束（error不为空）
+     */
+    void onEnd(String error) {
+        if (inboundDone) {
+            return;
+        }
+        inboundError = error == null ? null : new RuntimeException("Client error", new Throwable(error));
+        inboundDone = true;
+        drain();
+    }
+
+    /**
+     * 客户端取消或连接断开，服务端不再发送响应
+     */
+    void cancel(Throwable cause) {
+        if (cancelled) {
+            return;
+        }
+        inboundError = cause;
+        cancelled = true;
+        received.clear();
+        drain();
+        onTerminate.run();
+    }
+
+    /**
+     * 两个方向都结束后移除该调用
+     */
+    private void terminateIfDone() {
+        if (inboundTerminated && responseObserver.completed.get()) {
+            onTerminate.run();
+        }
+    }
+
+    private void sendDemand(long n) {
+        StreamFrame demand = StreamFrame.of(RpcProtocol.TYPE_STREAM_DEMAND, requestId);
+        demand.setDemand(n);
+        ctx.writeAndFlush(demand);
+    }
+
+    private StreamFrame end(String error) {
+        StreamFrame end = StreamFrame.of(RpcProtocol.TYPE_STREAM_END, requestId);
+        end.setError(error);
+        return end;
+    }
+
+    private void drain() {
+        if (requestObserver != null && wip.getAndIncrement() == 0) {
+            executor.execute(this::deliver);
+        }
+    }
+
+    /**
+     * 同一时间只有一个线程回调requestObserver
+     */
+    private void deliver() {
+        int missed = 1;
+        StreamObserver<Object> observer = requestObserver;
+        for (; ; ) {
+            if (inboundTerminated) {
+                return;
+            }
+            Object item;
+            while (!cancelled && (item = received.poll()) != null) {
+                try {
+                    observer.onNext(item);
+                } catch (Throwable t) {
+                    log.error("Stream {} observer error", requestId, t);
+                    responseObserver.onError(t);
+                    cancel(t);
+                    break;
+                }
+                if (++consumed == WINDOW / 2) {
+                    final int granted = consumed;
+                    consumed = 0;
+                    ctx.executor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            outstanding += granted;
+                        }
+                    });
+                    sendDemand(granted);
+                }
+            }
+            if (cancelled) {
+                inboundTerminated = true;
+                observer.onError(inboundError != null ? inboundError : new CancellationException("Cancelled by client"));
+                return;
+            }
+            if (inboundDone && received.isEmpty()) {
+                inboundTerminated = true;
+                if (inboundError != null) {
+                    observer.onError(inboundError);
+                    responseObserver.onError(inboundError);
+                } else {
+                    observer.onCompleted();
+                    terminateIfDone();
+                }
+                return;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 服务端发送响应用的observer，传给服务方法
+     */
+    private class ResponseObserver implements StreamObserver<Object> {
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        @Override
+        public void onNext(Object value) {
+            if (completed.get() || cancelled) {
+                log.debug("Stream {} is finished, drop response", requestId);
+                return;
+            }
+            StreamFrame frame = StreamFrame.of(RpcProtocol.TYPE_STREAM_DATA, requestId);
+            frame.setPayload(value);
+            ctx.writeAndFlush(frame);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (completed.compareAndSet(false, true)) {
+                if (!cancelled) {
+                    ctx.writeAndFlush(end(t.toString()));
+                }
+                cancel(t);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            if (completed.compareAndSet(false, true)) {
+                if (!cancelled) {
+                    ctx.writeAndFlush(end(null));
+                }
+                terminateIfDone();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.xyj.handler;
+
+import com.xyj.codec.ChannelSession;
+import com.xyj.codec.CodecConfig;
+import com.xyj.compress.Compressor;
+import com.xyj.compress.Compressors;
+import com.xyj.message.Handshake;
+import com.xyj.serializer.Serializer;
+import com.xyj.serializer.SerializerRegistry;
+import com.xyj.serializer.kryo.KryoRegistration;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 处理客户端的握手请求，按客户端给出的优先级选择双方都支持的参数并回复
+ * 没有发起握手的客户端（旧版本）按默认参数处理
+ */
+@Slf4j
+public class ServerHandshakeHandler extends SimpleChannelInboundHandler<Handshake> {
+
+    private final CodecConfig codecConfig;
+
+    private final MethodTable methodTable;
+
+    public ServerHandshakeHandler(CodecConfig codecConfig) {
+        this(codecConfig, new MethodTable());
+    }
+
+    public ServerHandshakeHandler(CodecConfig codecConfig, MethodTable methodTable) {
+        this.codecConfig = codecConfig;
+        this.methodTable = methodTable;
+    }
+
+    @Override
+    protected void messageReceived(ChannelHandlerContext ctx, Handshake request) throws Exception {
+        Handshake response = new Handshake();
+        Compressor compressor = chooseCompressor(request);
+        if (compressor != null) {
+            response.setCompression(compressor.getName());
+        }
+        Serializer serializer = chooseSerializer(request);
+        if (serializer != null) {
+            response.setSerializer(serializer.getName());
+        }
+        response.setMethods(methodTable.getMethodIds());
+        response.setMethodSerializers(methodTable.getMethodSerializers());
+        Serializer registeredKryo = null;
+        if (request.isKryoRegistration() && codecConfig.isKryoRegistration()
+                && !methodTable.getKryoClasses().isEmpty()) {
+            response.setKryoClasses(methodTable.getKryoClasses());
+            registeredKryo = KryoRegistration.serializer(methodTable.getKryoClasses());
+        }
+        //先回复再启用压缩和序列化方式，保证客户端收到握手结果前不会收到压缩帧或无法识别的消息体
+        ctx.writeAndFlush(response);
+        ChannelSession session = ChannelSession.get(ctx.channel());
+        session.setCompressor(compressor);
+        session.setSerializer(serializer);
+        session.setRegisteredKryo(registeredKryo);
+        session.setOverloadFrame(request.isOverloadFrame());
+        log.debug("Handshake with {}, compressor: {}, serializer: {}", ctx.channel().remoteAddress(),
+                response.getCompression(), response.getSerializer());
+    }
+
+    /**
+     * 按客户端的优先级选择服务端也接受的序列化方式，没有时返回null，双方降级为默认方式
+     */
+    private Serializer chooseSerializer(Handshake request) {
+        if (request.getSerializers() == null) {
+            return null;
+        }
+        for (String name : request.getSerializers()) {
+            if (name.equals(codecConfig.getSerializer()) || codecConfig.getSerializers().contains(name)) {
+                Serializer serializer = SerializerRegistry.get(name);
+                if (serializer != null) {
+                    return serializer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Compressor chooseCompressor(Handshake request) {
+        if (request.getCompressions() == null) {
+            return null;
+        }
+        for (String name : request.getCompressions()) {
+            if (codecConfig.getCompressions().contains(name)) {
+                Compressor compressor = Compressors.get(name);
+                if (compressor != null) {
+                    return compressor;
+                }
+            }
+        }
+        return null;
+    }
+}
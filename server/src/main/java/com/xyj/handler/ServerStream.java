@@ -0,0 +1,291 @@
+package com.xyj.handler;
+
+import com.xyj.codec.RpcProtocol;
+import com.xyj.message.StreamFrame;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端的一次流式调用，方法返回 {@link Flow.Publisher} 或 {@link Iterator}
+ * 只按客户端通过DEMAND帧请求的数量发送元素，客户端消费慢时服务端不会无限缓存
+ * Iterator在业务线程池中拉取，请求数量用完后让出线程，收到新的DEMAND后再继续
+ * 连接不可写（超过写缓冲区高水位）时同样暂停：Iterator停止拉取，Publisher的DEMAND先记下不转发，恢复可写后继续
+ * 业务线程写出的元素要等event loop编码后才计入待发送字节，因此Iterator还要等上一批元素写出后再拉取下一批，
+ * 否则在连接变为不可写之前就会把整个DEMAND窗口都堆积在event loop的任务队列中
+ */
+@Slf4j
+class ServerStream implements Flow.Subscriber<Object> {
+
+    // Iterator每发送这么多个元素flush一次
+    private static final int FLUSH_BATCH = 64;
+
+    private final ChannelHandlerContext ctx;
+
+    private final long requestId;
+
+    private final Executor executor;
+
+    private final Runnable onTerminate;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private final AtomicBoolean terminated = new AtomicBoolean();
+
+    private volatile Iterator<?> iterator;
+
+    // 上一批（FLUSH_BATCH个）元素中最后一个的写出结果，只在拉取线程中访问
+    private ChannelFuture lastBatch;
+
+    // 已经注册了resumeListener的lastBatch，避免重复注册
+    private ChannelFuture awaitedBatch;
+
+    private final ChannelFutureListener resumeListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            drain();
+        }
+    };
+
+    private Flow.Subscription subscription;
+
+    ServerStream(ChannelHandlerContext ctx, long requestId, Executor executor, Runnable onTerminate) {
+        this.ctx = ctx;
+        this.requestId = requestId;
+        this.executor = executor;
+        this.onTerminate = onTerminate;
+    }
+
+    /**
+     * 方法调用完成后开始发送结果
+     */
+    void start(Object result) {
+        if (result instanceof Flow.Publisher) {
+            ((Flow.Publisher<?>) result).subscribe(this);
+        } else if (result instanceof Iterator) {
+            iterator = (Iterator<?>) result;
+            drain();
+        } else if (result == null) {
+            complete(null);
+        } else {
+            complete("Method does not return a stream: " + result.getClass().getName());
+        }
+    }
+
+    /**
+     * 客户端请求更多的元素，在event loop线程上调用
+     */
+    void request(long n) {
+        if (terminated.get() || n <= 0) {
+            return;
+        }
+        Flow.Subscription s;
+        synchronized (this) {
+            s = subscription;
+            if (s == null || !ctx.channel().isWritable()) {
+                addRequested(n);
+                s = null;
+            }
+        }
+        if (s != null) {
+            s.request(n);
+        } else if (iterator != null) {
+            drain();
+        }
+    }
+
+    /**
+     * 连接恢复可写，在event loop线程上调用
+     */
+    void resume() {
+        if (terminated.get()) {
+            return;
+        }
+        Flow.Subscription s;
+        long n = 0;
+        synchronized (this) {
+            s = subscription;
+            if (s != null) {
+                n = requested.getAndSet(0);
+            }
+        }
+        if (s != null) {
+            if (n > 0) {
+                s.request(n);
+            }
+        } else if (iterator != null) {
+            drain();
+        }
+    }
+
+    /**
+     * 客户端取消或连接断开
+     */
+    void cancel() {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+        Flow.Subscription s;
+        synchronized (this) {
+            s = subscription;
+        }
+        if (s != null) {
+            s.cancel();
+        } else if (iterator != null) {
+            drain();//由拉取线程关闭iterator
+        }
+        onTerminate.run();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long n;
+        synchronized (this) {
+            if (this.subscription != null || terminated.get()) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            n = requested.getAndSet(0);
+        }
+        if (n > 0) {
+            subscription.request(n);
+        }
+    }
+
+    @Override
+    public void onNext(Object item) {
+        if (!terminated.get()) {
+            ctx.writeAndFlush(data(item));
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.error("Stream {} failed", requestId, throwable);
+        complete(throwable.toString());
+    }
+
+    @Override
+    public void onComplete() {
+        complete(null);
+    }
+
+    /**
+     * 以结束帧结束该流，error为null表示正常结束
+     */
+    void complete(String error) {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+        StreamFrame end = StreamFrame.of(RpcProtocol.TYPE_STREAM_END, requestId);
+        end.setError(error);
+        ctx.writeAndFlush(end);
+        onTerminate.run();
+    }
+
+    private void addRequested(long n) {
+        long current;
+        long next;
+        do {
+            current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return;
+            }
+            next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+        } while (!requested.compareAndSet(current, next));
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::pull);
+        }
+    }
+
+    /**
+     * 同一时间只有一个线程拉取iterator
+     */
+    private void pull() {
+        int missed = 1;
+        Iterator<?> it = iterator;
+        for (; ; ) {
+            if (terminated.get()) {
+                close(it);
+                return;
+            }
+            long r = requested.get();
+            long emitted = 0;
+            try {
+                while (emitted != r && !terminated.get() && writable()) {
+                    if (!it.hasNext()) {
+                        ctx.flush();
+                        complete(null);
+                        close(it);
+                        return;
+                    }
+                    Object item = it.next();
+                    if (item == null) {
+                        throw new NullPointerException("Stream element is null");
+                    }
+                    ChannelFuture written = ctx.write(data(item));
+                    if (++emitted % FLUSH_BATCH == 0) {
+                        ctx.flush();
+                        lastBatch = written;
+                    }
+                }
+            } catch (Throwable t) {
+                log.error("Stream {} failed", requestId, t);
+                ctx.flush();
+                complete(t.toString());
+                close(it);
+                return;
+            }
+            ctx.flush();
+            if (emitted != 0 && r != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+            if (lastBatch != null && lastBatch != awaitedBatch && !lastBatch.isDone() && !terminated.get()) {
+                //上一批写出后再继续；不可写时由channelWritabilityChanged恢复
+                awaitedBatch = lastBatch;
+                lastBatch.addListener(resumeListener);
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private boolean writable() {
+        return ctx.channel().isWritable() && (lastBatch == null || lastBatch.isDone());
+    }
+
+    private void close(Iterator<?> it) {
+        if (it instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) it).close();
+            } catch (Exception e) {
+                log.warn("Close stream {} error: {}", requestId, e.toString());
+            }
+        }
+    }
+
+    private StreamFrame data(Object item) {
+        StreamFrame frame = StreamFrame.of(RpcProtocol.TYPE_STREAM_DATA, requestId);
+        frame.setPayload(item);
+        return frame;
+    }
+}
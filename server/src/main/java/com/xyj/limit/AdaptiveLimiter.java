@@ -0,0 +1,115 @@
+package com.xyj.limit;
+
+import com.xyj.metrics.RpcMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个服务的自适应并发限制，放在线程池之前：同时处理中的请求达到限制时直接拒绝，不再排队
+ * 按梯度算法调整限制：每个窗口比较请求的平均延迟（从接收到响应，包括排队时间）与长期基线，
+ * 延迟没有上升时限制增加 sqrt(limit)，延迟上升时按 基线 * tolerance / 平均延迟 的比例降低（最多减半）
+ * 处理中的请求不到限制的一半时说明负载不足，只降低不增加；指标记录在 limiter.{serviceKey}.* 中
+ */
+public class AdaptiveLimiter {
+
+    private final LimitConfig config;
+
+    private final long windowNanos;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final LongAdder rejected;
+
+    private volatile int limit;
+
+    // 以下字段只在持有锁时访问
+    private long windowStart = System.nanoTime();
+
+    private long rttSum;
+
+    private int samples;
+
+    private int maxInflight;
+
+    private double baselineRtt;
+
+    public AdaptiveLimiter(String name, LimitConfig config) {
+        this.config = config;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(config.getWindowMillis());
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+        String prefix = "limiter." + name + ".";
+        this.rejected = RpcMetrics.counter(prefix + "rejected");
+        RpcMetrics.gauge(prefix + "limit", () -> limit);
+        RpcMetrics.gauge(prefix + "inflight", inflight::get);
+        RpcMetrics.gauge(prefix + "baselineRttMicros", () -> (long) (baselineRtt / 1000));
+    }
+
+    /**
+     * 处理中的请求没有达到限制时占用一个名额，返回false表示过载
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = inflight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求处理完成，startNanos为tryAcquire时的System.nanoTime()
+     */
+    public void release(long startNanos) {
+        int current = inflight.getAndDecrement();
+        long now = System.nanoTime();
+        sample(now - startNanos, current, now);
+    }
+
+    /**
+     * 请求没有执行（例如线程池拒绝），只归还名额，不计入延迟
+     */
+    public void cancel() {
+        inflight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    private synchronized void sample(long rtt, int currentInflight, long now) {
+        rttSum += rtt;
+        samples++;
+        maxInflight = Math.max(maxInflight, currentInflight);
+        if (samples < config.getWindowSamples() || now - windowStart < windowNanos) {
+            return;
+        }
+        double rttAvg = (double) rttSum / samples;
+        if (baselineRtt == 0) {
+            baselineRtt = rttAvg;
+        } else {
+            baselineRtt += (rttAvg - baselineRtt) / config.getBaselineWindows();
+        }
+        //负载下降后基线远高于当前延迟时加快回落，避免之后的延迟上升长时间不被发现
+        if (baselineRtt > 2 * rttAvg) {
+            baselineRtt *= 0.95;
+        }
+        int current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, config.getTolerance() * baselineRtt / rttAvg));
+        double target = current * gradient + Math.sqrt(current);
+        if (maxInflight * 2 < current) {
+            target = Math.min(target, current);
+        }
+        double smoothed = current * (1 - config.getSmoothing()) + target * config.getSmoothing();
+        limit = (int) Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), Math.round(smoothed)));
+        windowStart = now;
+        rttSum = 0;
+        samples = 0;
+        maxInflight = 0;
+    }
+}
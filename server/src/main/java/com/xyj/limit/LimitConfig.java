@@ -0,0 +1,31 @@
+package com.xyj.limit;
+
+import lombok.Data;
+
+/**
+ * 自适应并发限制的参数，见 {@link AdaptiveLimiter}
+ */
+@Data
+public class LimitConfig {
+
+    // 初始的并发数限制，以及限制的上下界
+    private int initialLimit = 20;
+
+    private int minLimit = 4;
+
+    private int maxLimit = 1000;
+
+    // 短期平均延迟超过长期基线的tolerance倍时才开始降低限制
+    private double tolerance = 1.5;
+
+    // 每个窗口结束时新限制所占的权重，越大调整越快
+    private double smoothing = 0.2;
+
+    // 统计窗口的最短时间和最少样本数，两者都满足时调整一次限制
+    private long windowMillis = 100;
+
+    private int windowSamples = 10;
+
+    // 长期延迟基线按这么多个窗口做指数平均
+    private int baselineWindows = 50;
+}
@@ -0,0 +1,41 @@
+package com.xyj.limit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按服务创建并发限制，默认不限制；需要在添加服务之前配置
+ */
+public class ServiceLimiters {
+
+    private final Map<String, LimitConfig> configs = new ConcurrentHashMap<>();
+
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+
+    private volatile LimitConfig defaultConfig;
+
+    /**
+     * 所有没有单独配置的服务使用的参数，为null时不限制
+     */
+    public void setDefault(LimitConfig config) {
+        this.defaultConfig = config;
+    }
+
+    /**
+     * 单独配置一个服务，serviceKey为 接口名#版本
+     */
+    public void configure(String serviceKey, LimitConfig config) {
+        configs.put(serviceKey, config);
+    }
+
+    /**
+     * 返回服务的并发限制，同一服务的所有方法共用一个；不限制时返回null
+     */
+    public AdaptiveLimiter resolve(String serviceKey) {
+        LimitConfig config = configs.getOrDefault(serviceKey, defaultConfig);
+        if (config == null) {
+            return null;
+        }
+        return limiters.computeIfAbsent(serviceKey, key -> new AdaptiveLimiter(key, config));
+    }
+}
@@ -1,21 +1,27 @@
 package com.xyj.server;
 
 
+import com.xyj.buffer.BufferConfig;
+import com.xyj.codec.CodecConfig;
+import com.xyj.executor.ExecutorConfig;
+import com.xyj.executor.ServiceExecutors;
+import com.xyj.handler.MethodTable;
+import com.xyj.limit.LimitConfig;
+import com.xyj.limit.ServiceLimiters;
 import com.xyj.registry.ServiceRegistry;
+import com.xyj.transport.TransportConfig;
+import com.xyj.util.ServiceTypeScanner;
 import com.xyj.util.ServiceUtil;
-import com.xyj.util.ThreadPoolUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executor;
 
 /**
  * 基于netty的server实现
@@ -26,46 +32,144 @@ public class NettyServer extends Server {
     private static final Logger logger = LoggerFactory.getLogger(NettyServer.class);
 
     private Thread thread;
-    private String serverAddress;
+    private final RpcServerConfig config;
     private ServiceRegistry serviceRegistry;
     private Map<String, Object> serviceMap = new HashMap<>();//serviceKey + serviceBean，记录服务端暴露的服务
+    private ServiceExecutors executors = new ServiceExecutors();//按服务或方法隔离的线程池
+    private ServiceLimiters limiters = new ServiceLimiters();//按服务的自适应并发限制
+    private MethodTable methodTable = new MethodTable(executors, limiters);//暴露的方法及其id，握手时下发给客户端
 
     public NettyServer(String serverAddress, String registryAddress) {
-        this.serverAddress = serverAddress;
-        this.serviceRegistry = new ServiceRegistry(registryAddress);
+        this(newConfig(serverAddress, registryAddress));
+    }
+
+    public NettyServer(RpcServerConfig config) {
+        this.config = config;
+        this.serviceRegistry = new ServiceRegistry(config.getRegistryAddress());
+        limiters.setDefault(config.getLimit());
+    }
+
+    private static RpcServerConfig newConfig(String serverAddress, String registryAddress) {
+        RpcServerConfig config = new RpcServerConfig();
+        config.setAddress(serverAddress);
+        config.setRegistryAddress(registryAddress);
+        return config;
+    }
+
+    public RpcServerConfig getConfig() {
+        return config;
     }
 
     public void addService(String interfaceName, String version, Object serviceBean) {
+        addService(interfaceName, version, serviceBean, null);
+    }
+
+    /**
+     * serializer不为空时，客户端调用该服务使用指定的序列化方式（客户端也支持时）
+     */
+    public void addService(String interfaceName, String version, Object serviceBean, String serializer) {
         logger.info("Adding service, interface: {}, version: {}, bean：{}", interfaceName, version, serviceBean);
         String serviceKey = ServiceUtil.makeServiceKey(interfaceName, version);
         serviceMap.put(serviceKey, serviceBean);
+        methodTable.addService(interfaceName, version, serviceBean, serializer);
+    }
+
+    /**
+     * 设置没有独立线程池的服务使用的共享线程池，例如改为虚拟线程；需要在start之前调用
+     */
+    public void setDefaultExecutor(ExecutorConfig config) {
+        this.config.setExecutor(config);
+    }
+
+    /**
+     * 为服务或方法指定独立的线程池，优先于 {@link com.xyj.annotation.RpcExecutor} 注解，需要在addService之前调用
+     * target为serviceKey（接口名#版本）时作用于整个服务，为 serviceKey.方法名 时作用于该方法的所有重载
+     */
+    public void setExecutor(String target, ExecutorConfig config) {
+        executors.configure(target, config);
+    }
+
+    /**
+     * 为所有服务开启自适应并发限制，超过限制的请求立即返回OVERLOADED，为null时不限制；需要在addService之前调用
+     */
+    public void setConcurrencyLimit(LimitConfig config) {
+        this.config.setLimit(config);
+        limiters.setDefault(config);
+    }
+
+    /**
+     * 单独设置一个服务（serviceKey为 接口名#版本）的并发限制，需要在addService之前调用
+     */
+    public void setConcurrencyLimit(String serviceKey, LimitConfig config) {
+        limiters.configure(serviceKey, config);
+    }
+
+    /**
+     * 设置编解码参数（帧长度、压缩），需要在start之前调用
+     */
+    public void setCodecConfig(CodecConfig codecConfig) {
+        config.setCodec(codecConfig);
+    }
+
+    /**
+     * 设置缓冲区参数（分配器、接收缓冲区、写水位），需要在start之前调用
+     */
+    public void setBufferConfig(BufferConfig bufferConfig) {
+        config.setBuffer(bufferConfig);
     }
 
+    /**
+     * 设置传输层参数（epoll/NIO、SO_REUSEPORT、TCP_NODELAY），需要在start之前调用
+     */
+    public void setTransportConfig(TransportConfig transportConfig) {
+        config.setTransport(transportConfig);
+    }
+
+    @SuppressWarnings("unchecked")
     public void start() {
         thread = new Thread(new Runnable() {
-            ThreadPoolExecutor threadPoolExecutor = ThreadPoolUtil.makeServerThreadPool(
-                    NettyServer.class.getSimpleName(), 16, 32);
+            Executor threadPoolExecutor = ServiceExecutors.newExecutor("default", config.getExecutor());
 
             @Override
             public void run() {
-                EventLoopGroup bossGroup = new NioEventLoopGroup();
-                EventLoopGroup workerGroup = new NioEventLoopGroup();
+                executors.setSharedPool(threadPoolExecutor);
+                ServiceTypeScanner.warmUp(methodTable.getInterfaces());
+                TransportConfig transportConfig = config.getTransport();
+                BufferConfig bufferConfig = config.getBuffer();
+                //开启SO_REUSEPORT时每个监听socket使用一个boss线程
+                int acceptors = transportConfig.bindCount();
+                EventLoopGroup bossGroup = transportConfig.eventLoopGroup(Math.max(config.getBossThreads(), acceptors));
+                EventLoopGroup workerGroup = transportConfig.eventLoopGroup(config.getWorkerThreads());
                 try {
                     ServerBootstrap bootstrap = new ServerBootstrap();
-                    bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
-                            .childHandler(new RpcServerInitializer(serviceMap, threadPoolExecutor))
-                            .option(ChannelOption.SO_BACKLOG, 128)
-                            .childOption(ChannelOption.SO_KEEPALIVE, true);
+                    bootstrap.group(bossGroup, workerGroup).channel(transportConfig.serverChannelClass())
+                            .childHandler(new RpcServerInitializer(serviceMap, threadPoolExecutor, config.getCodec(), methodTable))
+                            .option(ChannelOption.SO_BACKLOG, config.getSoBacklog())
+                            .option(ChannelOption.ALLOCATOR, bufferConfig.allocator())
+                            .childOption(ChannelOption.SO_KEEPALIVE, config.isKeepAlive());
+                    for (Map.Entry<ChannelOption<?>, Object> option : transportConfig.serverChannelOptions().entrySet()) {
+                        bootstrap.option((ChannelOption<Object>) option.getKey(), option.getValue());
+                    }
+                    for (Map.Entry<ChannelOption<?>, Object> option : transportConfig.channelOptions().entrySet()) {
+                        bootstrap.childOption((ChannelOption<Object>) option.getKey(), option.getValue());
+                    }
+                    for (Map.Entry<ChannelOption<?>, Object> option : bufferConfig.channelOptions().entrySet()) {
+                        bootstrap.childOption((ChannelOption<Object>) option.getKey(), option.getValue());
+                    }
 
-                    String[] array = serverAddress.split(":");
+                    String[] array = config.getAddress().split(":");
                     String host = array[0];
                     int port = Integer.parseInt(array[1]);
                     ChannelFuture future = bootstrap.bind(host, port).sync();
+                    for (int i = 1; i < acceptors; i++) {
+                        bootstrap.bind(host, port).sync();
+                    }
 
                     if (serviceRegistry != null) {
                         serviceRegistry.registerService(host, port, serviceMap);
                     }
-                    logger.info("Server started on port {}", port);
+                    logger.info("Server started on port {}, transport: {}, acceptors: {}", port,
+                            transportConfig.isEpoll() ? "epoll" : "nio", acceptors);
                     future.channel().closeFuture().sync();
                 } catch (Exception e) {
                     if (e instanceof InterruptedException) {
@@ -78,6 +182,8 @@ public class NettyServer extends Server {
                         serviceRegistry.unregisterService();
                         workerGroup.shutdownGracefully();
                         bossGroup.shutdownGracefully();
+                        executors.shutdown();
+                        ServiceExecutors.shutdown(threadPoolExecutor);
                     } catch (Exception ex) {
                         logger.error(ex.getMessage(), ex);
                     }
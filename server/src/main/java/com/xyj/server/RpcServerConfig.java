@@ -0,0 +1,71 @@
+package com.xyj.server;
+
+import com.xyj.buffer.BufferConfig;
+import com.xyj.codec.CodecConfig;
+import com.xyj.config.ConfigBinder;
+import com.xyj.executor.ExecutorConfig;
+import com.xyj.limit.LimitConfig;
+import com.xyj.transport.TransportConfig;
+import lombok.Data;
+
+import java.util.Properties;
+
+/**
+ * 服务端的全部参数，可以在代码中设置，也可以从rpc.properties中以server.为前缀的配置绑定，
+ * 例如 server.workerThreads=8、server.buffer.writeBufferHighWaterMark=32768、server.executor.coreSize=32
+ * Spring中可以直接作为bean配置属性，或通过工厂方法load从properties文件创建
+ */
+@Data
+public class RpcServerConfig {
+
+    // 服务端监听的地址，host:port
+    private String address;
+
+    // 注册中心（zookeeper）地址，load时默认使用registry.address
+    private String registryAddress;
+
+    // 接受连接的线程数，开启SO_REUSEPORT时至少为transport.acceptors
+    private int bossThreads = 1;
+
+    // 处理连接读写的I/O线程数，为0时使用Netty的默认值（CPU核数的2倍）
+    private int workerThreads = 0;
+
+    // 等待accept的连接队列长度
+    private int soBacklog = 128;
+
+    private boolean keepAlive = true;
+
+    // 传输方式、SO_REUSEPORT、TCP_NODELAY
+    private TransportConfig transport = new TransportConfig();
+
+    // 分配器、接收缓冲区以及每个连接的写缓冲区高低水位
+    private BufferConfig buffer = new BufferConfig();
+
+    private CodecConfig codec = new CodecConfig();
+
+    // 没有独立线程池的服务共用的线程池
+    private ExecutorConfig executor = defaultExecutor();
+
+    // 所有服务的自适应并发限制，为null时不限制
+    private LimitConfig limit;
+
+    private static ExecutorConfig defaultExecutor() {
+        ExecutorConfig config = new ExecutorConfig();
+        config.setCoreSize(16);
+        config.setMaxSize(32);
+        return config;
+    }
+
+    /**
+     * 从classpath中的properties文件创建
+     */
+    public static RpcServerConfig load(String resource) {
+        return from(ConfigBinder.load(resource));
+    }
+
+    public static RpcServerConfig from(Properties properties) {
+        RpcServerConfig config = new RpcServerConfig();
+        config.setRegistryAddress(properties.getProperty("registry.address"));
+        return ConfigBinder.bind(config, properties, "server.");
+    }
+}
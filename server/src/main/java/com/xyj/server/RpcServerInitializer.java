@@ -1,40 +1,58 @@
 package com.xyj.server;
 
+import com.xyj.codec.ChunkedFrameWriter;
+import com.xyj.codec.CodecConfig;
 import com.xyj.codec.RpcDecoder;
 import com.xyj.codec.RpcEncoder;
+import com.xyj.handler.MethodTable;
 import com.xyj.handler.RpcServerHandler;
+import com.xyj.handler.ServerHandshakeHandler;
 import com.xyj.message.Beat;
 import com.xyj.message.RpcRequest;
 import com.xyj.message.RpcResponse;
 import com.xyj.serializer.Serializer;
-import com.xyj.serializer.kryo.KryoSerializer;
+import com.xyj.serializer.SerializerRegistry;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.timeout.IdleStateHandler;
 
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 public class RpcServerInitializer extends ChannelInitializer<SocketChannel> {
     private Map<String, Object> handlerMap;
-    private ThreadPoolExecutor threadPoolExecutor;
+    private Executor threadPoolExecutor;
+    private CodecConfig codecConfig;
+    private MethodTable methodTable;
 
-    public RpcServerInitializer(Map<String, Object> handlerMap, ThreadPoolExecutor threadPoolExecutor) {
+    public RpcServerInitializer(Map<String, Object> handlerMap, Executor threadPoolExecutor) {
+        this(handlerMap, threadPoolExecutor, new CodecConfig());
+    }
+
+    public RpcServerInitializer(Map<String, Object> handlerMap, Executor threadPoolExecutor,
+                                CodecConfig codecConfig) {
+        this(handlerMap, threadPoolExecutor, codecConfig, new MethodTable());
+    }
+
+    public RpcServerInitializer(Map<String, Object> handlerMap, Executor threadPoolExecutor,
+                                CodecConfig codecConfig, MethodTable methodTable) {
         this.handlerMap = handlerMap;
         this.threadPoolExecutor = threadPoolExecutor;
+        this.codecConfig = codecConfig;
+        this.methodTable = methodTable;
     }
 
     @Override
     public void initChannel(SocketChannel channel) throws Exception {
-        Serializer serializer = KryoSerializer.class.getDeclaredConstructor().newInstance();
+        Serializer serializer = SerializerRegistry.require(codecConfig.getSerializer());
         ChannelPipeline cp = channel.pipeline();
         cp.addLast(new IdleStateHandler(0, 0, Beat.BEAT_TIMEOUT, TimeUnit.SECONDS))
-                .addLast(new LengthFieldBasedFrameDecoder(65536, 0, 4, 0, 0))
-                .addLast(new RpcDecoder(RpcRequest.class, serializer))
-                .addLast(new RpcEncoder(RpcResponse.class, serializer))
-                .addLast(new RpcServerHandler(handlerMap, threadPoolExecutor));
+                .addLast(new ChunkedFrameWriter(codecConfig))
+                .addLast(new RpcDecoder(RpcRequest.class, serializer, codecConfig))
+                .addLast(new RpcEncoder(RpcResponse.class, serializer, codecConfig))
+                .addLast(new ServerHandshakeHandler(codecConfig, methodTable))
+                .addLast(new RpcServerHandler(handlerMap, threadPoolExecutor, methodTable));
     }
 }
@@ -0,0 +1,139 @@
+package com.xyj.handler;
+
+import com.xyj.executor.ServiceExecutors;
+import com.xyj.limit.LimitConfig;
+import com.xyj.limit.ServiceLimiters;
+import com.xyj.message.RpcRequest;
+import com.xyj.message.RpcResponse;
+import com.xyj.metrics.RpcMetrics;
+import com.xyj.util.ServiceUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在线程池中排队到截止时间的请求不执行，也不计入并发限制的延迟；执行完时已经超时的请求不发送响应
+ */
+class DeadlineTest {
+
+    private static final String SERVICE_KEY = ServiceUtil.makeServiceKey(SlowService.class.getName(), "");
+
+    private final ArrayDeque<Runnable> queued = new ArrayDeque<>();
+
+    private final SlowServiceImpl service = new SlowServiceImpl();
+
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        LimitConfig limitConfig = new LimitConfig();
+        //每个样本都结束一个窗口，记录过样本时延迟基线不为0
+        limitConfig.setWindowMillis(0);
+        limitConfig.setWindowSamples(1);
+        ServiceLimiters limiters = new ServiceLimiters();
+        limiters.setDefault(limitConfig);
+        MethodTable methodTable = new MethodTable(new ServiceExecutors(), limiters);
+        methodTable.addService(SlowService.class.getName(), "", service);
+        //请求先进入队列，由测试决定什么时候执行
+        channel = new EmbeddedChannel(new RpcServerHandler(Collections.emptyMap(), queued::add, methodTable));
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finish();
+    }
+
+    @Test
+    void requestExpiredInQueueIsDropped() throws Exception {
+        long expired = counter("server.deadline.expired");
+        channel.writeInbound(request(1L, 20, 0));
+        Thread.sleep(40);
+        runQueued();
+
+        assertEquals(0, service.invocations.get());
+        assertNull(channel.readOutbound());
+        assertEquals(expired + 1, counter("server.deadline.expired"));
+        //只归还名额，没有记录延迟样本
+        assertEquals(0, limiterMetric("inflight"));
+        assertEquals(0, limiterMetric("baselineRttMicros"));
+    }
+
+    @Test
+    void lateResponseIsDiscarded() {
+        long late = counter("server.deadline.late");
+        channel.writeInbound(request(2L, 20, 40));
+        runQueued();
+
+        assertEquals(1, service.invocations.get());
+        assertNull(channel.readOutbound());
+        assertEquals(late + 1, counter("server.deadline.late"));
+        //方法执行过，延迟计入限制器
+        assertEquals(0, limiterMetric("inflight"));
+        assertTrue(limiterMetric("baselineRttMicros") >= 40_000);
+    }
+
+    @Test
+    void responseWithinDeadlineIsSent() {
+        channel.writeInbound(request(3L, 1000, 0));
+        runQueued();
+
+        RpcResponse response = channel.readOutbound();
+        assertEquals(3L, response.getRequestId());
+        assertFalse(response.isError());
+        assertEquals(0L, response.getResult());
+    }
+
+    private void runQueued() {
+        Runnable task;
+        while ((task = queued.poll()) != null) {
+            task.run();
+        }
+        channel.runPendingTasks();
+    }
+
+    private static long counter(String name) {
+        Number value = RpcMetrics.get(name);
+        return value != null ? value.longValue() : 0;
+    }
+
+    private static long limiterMetric(String name) {
+        return RpcMetrics.get("limiter." + SERVICE_KEY + "." + name).longValue();
+    }
+
+    private static RpcRequest request(long requestId, long timeoutMillis, long sleepMillis) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(requestId);
+        request.setClassName(SlowService.class.getName());
+        request.setVersion("");
+        request.setMethodName("sleep");
+        request.setParameterTypes(new Class<?>[]{long.class});
+        request.setParameters(new Object[]{sleepMillis});
+        request.setTimeout(timeoutMillis);
+        return request;
+    }
+
+    public interface SlowService {
+        long sleep(long millis) throws InterruptedException;
+    }
+
+    public static class SlowServiceImpl implements SlowService {
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public long sleep(long millis) throws InterruptedException {
+            invocations.incrementAndGet();
+            Thread.sleep(millis);
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.xyj.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 梯度算法：延迟稳定且满载时限制增加，延迟上升时降低，负载不足时不增加
+ */
+class AdaptiveLimiterTest {
+
+    @Test
+    void limitGrowsWhileLatencyIsSteady() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("steady", config());
+        int initial = limiter.getLimit();
+        for (int i = 0; i < 10; i++) {
+            runWindow(limiter, limiter.getLimit(), 50);
+        }
+        assertTrue(limiter.getLimit() > initial, "limit: " + limiter.getLimit());
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("inflated", config());
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, limiter.getLimit(), 50);
+        }
+        int before = limiter.getLimit();
+        //延迟远超过 基线 * tolerance，梯度取下限0.5
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, limiter.getLimit(), 1000);
+        }
+        assertTrue(limiter.getLimit() < before, "limit: " + before + " -> " + limiter.getLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowUnderLightLoad() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("light", config());
+        int initial = limiter.getLimit();
+        for (int i = 0; i < 10; i++) {
+            runWindow(limiter, initial / 4, 50);
+        }
+        assertEquals(initial, limiter.getLimit());
+    }
+
+    @Test
+    void cancelReturnsPermitWithoutSample() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("cancel", config());
+        int initial = limiter.getLimit();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < initial; j++) {
+                assertTrue(limiter.tryAcquire());
+            }
+            assertFalse(limiter.tryAcquire());
+            for (int j = 0; j < initial; j++) {
+                limiter.cancel();
+            }
+        }
+        assertEquals(initial, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    private static LimitConfig config() {
+        LimitConfig config = new LimitConfig();
+        //不按时间划分窗口，每windowSamples个样本调整一次
+        config.setWindowMillis(0);
+        config.setWindowSamples(4);
+        return config;
+    }
+
+    /**
+     * 同时占用concurrency个名额，再以rttMillis的延迟全部完成；延迟远大于调度抖动，结果不受运行环境影响
+     */
+    private static void runWindow(AdaptiveLimiter limiter, int concurrency, long rttMillis) {
+        for (int i = 0; i < concurrency; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        long rtt = TimeUnit.MILLISECONDS.toNanos(rttMillis);
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(System.nanoTime() - rtt);
+        }
+    }
+}